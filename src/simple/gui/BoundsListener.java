@@ -0,0 +1,6 @@
+package simple.gui;
+
+/** Interface for being told when a widget's location or size changes. Panels use this to keep track of where their widgets are. **/
+public interface BoundsListener {
+	public void boundsChanged(Widget w);
+}
@@ -33,17 +33,18 @@ public class Button extends Widget {
         _hoverColor = Draw.scaleColor(fillColor, 0.92f);
         _clickColor = Draw.scaleColor(fillColor, 0.86f);
         _disabledColor = Draw.scaleColor(fillColor, 0.8f);
+        updateCurrentColor();
     }
     /** Sets only the fill color, doesn't adjust the other colors */
-    public void setOnlyFillColor(Color fillColor) { super.setFillColor(fillColor); }
-    public void setHoverColor(Color hoverColor) { _hoverColor = hoverColor; }
-    public void setClickColor(Color clickColor) { _clickColor = clickColor; }
-    public void setDisabledColor(Color disabledColor) { _disabledColor = disabledColor; }
+    public void setOnlyFillColor(Color fillColor) { super.setFillColor(fillColor); updateCurrentColor(); }
+    public void setHoverColor(Color hoverColor) { _hoverColor = hoverColor; updateCurrentColor(); markDirty(); }
+    public void setClickColor(Color clickColor) { _clickColor = clickColor; updateCurrentColor(); markDirty(); }
+    public void setDisabledColor(Color disabledColor) { _disabledColor = disabledColor; updateCurrentColor(); markDirty(); }
 	
 	/** Sets the button's text variable. **/
-	public void setText(String text) { _textLabel.setText(text); }
+	public void setText(String text) { _textLabel.setText(text); markDirty(); }
 	/** Sets the button's Image object of the imageBox variable**/
-	public void setImage(Image image) { _imageBox.setImage(image); }
+	public void setImage(Image image) { _imageBox.setImage(image); markDirty(); }
 	
 	/** Sets the button's x and y coordinates, as well as shifts the imageBox. **/
 	public void setLocation(int x, int y) {
@@ -64,12 +65,10 @@ public class Button extends Widget {
 	    super.setEnabled(enabled); 
 	    _imageBox.setEnabled(enabled);
 	    _textLabel.setEnabled(enabled);
-	    if (!enabled) { 
-	        _currentColor = _disabledColor;
-	    }
+	    updateCurrentColor();
 	}
     @Override
-    public void blockWidget() { super.blockWidget(); _currentColor = _fillColor; }
+    public void blockWidget() { super.blockWidget(); updateCurrentColor(); }
 	
 	@Override
 	public void setFont(Font font) {
@@ -78,6 +77,7 @@ public class Button extends Widget {
 	}
 	public void setAlignment(TextArea.Alignment alignment) {
 		_textLabel.setAlignment(alignment);
+		markDirty();
 	}
 	@Override
 	public void setTextColor(Color textColor) {
@@ -114,10 +114,12 @@ public class Button extends Widget {
 		_textLabel.setAlignment(TextArea.Alignment.CENTER);
 		
 		_imageBox = new ImageBox(x, y, w, h, image);
+		updateCurrentColor();
 	}
 	
-	/** Updates the widget's status. **/
-	protected void updateWidget() {
+	/** Sets the color the button is filled with to the one for its state. Done whenever the state or colors change, so the button is 
+	 * never drawn, or render cached, with the color of a state it isn't in. **/
+	protected void updateCurrentColor() {
 	    if (!_enabled) {
             _currentColor = _disabledColor;
         } else if (_blocked) {
@@ -129,6 +131,11 @@ public class Button extends Widget {
         } else { 
             _currentColor = _fillColor;
         }
+	}
+	
+	/** Updates the widget's status. **/
+	protected void updateWidget() {
+	    updateCurrentColor();
 	    
 		_imageBox.update();
 		_textLabel.update();
@@ -0,0 +1,142 @@
+package simple.gui;
+
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.Path2D;
+
+/** A set of rectangles that need to be redrawn, used for damage tracking (see Draw.setDamageTracking()).
+ * <P>Rectangles that overlap are merged into their bounding box, so the rectangles stored never overlap each other. Only a small number of
+ * rectangles are kept; once there are more than that, everything collapses into a single bounding box. Redrawing a bit too much is cheap,
+ * keeping track of hundreds of tiny rectangles is not. **/
+public class DirtyRegion {
+	/** Default number of separate rectangles kept before they collapse into one. **/
+	protected static int _DEFAULT_MAX_RECTS = 16;
+
+	private int[] _x1, _y1, _x2, _y2;
+	private int _count, _maxRects;
+
+	/** Returns the number of separate rectangles in the region. **/
+	public int count() { return _count; }
+	/** Returns whether nothing needs to be redrawn. **/
+	public boolean isEmpty() { return _count == 0; }
+	/** Returns the left edge of the i-th rectangle. **/
+	public int x(int i) { return _x1[i]; }
+	/** Returns the top edge of the i-th rectangle. **/
+	public int y(int i) { return _y1[i]; }
+	/** Returns the width of the i-th rectangle. **/
+	public int w(int i) { return _x2[i]-_x1[i]; }
+	/** Returns the height of the i-th rectangle. **/
+	public int h(int i) { return _y2[i]-_y1[i]; }
+
+	public DirtyRegion() {
+		this(_DEFAULT_MAX_RECTS);
+	}
+	public DirtyRegion(int maxRects) {
+		if (maxRects < 1) { throw new IllegalArgumentException("maxRects must be at least 1"); }
+		_maxRects = maxRects;
+		// One extra slot so a new rectangle can be stored before deciding whether to collapse
+		_x1 = new int[maxRects+1];
+		_y1 = new int[maxRects+1];
+		_x2 = new int[maxRects+1];
+		_y2 = new int[maxRects+1];
+		_count = 0;
+	}
+
+	/** Adds a rectangle to the region. Empty rectangles are ignored. **/
+	public void add(int x, int y, int w, int h) {
+		if (w <= 0 || h <= 0) {
+			return;
+		}
+		int x1 = x, y1 = y, x2 = x+w, y2 = y+h;
+
+		// Absorbing one rectangle can make the result overlap another, so keep merging until nothing overlaps
+		boolean merged = true;
+		while (merged) {
+			merged = false;
+			for (int i=0; i<_count; i++) {
+				if (_x1[i] < x2 && x1 < _x2[i] && _y1[i] < y2 && y1 < _y2[i]) {
+					x1 = Math.min(x1, _x1[i]);
+					y1 = Math.min(y1, _y1[i]);
+					x2 = Math.max(x2, _x2[i]);
+					y2 = Math.max(y2, _y2[i]);
+					removeAt(i);
+					merged = true;
+					break;
+				}
+			}
+		}
+
+		_x1[_count] = x1;
+		_y1[_count] = y1;
+		_x2[_count] = x2;
+		_y2[_count] = y2;
+		_count++;
+
+		if (_count > _maxRects) {
+			collapse();
+		}
+	}
+	/** Marks the whole given area as needing to be redrawn. **/
+	public void invalidateAll(int w, int h) {
+		clear();
+		add(0, 0, w, h);
+	}
+	/** Empties the region. **/
+	public void clear() {
+		_count = 0;
+	}
+
+	/** Returns whether the given rectangle overlaps any part of the region. **/
+	public boolean intersects(int x, int y, int w, int h) {
+		int x2 = x+w, y2 = y+h;
+		for (int i=0; i<_count; i++) {
+			if (_x1[i] < x2 && x < _x2[i] && _y1[i] < y2 && y < _y2[i]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** Returns a shape covering the region, suitable for Graphics2D.setClip(). **/
+	public Shape toShape() {
+		if (_count == 1) {
+			return new Rectangle(_x1[0], _y1[0], _x2[0]-_x1[0], _y2[0]-_y1[0]);
+		}
+		// The rectangles never overlap, so a plain path of all of them covers exactly their union
+		Path2D.Float path = new Path2D.Float(Path2D.WIND_NON_ZERO);
+		for (int i=0; i<_count; i++) {
+			path.moveTo(_x1[i], _y1[i]);
+			path.lineTo(_x2[i], _y1[i]);
+			path.lineTo(_x2[i], _y2[i]);
+			path.lineTo(_x1[i], _y2[i]);
+			path.closePath();
+		}
+		return path;
+	}
+
+	private void removeAt(int i) {
+		_count--;
+		_x1[i] = _x1[_count];
+		_y1[i] = _y1[_count];
+		_x2[i] = _x2[_count];
+		_y2[i] = _y2[_count];
+	}
+	private void collapse() {
+		for (int i=1; i<_count; i++) {
+			_x1[0] = Math.min(_x1[0], _x1[i]);
+			_y1[0] = Math.min(_y1[0], _y1[i]);
+			_x2[0] = Math.max(_x2[0], _x2[i]);
+			_y2[0] = Math.max(_y2[0], _y2[i]);
+		}
+		_count = 1;
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder("DirtyRegion[");
+		for (int i=0; i<_count; i++) {
+			if (i > 0) sb.append(", ");
+			sb.append('(').append(x(i)).append(", ").append(y(i)).append(", ").append(w(i)).append(", ").append(h(i)).append(')');
+		}
+		return sb.append(']').toString();
+	}
+}
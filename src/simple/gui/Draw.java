@@ -14,24 +14,48 @@ public class Draw {
 	private static Color _fill = Color.BLACK;
 	private static Color _stroke = Color.BLACK;
 	
+	/** Strokes are immutable, so the common thicknesses are created once and shared. **/
+	private static final int _STROKE_CACHE_SIZE = 16;
+	private static final BasicStroke[] _strokeCache = new BasicStroke[_STROKE_CACHE_SIZE];
+	private static final BasicStroke[] _roundStrokeCache = new BasicStroke[_STROKE_CACHE_SIZE];
+	
+	private static Stroke _strokeStyle = strokeFor(1, false);
+	
 	private static Graphics2D _g;
 	private static BufferedImage _bimage;
 	private static Image _image;
-		
+	
+	private static DrawBatch _batch = new DrawBatch();
+	private static boolean _batching = false;
+	
+	/** Areas to redraw this frame, and areas marked after this frame started drawing, which are redrawn next frame instead. **/
+	private static DirtyRegion _damage = new DirtyRegion(), _lateDamage = new DirtyRegion();
+	private static boolean _damageTracking = false, _damagePrepared = false;
+	private static Color _damageBackground = Color.BLACK;
+
+	/** How many widgets are rendering themselves into images, and the batching and damage tracking to go back to after. **/
+	private static int _offscreenDepth = 0;
+	private static boolean _offscreenBatching, _offscreenDamageTracking;
+
 	/** Called within SimpleGUIApp to initialize the DrawModule. Don't call this yourself unless you know what you're doing. 
 	 * @param app      Application to associate with*/
 	public static void initialize(SimpleGUIApp app) {
 		Draw._app = app;
 		_bimage = new BufferedImage(app.windowWidth(), app.windowHeight(), BufferedImage.TYPE_INT_ARGB);
-		_g = (Graphics2D) _bimage.getGraphics();
 		_image = new Image(_bimage, false);
+		// Share one graphics context between the screen image and Draw, so drawing through either sees the same state
+		_g = _image.graphics2D();
 	}
 	/** Called within SimpleGUIApp. Don't call this yourself unless you know what you're doing. **/
 	public static void setGraphics() {
 		BufferedImage newImage = new BufferedImage(_app.getWidth(), _app.getHeight(), BufferedImage.TYPE_INT_ARGB);
-		_g = (Graphics2D) newImage.getGraphics();
-		_g.drawImage(_bimage, 0, 0, null);
+		Image newWrapper = new Image(newImage, false);
+		newWrapper.graphics2D().drawImage(_bimage, 0, 0, null);
+		_image.dispose();
 		_bimage = newImage;
+		_image = newWrapper;
+		_g = _image.graphics2D();
+		invalidateScreen();
 	}
 	
 	public static int windowWidth() { return _app.windowWidth(); }
@@ -48,19 +72,164 @@ public class Draw {
 	private static FontMetrics getFontMetrics(Graphics2D g2D) { return g2D.getFontMetrics(); }
 	/** Returns a FontMetrics object from the given font through the stored Graphics2D object. **/
 	public static FontMetrics getFontMetrics(Font font) { return _g.getFontMetrics(font); }
+	/** Returns the cached character widths of the stored Graphics2D object's current font. See TextMetrics. **/
+	public static TextMetrics getTextMetrics() { return getTextMetrics(_g.getFont()); }
+	/** Returns the cached character widths of the given font, measured through the stored Graphics2D object the first time the font is 
+	 * asked for. Measuring and wrapping text with these is much faster than with FontMetrics. See TextMetrics. **/
+	public static TextMetrics getTextMetrics(Font font) { return TextMetrics.get(font, _g); }
 			
 	/** Sets the class's local fill field. **/
 	public static void setFill(Color fill) { Draw._fill = fill; }
 	/** Sets the class's local stroke field. Stroke is used for the borders of shapes as well as for rendering text. **/
 	public static void setStroke(Color stroke) { setStroke(stroke, 1); }
 	/** Sets the class's local stroke field. Stroke is used for the borders of shapes as well as for rendering text. **/
-	public static void setStroke(Color stroke, int thickness) { Draw._stroke = stroke; _g.setStroke(new BasicStroke(thickness)); }
+	public static void setStroke(Color stroke, int thickness) { Draw._stroke = stroke; setStrokeStyle(strokeFor(thickness, false)); }
 	/** Sets the class's local stroke field. Stroke is used for the borders of shapes as well as for rendering text. **/
-    public static void setStrokeRound(Color stroke, int thickness) { Draw._stroke = stroke; _g.setStroke(new BasicStroke(thickness, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND)); }
+    public static void setStrokeRound(Color stroke, int thickness) { Draw._stroke = stroke; setStrokeStyle(strokeFor(thickness, true)); }
     /** Sets the class's local stroke field. Stroke is used for the borders of shapes as well as for rendering text. **/
-    public static void setStroke(Image image, Color stroke, int thickness) { Draw._stroke = stroke; image.graphics2D().setStroke(new BasicStroke(thickness)); }
+    public static void setStroke(Image image, Color stroke, int thickness) { Draw._stroke = stroke; image.graphics2D().setStroke(strokeFor(thickness, false)); }
     /** Sets the class's local stroke field. Stroke is used for the borders of shapes as well as for rendering text. **/
-    public static void setStrokeRound(Image image, Color stroke, int thickness) { Draw._stroke = stroke; image.graphics2D().setStroke(new BasicStroke(thickness, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND)); }
+    public static void setStrokeRound(Image image, Color stroke, int thickness) { Draw._stroke = stroke; image.graphics2D().setStroke(strokeFor(thickness, true)); }
+    
+    private static void setStrokeStyle(Stroke strokeStyle) {
+        _strokeStyle = strokeStyle;
+        if (_g.getStroke() != strokeStyle) {
+            _g.setStroke(strokeStyle);
+        }
+    }
+    /** Returns a shared stroke of the given thickness, only creating a new one for unusually thick lines. **/
+    private static BasicStroke strokeFor(int thickness, boolean round) {
+        BasicStroke[] cache = round ? _roundStrokeCache : _strokeCache;
+        if (thickness >= 0 && thickness < _STROKE_CACHE_SIZE) {
+            if (cache[thickness] == null) {
+                cache[thickness] = round ? new BasicStroke(thickness, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND) : new BasicStroke(thickness);
+            }
+            return cache[thickness];
+        }
+        return round ? new BasicStroke(thickness, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND) : new BasicStroke(thickness);
+    }
+    
+    /** Starts recording shapes and text drawn to the screen instead of drawing them immediately. Everything recorded is drawn when 
+     * endBatch() is called, grouped by color, stroke and font so that Graphics2D changes state as little as possible. This can be much 
+     * faster when drawing thousands of shapes in only a few colors.
+     * <P>Only the order of shapes sharing the same colors is kept, and fills are drawn before outlines; see DrawBatch. Images and arcs 
+     * can't be batched, so drawing one flushes whatever has been recorded so far. Drawing to an Image is never batched. Does nothing 
+     * if a batch is already started. **/
+    public static void beginBatch() { _batching = true; }
+    /** Draws everything recorded since beginBatch() and goes back to drawing immediately. **/
+    public static void endBatch() { 
+        flushBatch();
+        _batching = false;
+    }
+    /** Draws everything recorded so far without ending the batch. Call this before drawing with getGraphics() directly during a batch. **/
+    public static void flushBatch() { _batch.flush(_g); }
+    /** Returns whether shapes drawn to the screen are currently being batched. **/
+    public static boolean isBatching() { return _batching; }
+
+    /** Sends everything drawn to the screen to g instead, until endOffscreen() is called with the graphics object this returns. Used by
+     * widgets rendering themselves into an image (see Widget.setRenderCaching()). g starts with the screen's rendering hints, font and
+     * stroke. Batching and damage tracking are off until the outermost endOffscreen(), so everything is drawn, straight away. **/
+    static Graphics2D beginOffscreen(Graphics2D g) {
+        if (_offscreenDepth++ == 0) {
+            if (_batching) {
+                flushBatch();
+            }
+            _offscreenBatching = _batching;
+            _offscreenDamageTracking = _damageTracking;
+            _batching = false;
+            _damageTracking = false;
+        }
+        g.setRenderingHints(_g.getRenderingHints());
+        g.setFont(_g.getFont());
+        g.setStroke(_g.getStroke());
+        Graphics2D screen = _g;
+        _g = g;
+        return screen;
+    }
+    /** Goes back to drawing to the screen after beginOffscreen(). The font and stroke set while drawing offscreen carry over, as they
+     * would have if it had been drawn to the screen. **/
+    static void endOffscreen(Graphics2D screen) {
+        screen.setFont(_g.getFont());
+        screen.setStroke(_g.getStroke());
+        _g = screen;
+        if (--_offscreenDepth == 0) {
+            _batching = _offscreenBatching;
+            _damageTracking = _offscreenDamageTracking;
+        }
+    }
+
+    /** Turns damage tracking on or off. Normally called through SimpleGUIApp.setDamageTracking().
+     * <P>With damage tracking on, the screen isn't cleared every frame. Widgets call markDirty() when something about them changes, and 
+     * at the start of drawing each frame only the marked areas are cleared with the background color and drawing is clipped to them. 
+     * Widgets outside those areas skip drawing entirely, and only the marked areas are copied to the window. Areas marked after the 
+     * frame has started drawing (e.g. by a widget updated after another was drawn) are redrawn in the next frame. 
+     * <P>Anything drawn with Draw directly (rather than by a widget) must be marked with markDirty() to show up. **/
+    public static void setDamageTracking(boolean damageTracking, Color background) {
+        _damageTracking = damageTracking;
+        _damageBackground = background;
+        _damagePrepared = false;
+        _lateDamage.clear();
+        if (_g != null) {
+            _g.setClip(null);
+        }
+        invalidateScreen();
+    }
+    /** Returns whether damage tracking is on. **/
+    public static boolean isDamageTracking() { return _damageTracking; }
+    /** Returns the areas of the screen that will be redrawn this frame. **/
+    public static DirtyRegion damage() { return _damage; }
+    /** Marks an area of the screen as needing to be redrawn. If this frame has already started drawing, the area is redrawn next frame,
+     * since drawing is clipped to what was marked before. Does nothing if damage tracking is off. **/
+    public static void markDirty(int x, int y, int w, int h) {
+        if (_damageTracking) {
+            (_damagePrepared ? _lateDamage : _damage).add(x, y, w, h);
+        }
+    }
+    /** Marks the whole screen as needing to be redrawn, this frame or, if it has already started drawing, the next. Does nothing if 
+     * damage tracking is off. **/
+    public static void invalidateScreen() {
+        if (_damageTracking && _app != null) {
+            (_damagePrepared ? _lateDamage : _damage).invalidateAll(_app.windowWidth(), _app.windowHeight());
+        }
+    }
+    /** Returns whether any part of the given area will be redrawn this frame. Always true if damage tracking is off. **/
+    public static boolean isDirty(int x, int y, int w, int h) {
+        return !_damageTracking || _damage.intersects(x, y, w, h);
+    }
+    /** Clears the dirty areas with the background color and clips drawing to them. Only does anything the first time it's called in a 
+     * frame; widgets call this when they start drawing. **/
+    public static void beginDamagedFrame() {
+        if (!_damageTracking || _damagePrepared) {
+            return;
+        }
+        _damagePrepared = true;
+        // Anything batched was drawn before the frame started, so it goes down before the dirty areas are cleared
+        if (_batching) {
+            flushBatch();
+        }
+        if (_damage.isEmpty()) {
+            _g.setClip(0, 0, 0, 0);
+            return;
+        }
+        _g.setClip(null);
+        Color oldColor = _g.getColor();
+        _g.setColor(_damageBackground);
+        for (int i=0; i<_damage.count(); i++) {
+            _g.fillRect(_damage.x(i), _damage.y(i), _damage.w(i), _damage.h(i));
+        }
+        _g.setColor(oldColor);
+        _g.setClip(_damage.toShape());
+    }
+    /** Forgets the dirty areas and removes the clip once the frame has been shown. Areas marked while the frame was drawing become the 
+     * next frame's dirty areas. Called within SimpleGUIApp. **/
+    public static void endDamagedFrame() {
+        DirtyRegion shown = _damage;
+        _damage = _lateDamage;
+        _lateDamage = shown;
+        _lateDamage.clear();
+        _damagePrepared = false;
+        _g.setClip(null);
+    }
     /** Sets the class's local color fields. **/
 	public static void setColors(Color fill, Color stroke) {
 		setFill(fill);
@@ -76,6 +245,10 @@ public class Draw {
 	 * @param y			series of y coordinates of the polygon.
 	 * @param numPoints	Number of points to use. **/
 	public static void polygon(int[] x, int[] y, int numPoints) {
+		if (_batching) {
+			_batch.polygon(x, y, numPoints, _fill, _stroke, _strokeStyle);
+			return;
+		}
 		polygon(_g, x, y, numPoints);
 	}
 	public static Image polygon(Image image, int[] x, int[] y, int numPoints) {
@@ -98,6 +271,10 @@ public class Draw {
 	 * @param w			width of the retangle. 
 	 * @param h			height of the rectangle. **/
 	public static void rect(int x, int y, int w, int h) {
+		if (_batching) {
+			_batch.rect(x, y, w, h, _fill, _stroke, _strokeStyle);
+			return;
+		}
 		rect(_g, x, y, w, h);
 	}
 	/** Draws a rectangle onto an image. The outline is specified by stroke, the fill by fill. 
@@ -128,6 +305,9 @@ public class Draw {
      * @param startAngle    Angle to begin the arc at
      * @param endAngle      Degrees to span arc*/
     public static void arc(int x, int y, int w, int h, int startAngle, int endAngle) {
+        if (_batching) {
+            flushBatch();
+        }
         arc(_g, x, y, w, h, startAngle, endAngle);
     }
     /** Draws an arc onto an image. The outline is specified by stroke, the fill by fill. 
@@ -158,6 +338,10 @@ public class Draw {
 	 * @param w			x diameter of the oval. 
 	 * @param h			y diameter of the oval. **/
 	public static void oval(int x, int y, int w, int h) {
+		if (_batching) {
+			_batch.oval(x, y, w, h, _fill, _stroke, _strokeStyle);
+			return;
+		}
 		oval(_g, x, y, w, h);
 	}
 	/** Draws an oval onto an image. The outline is specified by stroke, the fill by fill. 
@@ -186,6 +370,10 @@ public class Draw {
 	 * @param w			x radius of the oval. 
 	 * @param h			y radius of the oval. **/
 	public static void ovalCentered(int x, int y, int w, int h) {
+		if (_batching) {
+			_batch.oval(x-w, y-h, w*2, h*2, _fill, _stroke, _strokeStyle);
+			return;
+		}
 		ovalCentered(_g, x, y, w, h);
 	}
 	/** Draws an oval to an image centered at (x,y). The outline is specified by stroke, the fill by fill. 
@@ -217,6 +405,12 @@ public class Draw {
 	 * @param y3			y coordinate of the third point.
 	 * */
 	public static void tri(int x1, int y1, int x2, int y2, int x3, int y3) {
+		if (_batching) {
+			int[] x = {x1, x2, x3};
+			int[] y = {y1, y2, y3};
+			_batch.polygon(x, y, 3, _fill, _stroke, _strokeStyle);
+			return;
+		}
 		tri(_g, x1, y1, x2, y2, x3, y3);
 	}
 	/** Draws a triangle onto an image. The outline is specified by stroke, the fill by fill. 
@@ -243,6 +437,10 @@ public class Draw {
 	 * @param x2		x coordinate of another end. 
 	 * @param y2		y coordinate of another end. **/
 	public static void line(int x1, int y1, int x2, int y2) {
+		if (_batching) {
+			_batch.line(x1, y1, x2, y2, _stroke, _strokeStyle);
+			return;
+		}
 		line(_g, x1, y1, x2, y2);
 	}
 	/** Draws a line between two points onto an image. The color is specified by stroke. 
@@ -265,6 +463,26 @@ public class Draw {
 	/** Sets the stored Graphics2D object's stored font. 
 	 * @param font     New font to store **/
 	public static void setFont(Font font) { setFont(_g, font); }
+	
+	/** Returns the screen's current clip, or null if drawing isn't clipped. **/
+	public static Shape getClip() { return _g.getClip(); }
+	/** Sets the screen's clip, or removes it if null. Anything batched so far is drawn first, with the old clip. **/
+	public static void setClip(Shape clip) {
+		flushBatch();
+		_g.setClip(clip);
+	}
+	/** Limits drawing on the screen to the given rectangle, within whatever the clip already was. Anything batched so far is drawn 
+	 * first, with the old clip. **/
+	public static void clipRect(int x, int y, int w, int h) {
+		flushBatch();
+		_g.clipRect(x, y, w, h);
+	}
+	/** Stores the bounds of the screen's current clip in the given rectangle and returns it. If drawing isn't clipped, that's the 
+	 * whole screen. Doesn't allocate anything. **/
+	public static Rectangle getClipBounds(Rectangle bounds) {
+		bounds.setBounds(0, 0, _bimage.getWidth(), _bimage.getHeight());
+		return _g.getClipBounds(bounds);
+	}
 	/** Sets the font for the images graphics context. 
      * @param font     New font to store **/
 	public static void setFont(Image image, Font font) { setFont(image.graphics2D(), font); }
@@ -306,9 +524,8 @@ public class Draw {
 	}
 	private static void text(Graphics2D g2D, String textToDraw, int x, int y) {
 		if (_stroke != null) {
-			g2D.setColor(_stroke);
 			FontMetrics fm = getFontMetrics(g2D);
-			g2D.drawString(textToDraw, x, y + fm.getMaxAscent());
+			drawString(g2D, textToDraw, x, y + fm.getMaxAscent());
 		}
 	}
 	
@@ -331,9 +548,8 @@ public class Draw {
 	}
 	private static void textRight(Graphics2D g2D, String textToDraw, int x, int y) {
 		if (_stroke != null) {
-			g2D.setColor(_stroke);
 			FontMetrics fm = getFontMetrics(g2D);
-			g2D.drawString(textToDraw, x-fm.stringWidth(textToDraw), y + fm.getMaxAscent());
+			drawString(g2D, textToDraw, x-fm.stringWidth(textToDraw), y + fm.getMaxAscent());
 		}
 	}
 	
@@ -379,9 +595,17 @@ public class Draw {
 	}
 	private static void textCentered(Graphics2D g2D, String textToDraw, int x, int y) {
 		if (_stroke != null) {
-			g2D.setColor(_stroke);
 			FontMetrics fm = getFontMetrics(g2D);
-			g2D.drawString(textToDraw, x - fm.stringWidth(textToDraw)/2, (int)(y + fm.getStringBounds(textToDraw, g2D).getHeight()/4.0));
+			drawString(g2D, textToDraw, x - fm.stringWidth(textToDraw)/2, (int)(y + fm.getStringBounds(textToDraw, g2D).getHeight()/4.0));
+		}
+	}
+	/** Draws a string with its baseline at (x, y) in the stroke color, or records it if the screen is being batched. **/
+	private static void drawString(Graphics2D g2D, String textToDraw, int x, int y) {
+		if (_batching && g2D == _g) {
+			_batch.text(textToDraw, x, y, g2D.getFont(), _stroke);
+		} else {
+			g2D.setColor(_stroke);
+			g2D.drawString(textToDraw, x, y);
 		}
 	}
 	
@@ -435,9 +659,15 @@ public class Draw {
 		return imageBuffer;
 	}
 	
-	private static void image(Graphics2D g2D, Image imageToDraw, int x, int y) { imageToDraw.draw(g2D, x, y); }
-	private static void imageCentered(Graphics2D g2D, Image imageToDraw, int x, int y) { imageToDraw.drawCentered(g2D, x, y); }
-	private static void imageRotated(Graphics2D g2D, Image imageToDraw, int x, int y, double angle) { imageToDraw.drawRotated(g2D, x, y, angle); }
+	private static void image(Graphics2D g2D, Image imageToDraw, int x, int y) { flushBatchBefore(g2D); imageToDraw.draw(g2D, x, y); }
+	private static void imageCentered(Graphics2D g2D, Image imageToDraw, int x, int y) { flushBatchBefore(g2D); imageToDraw.drawCentered(g2D, x, y); }
+	private static void imageRotated(Graphics2D g2D, Image imageToDraw, int x, int y, double angle) { flushBatchBefore(g2D); imageToDraw.drawRotated(g2D, x, y, angle); }
+	/** Images can't be batched, so anything recorded for the screen is drawn first to keep it underneath. **/
+	private static void flushBatchBefore(Graphics2D g2D) {
+		if (_batching && g2D == _g) {
+			flushBatch();
+		}
+	}
 	
 	/** Multiplies each value in a Color object by a constant.
 	 * @param c				Base color
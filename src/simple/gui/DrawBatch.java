@@ -0,0 +1,315 @@
+package simple.gui;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Stroke;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Records shapes and text and draws them later with as few Graphics2D state changes as possible.
+ * <P>Shapes are grouped by fill color, and by stroke color and stroke style, with each group merged into a single path. Text is grouped
+ * by font and color. When flushed, all fills are drawn first, then all outlines, then all text, with one color/stroke/font change per
+ * group. Within a group, things are drawn in the order they were recorded.
+ * <P>This means drawing order is only kept within a group: a shape recorded later will not cover a shape of a different color that was
+ * recorded earlier, and outlines always end up on top of fills. Batching is meant for things that don't overlap (or where overlap order
+ * doesn't matter), like tiles on a map.
+ * <P>Normally you don't use this directly; see Draw.beginBatch() and Draw.endBatch(). **/
+public class DrawBatch {
+	/** Number of remembered groups after which unused groups are discarded on flush. **/
+	private static final int _MAX_RETAINED_GROUPS = 256;
+
+	private static class ShapeGroup {
+		final Color color;
+		final Stroke stroke;
+		final Path2D.Float path;
+		boolean active;
+
+		ShapeGroup(Color color, Stroke stroke) {
+			this.color = color;
+			this.stroke = stroke;
+			this.path = new Path2D.Float(Path2D.WIND_NON_ZERO);
+		}
+	}
+
+	private static class TextGroup {
+		final Font font;
+		final Color color;
+		String[] strings;
+		int[] xs, ys;
+		int size;
+		boolean active;
+
+		TextGroup(Font font, Color color) {
+			this.font = font;
+			this.color = color;
+			this.strings = new String[16];
+			this.xs = new int[16];
+			this.ys = new int[16];
+			this.size = 0;
+		}
+
+		void add(String text, int x, int y) {
+			if (size == strings.length) {
+				int newLength = size*2;
+				strings = Arrays.copyOf(strings, newLength);
+				xs = Arrays.copyOf(xs, newLength);
+				ys = Arrays.copyOf(ys, newLength);
+			}
+			strings[size] = text;
+			xs[size] = x;
+			ys[size] = y;
+			size++;
+		}
+	}
+
+	private Map<Color, ShapeGroup> _fillGroups;
+	private Map<Stroke, Map<Color, ShapeGroup>> _strokeGroups;
+	private Map<Font, Map<Color, TextGroup>> _textGroups;
+
+	private List<ShapeGroup> _activeFills, _activeStrokes;
+	private List<TextGroup> _activeText;
+
+	// Most consecutive calls use the same colors, so the last group used is remembered to skip the map lookups
+	private ShapeGroup _lastFill, _lastStroke;
+	private TextGroup _lastText;
+
+	private Ellipse2D.Float _ellipse;
+	private int _size;
+
+	/** Returns the number of shapes and strings recorded since the last flush **/
+	public int size() { return _size; }
+	/** Returns whether nothing has been recorded since the last flush **/
+	public boolean isEmpty() { return _size == 0; }
+
+	public DrawBatch() {
+		_fillGroups = new HashMap<Color, ShapeGroup>();
+		_strokeGroups = new HashMap<Stroke, Map<Color, ShapeGroup>>();
+		_textGroups = new HashMap<Font, Map<Color, TextGroup>>();
+		_activeFills = new ArrayList<ShapeGroup>();
+		_activeStrokes = new ArrayList<ShapeGroup>();
+		_activeText = new ArrayList<TextGroup>();
+		_ellipse = new Ellipse2D.Float();
+		_size = 0;
+	}
+
+	/** Records a rectangle. Either color may be null to skip that part. A null stroke style uses the graphics object's stroke. **/
+	public void rect(int x, int y, int w, int h, Color fill, Color stroke, Stroke strokeStyle) {
+		if (fill != null) {
+			Path2D.Float path = fillGroup(fill).path;
+			path.moveTo(x, y);
+			path.lineTo(x+w, y);
+			path.lineTo(x+w, y+h);
+			path.lineTo(x, y+h);
+			path.closePath();
+		}
+		if (stroke != null) {
+			Path2D.Float path = strokeGroup(stroke, strokeStyle).path;
+			path.moveTo(x, y);
+			path.lineTo(x+w, y);
+			path.lineTo(x+w, y+h);
+			path.lineTo(x, y+h);
+			path.closePath();
+		}
+		_size++;
+	}
+	/** Records an oval inside the given bounding box. Either color may be null to skip that part. **/
+	public void oval(int x, int y, int w, int h, Color fill, Color stroke, Stroke strokeStyle) {
+		_ellipse.setFrame(x, y, w, h);
+		if (fill != null) {
+			fillGroup(fill).path.append(_ellipse, false);
+		}
+		if (stroke != null) {
+			strokeGroup(stroke, strokeStyle).path.append(_ellipse, false);
+		}
+		_size++;
+	}
+	/** Records a polygon. Either color may be null to skip that part.
+	 * <P>Fills of the same color are merged, so overlapping polygons fill their union. Polygons that cross themselves are filled with the
+	 * non-zero rule rather than the even-odd rule Graphics2D.fillPolygon() uses. **/
+	public void polygon(int[] x, int[] y, int numPoints, Color fill, Color stroke, Stroke strokeStyle) {
+		if (numPoints <= 0) {
+			return;
+		}
+		if (fill != null) {
+			// All polygons are added with the same winding direction, otherwise overlapping ones would cancel out under the non-zero rule
+			Path2D.Float path = fillGroup(fill).path;
+			if (signedArea(x, y, numPoints) >= 0) {
+				path.moveTo(x[0], y[0]);
+				for (int i=1; i<numPoints; i++) {
+					path.lineTo(x[i], y[i]);
+				}
+			} else {
+				path.moveTo(x[numPoints-1], y[numPoints-1]);
+				for (int i=numPoints-2; i>=0; i--) {
+					path.lineTo(x[i], y[i]);
+				}
+			}
+			path.closePath();
+		}
+		if (stroke != null) {
+			Path2D.Float path = strokeGroup(stroke, strokeStyle).path;
+			path.moveTo(x[0], y[0]);
+			for (int i=1; i<numPoints; i++) {
+				path.lineTo(x[i], y[i]);
+			}
+			path.closePath();
+		}
+		_size++;
+	}
+	/** Records a line. Does nothing if the color is null. **/
+	public void line(int x1, int y1, int x2, int y2, Color stroke, Stroke strokeStyle) {
+		if (stroke == null) {
+			return;
+		}
+		Path2D.Float path = strokeGroup(stroke, strokeStyle).path;
+		path.moveTo(x1, y1);
+		path.lineTo(x2, y2);
+		_size++;
+	}
+	/** Records a string to be drawn with its baseline starting at (x, y). Does nothing if the color is null. **/
+	public void text(String text, int x, int y, Font font, Color color) {
+		if (color == null) {
+			return;
+		}
+		TextGroup group = _lastText;
+		if (group == null || group.font != font || group.color != color) {
+			Map<Color, TextGroup> byColor = _textGroups.get(font);
+			if (byColor == null) {
+				byColor = new HashMap<Color, TextGroup>();
+				_textGroups.put(font, byColor);
+			}
+			group = byColor.get(color);
+			if (group == null) {
+				group = new TextGroup(font, color);
+				byColor.put(color, group);
+			}
+			_lastText = group;
+		}
+		if (!group.active) {
+			group.active = true;
+			_activeText.add(group);
+		}
+		group.add(text, x, y);
+		_size++;
+	}
+
+	/** Draws everything recorded onto the given graphics object and empties the batch. The graphics object's color, stroke and font are
+	 * restored afterwards. **/
+	public void flush(Graphics2D g) {
+		if (_size == 0) {
+			return;
+		}
+		Color oldColor = g.getColor();
+		Stroke oldStroke = g.getStroke();
+		Font oldFont = g.getFont();
+
+		for (ShapeGroup group: _activeFills) {
+			g.setColor(group.color);
+			g.fill(group.path);
+		}
+		for (ShapeGroup group: _activeStrokes) {
+			// A null stroke style means whatever stroke the graphics object had when flushed
+			Stroke stroke = (group.stroke == null) ? oldStroke : group.stroke;
+			if (g.getStroke() != stroke) {
+				g.setStroke(stroke);
+			}
+			g.setColor(group.color);
+			g.draw(group.path);
+		}
+		for (TextGroup group: _activeText) {
+			g.setFont(group.font);
+			g.setColor(group.color);
+			for (int i=0; i<group.size; i++) {
+				g.drawString(group.strings[i], group.xs[i], group.ys[i]);
+			}
+		}
+
+		g.setColor(oldColor);
+		g.setStroke(oldStroke);
+		g.setFont(oldFont);
+		clear();
+	}
+
+	/** Discards everything recorded since the last flush. **/
+	public void clear() {
+		for (ShapeGroup group: _activeFills) {
+			group.path.reset();
+			group.active = false;
+		}
+		for (ShapeGroup group: _activeStrokes) {
+			group.path.reset();
+			group.active = false;
+		}
+		for (TextGroup group: _activeText) {
+			Arrays.fill(group.strings, 0, group.size, null);
+			group.size = 0;
+			group.active = false;
+		}
+		_activeFills.clear();
+		_activeStrokes.clear();
+		_activeText.clear();
+		_size = 0;
+
+		// Groups are kept between flushes so their paths can be reused, but not indefinitely if many different colors come and go
+		if (_fillGroups.size() + _strokeGroups.size() + _textGroups.size() > _MAX_RETAINED_GROUPS) {
+			_fillGroups.clear();
+			_strokeGroups.clear();
+			_textGroups.clear();
+			_lastFill = null;
+			_lastStroke = null;
+			_lastText = null;
+		}
+	}
+
+	private ShapeGroup fillGroup(Color fill) {
+		ShapeGroup group = _lastFill;
+		if (group == null || group.color != fill) {
+			group = _fillGroups.get(fill);
+			if (group == null) {
+				group = new ShapeGroup(fill, null);
+				_fillGroups.put(fill, group);
+			}
+			_lastFill = group;
+		}
+		if (!group.active) {
+			group.active = true;
+			_activeFills.add(group);
+		}
+		return group;
+	}
+	private ShapeGroup strokeGroup(Color stroke, Stroke strokeStyle) {
+		ShapeGroup group = _lastStroke;
+		if (group == null || group.color != stroke || group.stroke != strokeStyle) {
+			Map<Color, ShapeGroup> byColor = _strokeGroups.get(strokeStyle);
+			if (byColor == null) {
+				byColor = new HashMap<Color, ShapeGroup>();
+				_strokeGroups.put(strokeStyle, byColor);
+			}
+			group = byColor.get(stroke);
+			if (group == null) {
+				group = new ShapeGroup(stroke, strokeStyle);
+				byColor.put(stroke, group);
+			}
+			_lastStroke = group;
+		}
+		if (!group.active) {
+			group.active = true;
+			_activeStrokes.add(group);
+		}
+		return group;
+	}
+
+	private static long signedArea(int[] x, int[] y, int numPoints) {
+		long area = 0;
+		for (int i=0, j=numPoints-1; i<numPoints; j=i++) {
+			area += (long)x[j]*y[i] - (long)x[i]*y[j];
+		}
+		return area;
+	}
+}
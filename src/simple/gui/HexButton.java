@@ -25,9 +25,9 @@ public class HexButton extends HexWidget {
     }
     /** Sets only the fill color, doesn't adjust the other colors */
     public void setOnlyFillColor(Color fillColor) { super.setFillColor(fillColor); }
-    public void setHoverColor(Color hoverColor) { _hoverColor = hoverColor; }
-    public void setClickColor(Color clickColor) { _clickColor = clickColor; }
-    public void setDisabledColor(Color disabledColor) { _disabledColor = disabledColor; }
+    public void setHoverColor(Color hoverColor) { _hoverColor = hoverColor; markDirty(); }
+    public void setClickColor(Color clickColor) { _clickColor = clickColor; markDirty(); }
+    public void setDisabledColor(Color disabledColor) { _disabledColor = disabledColor; markDirty(); }
     
     @Override
     public void setEnabled(boolean enabled) { 
@@ -40,7 +40,7 @@ public class HexButton extends HexWidget {
     @Override
     public void blockWidget() { super.blockWidget(); _currentColor = _fillColor; }
     
-    public void setText(String text) { _textLabel.setText(text); }
+    public void setText(String text) { _textLabel.setText(text); markDirty(); }
     @Override
     public void setFont(Font font) {
         super.setFont(font);
@@ -107,7 +107,7 @@ public class HexButton extends HexWidget {
             _currentColor = _fillColor;
         }
         
-        _textLabel.draw();
+        _textLabel.update();
     }
 
     @Override
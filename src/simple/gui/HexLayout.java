@@ -0,0 +1,163 @@
+package simple.gui;
+
+import simple.gui.HexWidget.HexType;
+import simple.misc.hex.HexArray;
+import simple.misc.hex.HexArrayFunctions;
+import simple.misc.hex.HexData;
+import simple.misc.hex.IntTriConsumer;
+import simple.misc.hex.Tuple;
+import simple.run.Input;
+
+/** Converts between screen pixels and the cube coordinates of a board of hexes, all the same size and orientation.<P>
+ *
+ *  The hex at cube coordinates (hx, hy, hz) is centered at origin + hx*a0 + hy*a1 + hz*a2, where a0, a1 and a2 are the axis vectors
+ *  of HexWidget.getAxisVectors() scaled by the radius, the same placement HexWidgets are usually laid out with. Going the other way is
+ *  a 2x2 matrix product and a cube rounding, so finding the hex under a point takes constant time however big the board is: one
+ *  lookup in the HexArray instead of asking every HexWidget whether it contains the mouse.<P>
+ *
+ *  The corner offsets of a hex are computed once per layout and shared by every hex. Conversions of many hexes or points at once can
+ *  be done with the array versions, whose plain loops the JIT compiler can unroll and vectorize.
+ * */
+public class HexLayout {
+    private static final double[][] UNIT_CORNERS_FLAT = unitCorners(0);
+    private static final double[][] UNIT_CORNERS_POINT = unitCorners(Math.PI/6);
+
+    private static double[][] unitCorners(double offset) {
+        double[][] corners = new double[2][6];
+        for (int i=0; i<6; i++) {
+            corners[0][i] = Math.cos(Math.PI*(i*2)/6 + offset);
+            corners[1][i] = Math.sin(Math.PI*(i*2)/6 + offset);
+        }
+        return corners;
+    }
+    /** Returns the corners of a hex of radius 1 centered on (0, 0), as {x offsets, y offsets}. Must not be modified */
+    public static double[][] unitCorners(HexType hexType) {
+        return (hexType == HexType.FLAT_TOP) ? UNIT_CORNERS_FLAT : UNIT_CORNERS_POINT;
+    }
+
+    protected final HexType _hexType;
+    protected final float _originx, _originy, _radiusx, _radiusy;
+    /** Pixel offsets of one step along each cube axis */
+    private final double _x0, _y0, _x1, _y1, _x2, _y2;
+    /** Inverse of the matrix taking (hx, hz) to a pixel offset, for hexes on the plane hx+hy+hz = 0 */
+    private final double _qx, _qy, _rx, _ry;
+    /** Pixel offsets of the corners from the center */
+    private final float[] _cornerx, _cornery;
+
+    public HexLayout(HexType hexType, float originx, float originy, float radius) {
+        this(hexType, originx, originy, radius, radius);
+    }
+    /** Creates a layout where (0, 0, 0) is centered at the origin, for hexes with the given radius. Different x and y radii stretch
+     *  the hexes the same way HexWidget.setRadius(radiusx, radiusy) does */
+    public HexLayout(HexType hexType, float originx, float originy, float radiusx, float radiusy) {
+        if (hexType == null) { throw new IllegalArgumentException("hexType must not be null"); }
+        if (!(radiusx > 0 && radiusy > 0)) { throw new IllegalArgumentException("radius must be positive"); }
+        _hexType = hexType;
+        _originx = originx;
+        _originy = originy;
+        _radiusx = radiusx;
+        _radiusy = radiusy;
+
+        float[][] axes = HexWidget.getAxisVectors(hexType);
+        _x0 = axes[0][0]*radiusx; _y0 = axes[0][1]*radiusy;
+        _x1 = axes[1][0]*radiusx; _y1 = axes[1][1]*radiusy;
+        _x2 = axes[2][0]*radiusx; _y2 = axes[2][1]*radiusy;
+        // With hy = -hx-hz, a step in hx moves by a0-a1 and a step in hz by a2-a1
+        double xq = _x0 - _x1, yq = _y0 - _y1, xr = _x2 - _x1, yr = _y2 - _y1;
+        double det = xq*yr - xr*yq;
+        _qx =  yr/det; _qy = -xr/det;
+        _rx = -yq/det; _ry =  xq/det;
+
+        double[][] unit = unitCorners(hexType);
+        _cornerx = new float[6];
+        _cornery = new float[6];
+        for (int i=0; i<6; i++) {
+            _cornerx[i] = (float)(radiusx*unit[0][i]);
+            _cornery[i] = (float)(radiusy*unit[1][i]);
+        }
+    }
+
+    public HexType hexType() { return _hexType; }
+    public float originx()   { return _originx; }
+    public float originy()   { return _originy; }
+    public float radiusx()   { return _radiusx; }
+    public float radiusy()   { return _radiusy; }
+    /** Returns the x offset of corner i (0 to 5) from the center of any hex */
+    public float cornerx(int i) { return _cornerx[i]; }
+    /** Returns the y offset of corner i (0 to 5) from the center of any hex */
+    public float cornery(int i) { return _cornery[i]; }
+
+    /****************
+     * HEX TO PIXEL *
+     ****************/
+    /** Returns the x coordinate of the center of the hex */
+    public float pixelx(int hx, int hy, int hz) { return (float)(_originx + hx*_x0 + hy*_x1 + hz*_x2); }
+    /** Returns the y coordinate of the center of the hex */
+    public float pixely(int hx, int hy, int hz) { return (float)(_originy + hx*_y0 + hy*_y1 + hz*_y2); }
+    public float pixelx(Tuple cube) { return pixelx(cube.entry(0), cube.entry(1), cube.entry(2)); }
+    public float pixely(Tuple cube) { return pixely(cube.entry(0), cube.entry(1), cube.entry(2)); }
+
+    /** Writes the centers of count hexes, given as coordinate arrays, into px and py */
+    public void hexToPixel(int[] hx, int[] hy, int[] hz, float[] px, float[] py, int count) {
+        for (int i=0; i<count; i++) {
+            px[i] = (float)(_originx + hx[i]*_x0 + hy[i]*_x1 + hz[i]*_x2);
+        }
+        for (int i=0; i<count; i++) {
+            py[i] = (float)(_originy + hx[i]*_y0 + hy[i]*_y1 + hz[i]*_y2);
+        }
+    }
+    /** Writes the corners of the hex into xs and ys (which need room for 6), ready for Draw.polygon() */
+    public void corners(int hx, int hy, int hz, int[] xs, int[] ys) {
+        float cx = pixelx(hx, hy, hz), cy = pixely(hx, hy, hz);
+        for (int i=0; i<6; i++) {
+            xs[i] = (int)(cx + _cornerx[i]);
+            ys[i] = (int)(cy + _cornery[i]);
+        }
+    }
+
+    /****************
+     * PIXEL TO HEX *
+     ****************/
+    /** Passes the cube coordinates of the hex containing the point to the action */
+    public void pixelToHex(float px, float py, IntTriConsumer action) {
+        double dx = px - _originx, dy = py - _originy;
+        double q = _qx*dx + _qy*dy, r = _rx*dx + _ry*dy;
+        HexArrayFunctions.round(q, -q-r, r, action);
+    }
+    /** Returns the cube coordinates of the hex containing the point */
+    public Tuple pixelToHex(float px, float py) {
+        double dx = px - _originx, dy = py - _originy;
+        double q = _qx*dx + _qy*dy, r = _rx*dx + _ry*dy;
+        return HexArrayFunctions.round(q, -q-r, r);
+    }
+    /** Writes the cube coordinates of the hexes containing count points into hx, hy and hz */
+    public void pixelToHex(float[] px, float[] py, int[] hx, int[] hy, int[] hz, int count) {
+        for (int i=0; i<count; i++) {
+            double dx = px[i] - _originx, dy = py[i] - _originy;
+            double q = _qx*dx + _qy*dy, r = _rx*dx + _ry*dy, s = -q-r;
+            // Same cube rounding as HexArrayFunctions.round(): round each component, then fix the one that moved furthest
+            long rq = Math.round(q), rs = Math.round(s), rr = Math.round(r);
+            double eq = Math.abs(rq - q), es = Math.abs(rs - s), er = Math.abs(rr - r);
+            if (eq > es && eq > er) {
+                rq = -rs-rr;
+            } else if (es > er) {
+                rs = -rq-rr;
+            } else {
+                rr = -rq-rs;
+            }
+            hx[i] = (int)rq;
+            hy[i] = (int)rs;
+            hz[i] = (int)rr;
+        }
+    }
+
+    /** Returns the hex of the array containing the point, or null if the array has none there. The array must be keyed by cube
+     *  coordinates */
+    public <T> HexData<T> hexAt(HexArray<T> hexes, float px, float py) {
+        return hexes.index(pixelToHex(px, py));
+    }
+    /** Returns the hex of the array under the mouse, or null if the array has none there */
+    public <T> HexData<T> hexUnderMouse(HexArray<T> hexes) {
+        return hexAt(hexes, Input.mouseX(), Input.mouseY());
+    }
+}
@@ -17,6 +17,8 @@ public abstract class HexWidget extends Widget {
             {(float)Math.cos(Math.PI*5.0/6), (float)Math.sin(Math.PI*5.0/6)},
             {0, -1}
         };
+    private static final double SIN_60 = Math.sin(Math.PI/3);
+    private static final double COS_30 = Math.cos(Math.PI/6);
     public static float[][] getAxisVectors(HexType hexType) {
         switch(hexType) {
         case FLAT_TOP:
@@ -72,18 +74,19 @@ public abstract class HexWidget extends Widget {
         setRadius(radius, radius);
     }
     public void setRadius(float radiusx, float radiusy) {
-        double offset = (_hexType == HexType.FLAT_TOP) ? 0 : Math.PI/6;
+        // Corners come from a table shared by every hex of the same type, instead of six cos/sin calls per widget
+        double[][] corners = HexLayout.unitCorners(_hexType);
         for (int i=0; i<6; i++) {
-            _hexPoints[0][i] = (int)(radiusx*Math.cos(Math.PI*(i*2)/6 + offset) + _centerx);
-            _hexPoints[1][i] = (int)(radiusy*Math.sin(Math.PI*(i*2)/6 + offset) + _centery);
+            _hexPoints[0][i] = (int)(radiusx*corners[0][i] + _centerx);
+            _hexPoints[1][i] = (int)(radiusy*corners[1][i] + _centery);
         }
         
         switch(_hexType) {
         case FLAT_TOP:
-            radiusy *= Math.sin(Math.PI/3);
+            radiusy *= SIN_60;
             break;
         case POINT_TOP:
-            radiusx *= Math.cos(Math.PI/6);
+            radiusx *= COS_30;
             break;
         }
         
@@ -1,6 +1,11 @@
 package simple.gui;
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
 import java.awt.Color;
+import java.awt.Font;
 import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
 import java.io.File;
@@ -94,7 +99,12 @@ public final class Image {
 		}
 	}
 	
+    private static final BasicStroke _DEFAULT_STROKE = new BasicStroke();
+    
     private BufferedImage _image;            
+    private Graphics2D _graphics;
+    private Font _defaultFont;
+    private RenderingHints _defaultHints;
     private String _filename;                   
     private int _w, _h;          
     private Orientation _orientation;
@@ -107,7 +117,38 @@ public final class Image {
     public Orientation orientation() { return _orientation; }
     /** Returns the BufferedImage object from the image. **/
     public BufferedImage bufferedImage() { return _image; }
-    public Graphics2D graphics2D() { return _image.createGraphics(); }
+    /** Returns the Graphics2D object used to draw onto this image. It is created on first use and reused for every call after that, so 
+     * state set on it (font, stroke, transform, clip, etc.) carries over between draw calls until resetGraphics() or dispose() is called. **/
+    public Graphics2D graphics2D() { 
+        if (_graphics == null) {
+            _graphics = _image.createGraphics();
+            _defaultFont = _graphics.getFont();
+            _defaultHints = (RenderingHints)_graphics.getRenderingHints().clone();
+        }
+        return _graphics; 
+    }
+    /** Resets the state of this image's Graphics2D object (transform, clip, composite, stroke, paint, font and rendering hints) to what it 
+     * was when it was created. Does nothing if the Graphics2D object hasn't been created yet. **/
+    public void resetGraphics() {
+        if (_graphics == null) {
+            return;
+        }
+        _graphics.setTransform(new AffineTransform());
+        _graphics.setClip(null);
+        _graphics.setComposite(AlphaComposite.SrcOver);
+        _graphics.setStroke(_DEFAULT_STROKE);
+        _graphics.setPaint(Color.WHITE);
+        _graphics.setBackground(Color.BLACK);
+        _graphics.setFont(_defaultFont);
+        _graphics.setRenderingHints(_defaultHints);
+    }
+    /** Releases this image's Graphics2D object. The image can still be drawn onto afterwards, in which case a new one is created. **/
+    public void dispose() {
+        if (_graphics != null) {
+            _graphics.dispose();
+            _graphics = null;
+        }
+    }
     /** Returns the filename of the image. If it is an image created without a filename, then a default filename is used:
      *the String (image width) + "-by-" + (image height). **/
     public String fileName() { return _filename; }
@@ -163,7 +204,7 @@ public final class Image {
 		try {
 			BufferedImage temp = ImageIO.read(is);
 	    	imageToCopy = new BufferedImage(temp.getWidth(), temp.getHeight(), BufferedImage.TYPE_INT_ARGB);
-	    	imageToCopy.createGraphics().drawImage(temp, 0, 0, null);
+	    	drawOnce(imageToCopy, temp);
 			
 			_w = imageToCopy.getWidth();
 			_h = imageToCopy.getHeight();
@@ -188,7 +229,7 @@ public final class Image {
             if (file.isFile()) {
             	BufferedImage temp = ImageIO.read(file);
     	    	_image = new BufferedImage(temp.getWidth(), temp.getHeight(), BufferedImage.TYPE_INT_ARGB);
-    	    	_image.createGraphics().drawImage(temp, 0, 0, null);
+    	    	drawOnce(_image, temp);
             }
 
             // now try to read from file in same directory as this .class file
@@ -212,7 +253,7 @@ public final class Image {
         try { 
         	BufferedImage temp = ImageIO.read(file);
 	    	_image = new BufferedImage(temp.getWidth(), temp.getHeight(), BufferedImage.TYPE_INT_ARGB);
-	    	_image.createGraphics().drawImage(temp, 0, 0, null);
+	    	drawOnce(_image, temp);
         }
         catch (IOException e) {
             e.printStackTrace();
@@ -227,6 +268,13 @@ public final class Image {
         _orientation = Orientation.UP;
     }
     
+    /** Copies a loaded image into a new buffer with a temporary Graphics2D object. **/
+    private static void drawOnce(BufferedImage destination, BufferedImage source) {
+        Graphics2D g = destination.createGraphics();
+        g.drawImage(source, 0, 0, null);
+        g.dispose();
+    }
+    
     /** Returns a copy of an image object resized to new bounds. Scales pixels by deciding which pixel has the best claim (which pixel is closest
      * to the empty pixel upon resize). Does not perform any anti-aliasing. WARNING: If you shrink an image and set that image to it, the
      * old data is permanently lost.
@@ -29,11 +29,20 @@ public class ImageBox extends Widget {
 			this._baseImage = rotatedImage; 
 			this._image = rotatedImage.resize(_w, _h); 
 		}
+		markDirty();
 	}
 	/** Sets whether the image to to be drawn centered to the (x, y) position or at the corner. **/
-	public void setDrawCentered(boolean drawCentered) { _drawCentered = drawCentered; }
+	public void setDrawCentered(boolean drawCentered) { 
+		markDirty();
+		_drawCentered = drawCentered; 
+		markDirty();
+	}
 	/** Sets the angle to draw the imageBox. **/
-	public void setAngle(double angle) { _angle = angle; }
+	public void setAngle(double angle) { 
+		markDirty();
+		_angle = angle; 
+		markDirty();
+	}
 	
 	/** Sets the imageBox's size, and resizes the Image object as well. **/
 	public void setSize(int w, int h) {
@@ -77,8 +86,42 @@ public class ImageBox extends Widget {
 		    _image = null;
 			setSize(tmp.w(), tmp.h());
 			_image = tmp;
+			markDirty();
+		}
+	}
+	
+	/** Centered and rotated images are drawn around (x, y) rather than inside the bounds, so a larger area is marked for those. **/
+	@Override
+	public void markDirty() {
+		if (_angle != 0 || _drawCentered) {
+			// Half the diagonal covers the image at any angle
+			int r = (int)Math.ceil(Math.sqrt(_w*_w + _h*_h)/2) + _DIRTY_PADDING;
+			Draw.markDirty(_x-r, _y-r, r*2, r*2);
+		} else {
+			super.markDirty();
 		}
 	}
+	@Override
+	public boolean mayDrawIn(int x, int y, int w, int h) {
+		if (_angle != 0 || _drawCentered) {
+			int r = (int)Math.ceil(Math.sqrt(_w*_w + _h*_h)/2) + _DIRTY_PADDING;
+			return _x+r > x && x+w > _x-r && _y+r > y && y+h > _y-r;
+		}
+		return super.mayDrawIn(x, y, w, h);
+	}
+	@Override
+	protected boolean needsRedraw() {
+		if (_angle != 0 || _drawCentered) {
+			int r = (int)Math.ceil(Math.sqrt(_w*_w + _h*_h)/2) + _DIRTY_PADDING;
+			return Draw.isDirty(_x-r, _y-r, r*2, r*2);
+		}
+		return super.needsRedraw();
+	}
+	/** Centered and rotated images don't fit the render cache's images, so they're always drawn directly. **/
+	@Override
+	protected boolean canCacheRender() {
+		return _angle == 0 && !_drawCentered;
+	}
 
 	public ImageBox() {
 		this(0, 0, null, Image.Orientation.UP);
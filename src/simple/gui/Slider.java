@@ -32,7 +32,13 @@ public class Slider extends Widget {
 	public boolean valueChanged() { return _valueChanged; }
 	
 	/** Sets the current value of the slider. Value is bounded within [low, high] **/
-	public void setValue(int value) { _value = Math.max(Math.min(value, _high), _low); }
+	public void setValue(int value) { 
+		int newValue = Math.max(Math.min(value, _high), _low);
+		if (newValue != _value) {
+			_value = newValue;
+			markDirty();
+		}
+	}
 	/** Sets the new range for the slider. If newHigh is greater than newLow, they will switch. Value is bounded by [newLow, newHigh] **/
 	public void setRange(int low, int high) { 
 		_low = Math.min(low, high);
@@ -82,6 +88,7 @@ public class Slider extends Widget {
 	protected void updateWidget() {
 		_valueChanged = (_oldValue != _value);
 		_oldValue = _value;
+		int valueBefore = _value;
 		
 		if (clicking()) {
 		    _holdingMouse = true;
@@ -113,6 +120,10 @@ public class Slider extends Widget {
 				_value = _low + _high - _value;
 			}
 	    }
+	    
+	    if (_value != valueBefore) {
+	        markDirty();
+	    }
 	}
 
 	@Override
@@ -0,0 +1,133 @@
+package simple.gui;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.font.FontRenderContext;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Cached character widths of one font, for measuring and wrapping text without asking FontMetrics about every substring.
+ * <P>The advance of each Latin-1 character is measured once when the metrics are created and kept in an array; other characters are
+ * measured the first time they're asked for and kept in a map. The width of a string is the sum of the advances of its characters,
+ * which is what FontMetrics.stringWidth() gives as long as fractional metrics are off and the font has no kerning or ligatures turned on.
+ * <P>To wrap a line, measure it once with prefixWidths() and find each break with lastFitting(), a binary search, instead of measuring
+ * longer and longer (or shorter and shorter) substrings.
+ * <P>Metrics are kept per Font and FontRenderContext, since antialiasing and fractional metrics can change the widths; get them with
+ * Draw.getTextMetrics(). Only the most recently used _MAX_CACHED_METRICS are kept, so fonts derived on the fly don't pile up. **/
+public final class TextMetrics {
+	/** Number of fonts and render contexts whose metrics are kept. **/
+	private static final int _MAX_CACHED_METRICS = 64;
+	private static final int _DENSE_CHARS = 256;
+
+	/** Font and render context the widths were measured with. **/
+	private static final class Key {
+		final Font font;
+		final FontRenderContext frc;
+		Key(Font font, FontRenderContext frc) {
+			this.font = font;
+			this.frc = frc;
+		}
+		@Override
+		public int hashCode() { return font.hashCode()*31 + frc.hashCode(); }
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) { return false; }
+			Key other = (Key)obj;
+			return font.equals(other.font) && frc.equals(other.frc);
+		}
+	}
+	private static final LinkedHashMap<Key, TextMetrics> _metrics = new LinkedHashMap<Key, TextMetrics>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, TextMetrics> eldest) { return size() > _MAX_CACHED_METRICS; }
+	};
+
+	/** Returns the metrics of a font as drawn by the given graphics object, measuring them if they haven't been asked for before. **/
+	static synchronized TextMetrics get(Font font, Graphics2D g2D) {
+		Key key = new Key(font, g2D.getFontRenderContext());
+		TextMetrics metrics = _metrics.get(key);
+		if (metrics == null) {
+			metrics = new TextMetrics(g2D.getFontMetrics(font));
+			_metrics.put(key, metrics);
+		}
+		return metrics;
+	}
+
+	private final FontMetrics _fm;
+	private final int[] _widths;
+	private final HashMap<Character, Integer> _otherWidths;
+
+	private TextMetrics(FontMetrics fm) {
+		_fm = fm;
+		_widths = new int[_DENSE_CHARS];
+		for (int c=0; c<_DENSE_CHARS; c++) {
+			_widths[c] = fm.charWidth((char)c);
+		}
+		_otherWidths = new HashMap<Character, Integer>();
+	}
+
+	public Font font() { return _fm.getFont(); }
+	/** Returns the FontMetrics the widths were measured with, for anything else about the font. **/
+	public FontMetrics fontMetrics() { return _fm; }
+	public int maxAscent() { return _fm.getMaxAscent(); }
+	public int height() { return _fm.getHeight(); }
+
+	/** Returns the advance of a character. **/
+	public int charWidth(char c) {
+		if (c < _DENSE_CHARS) {
+			return _widths[c];
+		}
+		synchronized (_otherWidths) {
+			Integer width = _otherWidths.get(c);
+			if (width == null) {
+				width = _fm.charWidth(c);
+				_otherWidths.put(c, width);
+			}
+			return width;
+		}
+	}
+	/** Returns the width of a string. **/
+	public int stringWidth(CharSequence s) {
+		return stringWidth(s, 0, s.length());
+	}
+	/** Returns the width of the characters of s from start (inclusive) to end (exclusive). **/
+	public int stringWidth(CharSequence s, int start, int end) {
+		int width = 0;
+		for (int i=start; i<end; i++) {
+			width += charWidth(s.charAt(i));
+		}
+		return width;
+	}
+	/** Measures the characters of s from start to end in one pass. Returns an array where element i is the width of the first i of
+	 * them, so it has end-start+1 elements and the width of the characters from a to b is widths[b-start] - widths[a-start]. Reuses
+	 * widths if it's big enough. **/
+	public int[] prefixWidths(CharSequence s, int start, int end, int[] widths) {
+		int n = end-start;
+		if (widths == null || widths.length < n+1) {
+			widths = new int[n+1];
+		}
+		int width = 0;
+		widths[0] = 0;
+		for (int i=0; i<n; i++) {
+			width += charWidth(s.charAt(start+i));
+			widths[i+1] = width;
+		}
+		return widths;
+	}
+	/** Returns the last index i from 'from' to 'to' (inclusive) where widths[i] is at most maxWidth, or from-1 if there is none. widths
+	 * must not decrease, as with prefixWidths(). Used to find where text starting at 'from' has to break: with maxWidth set to
+	 * widths[from] plus the space there is, the result is the index after the last character that fits. **/
+	public static int lastFitting(int[] widths, int from, int to, int maxWidth) {
+		int lo = from, hi = to+1;
+		while (lo < hi) {
+			int mid = (lo+hi) >>> 1;
+			if (widths[mid] <= maxWidth) {
+				lo = mid+1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo-1;
+	}
+}
@@ -49,6 +49,9 @@ public abstract class Widget {
 	/** Sets the default textFont for all widgets. **/
 	public static void setDefaultFont(Font f_) { _DEFAULT_FONT = f_; }
 	
+	/** Extra space around a widget's bounds that is redrawn with it, to cover borders drawn on the edge of the bounds. **/
+	protected static int _DIRTY_PADDING = 2;
+	
 	/** Method to determine whether two widgets intersect within a bounding box by default. Behaviour may be changed within individual widget classes with the non-static method. 
 	 * Note that as it stands, given two widgets a and b, Widget.intersectsWith(a, b) and Widget.intersectsWith(b, a) may give different results, as w1 does not take into account w2's behaviour for intersectsWith(w1).
 	 * @param w1		Widget object whose intersectsWith(Widget w) will be called. 
@@ -86,6 +89,20 @@ public abstract class Widget {
 	protected CustomDraw _customDrawAfter;
 	protected CustomDraw _widgetControlledDraw;
 	
+	/** Objects told when the widget moves or is resized. Usually empty, or holds only the panel the widget is in. **/
+	private BoundsListener[] _boundsListeners = _NO_BOUNDS_LISTENERS;
+	private static final BoundsListener[] _NO_BOUNDS_LISTENERS = new BoundsListener[0];
+
+	/** Whether drawWidget() is rendered into an image per visual state and copied to the screen from there. See setRenderCaching(). **/
+	private boolean _renderCaching;
+	/** Rendered images, indexed by renderState(), and the value of _renderVersion each was rendered at. **/
+	private Image[] _renderCache;
+	private int[] _renderCacheVersions;
+	/** Changed whenever the rendered images go out of date. **/
+	private int _renderVersion;
+	/** Set while the widget marks itself dirty only for moving or a change of visual state, which don't change the rendered images. **/
+	private boolean _keepRenderCache;
+
 	/** Returns the widget's x variable. **/
 	public int x() { return _x; }
 	/** Returns the widget's y variable. **/
@@ -121,15 +138,36 @@ public abstract class Widget {
 	/** Adds to the widget's y variable **/
 	public void addY(int iy) { setY(_y+iy); }
 	/** Sets the widget's x and y variables **/
-	public void setLocation(int x, int y) { _x = x; _y = y; }
+	public void setLocation(int x, int y) { 
+		if (x == _x && y == _y) {
+			return;
+		}
+		markDirtyKeepingRenderCache();
+		_x = x; 
+		_y = y; 
+		markDirtyKeepingRenderCache();
+		fireBoundsChanged();
+	}
 	/** Sets the widget's w variable **/
 	public void setWidth(int w) { setSize(w, _h); }
 	/** Sets the widget's h variable **/
 	public void setHeight(int h) { setSize(_w, h); }
 	/** Sets the widget's w and h variables **/
-	public void setSize(int w, int h) { _w = w; _h = h; }
+	public void setSize(int w, int h) { 
+		if (w == _w && h == _h) {
+			return;
+		}
+		markDirty();
+		_w = w; 
+		_h = h; 
+		markDirty();
+		fireBoundsChanged();
+	}
 	/** Sets the widget's enabled variable, and sets false for all mouse interaction variables **/
 	public void setEnabled(boolean enabled) { 
+		if (enabled != _enabled) {
+			markDirtyKeepingRenderCache();
+		}
 		this._enabled = enabled; 
 		if (!enabled) {
 			this._hovering = false;
@@ -139,6 +177,9 @@ public abstract class Widget {
 	}
 	/** Sets the widget's visble variable, and sets false for all mouse interaction variables **/
 	public void setVisible(boolean visible) { 
+		if (visible != _visible) {
+			markDirtyKeepingRenderCache();
+		}
 		this._visible = visible;
 		if (!visible) {
 			this._hovering = false;
@@ -148,6 +189,9 @@ public abstract class Widget {
 	}
 	/** Blocks the widget from mouse interaction for the next time update() is called. */
 	public void blockWidget() { 
+		if (_hovering || _clicking) {
+			markDirtyKeepingRenderCache();
+		}
 		_blocked = true;
 		_hovering = false;
 		_clicking = false;
@@ -155,13 +199,13 @@ public abstract class Widget {
 	}
 	
 	/** Sets the widget's fillColor variable **/
-	public void setFillColor(Color fillColor) { _fillColor = fillColor;}
+	public void setFillColor(Color fillColor) { _fillColor = fillColor; markDirty(); }
 	/** Sets the widget's borderColor variable **/
-	public void setBorderColor(Color borderColor) { _borderColor = borderColor; }
+	public void setBorderColor(Color borderColor) { _borderColor = borderColor; markDirty(); }
 	/** Sets the widget's textAreaColor variable **/
-	public void setTextAreaColor(Color textAreaColor) { _textAreaColor = textAreaColor; }
+	public void setTextAreaColor(Color textAreaColor) { _textAreaColor = textAreaColor; markDirty(); }
 	/** Sets the widget's textColor variable **/
-	public void setTextColor(Color textColor) { _textColor = textColor; }
+	public void setTextColor(Color textColor) { _textColor = textColor; markDirty(); }
 	/** Sets all the widget's color variables **/
 	public void setWidgetColors(Color fillColor, Color borderColor, Color textAreaColor, Color textColor) {
 		setFillColor(fillColor);
@@ -170,12 +214,37 @@ public abstract class Widget {
 		setTextColor(textColor);
 	}
 	/** Sets the widget's textFont variable **/
-	public void setFont(Font font) { _font = font; }
+	public void setFont(Font font) { _font = font; markDirty(); }
+	
+	/** Adds an object to be told whenever the widget's location or size changes. **/
+	public void addBoundsListener(BoundsListener listener) {
+		BoundsListener[] listeners = new BoundsListener[_boundsListeners.length+1];
+		System.arraycopy(_boundsListeners, 0, listeners, 0, _boundsListeners.length);
+		listeners[_boundsListeners.length] = listener;
+		_boundsListeners = listeners;
+	}
+	/** Removes an object added with addBoundsListener(). **/
+	public void removeBoundsListener(BoundsListener listener) {
+		for (int i=0; i<_boundsListeners.length; i++) {
+			if (_boundsListeners[i] == listener) {
+				BoundsListener[] listeners = new BoundsListener[_boundsListeners.length-1];
+				System.arraycopy(_boundsListeners, 0, listeners, 0, i);
+				System.arraycopy(_boundsListeners, i+1, listeners, i, listeners.length-i);
+				_boundsListeners = listeners;
+				return;
+			}
+		}
+	}
+	private void fireBoundsChanged() {
+		for (BoundsListener listener: _boundsListeners) {
+			listener.boundsChanged(this);
+		}
+	}
 	
 	/** Sets the button's CustomDraw object. **/
 	public void setCustomDrawBefore(CustomDraw customDrawBefore) { _customDrawBefore = customDrawBefore; }
 	public void setCustomDrawAfter(CustomDraw customDrawAfter)   { _customDrawAfter  = customDrawAfter; }
-	public void setWidgetControlledDraw(CustomDraw widgetControlledDraw) { _widgetControlledDraw = widgetControlledDraw; }
+	public void setWidgetControlledDraw(CustomDraw widgetControlledDraw) { _widgetControlledDraw = widgetControlledDraw; invalidateRenderCache(); }
 
 	/** Creates a widget with default dimensions. In some cases, such as a scrollListBox or certain panels, the dimensions are specified by the object rather than directly by the user. **/
 	public Widget() { 
@@ -202,6 +271,31 @@ public abstract class Widget {
 		_clicked = false;
 		_hasEntered = false;
 		_blocked = false;
+		
+		markDirty();
+	}
+	
+	/** Marks the area covered by the widget as needing to be redrawn when damage tracking is on (see SimpleGUIApp.setDamageTracking()).
+	 * Does nothing otherwise. Widgets call this themselves whenever something that changes their look is set, but if your widget draws 
+	 * something based on other state, call this when that state changes. Override if your widget draws outside its bounds. **/
+	public void markDirty() {
+		if (!_keepRenderCache) {
+			invalidateRenderCache();
+		}
+		Draw.markDirty(_x-_DIRTY_PADDING, _y-_DIRTY_PADDING, _w+_DIRTY_PADDING*2, _h+_DIRTY_PADDING*2);
+	}
+	/** Marks the widget dirty for a change that doesn't change what drawWidget() draws relative to the widget, like moving it or a 
+	 * change of visual state, so the rendered images are kept. **/
+	private void markDirtyKeepingRenderCache() {
+		_keepRenderCache = true;
+		markDirty();
+		_keepRenderCache = false;
+	}
+	/** Returns whether the widget needs to be drawn this frame. Always true unless damage tracking is on, in which case it's true if the 
+	 * widget overlaps an area that is being redrawn. Widgets that contain other widgets which may be outside their bounds, like panels, 
+	 * override this to always return true and let their children decide. **/
+	protected boolean needsRedraw() {
+		return Draw.isDirty(_x-_DIRTY_PADDING, _y-_DIRTY_PADDING, _w+_DIRTY_PADDING*2, _h+_DIRTY_PADDING*2);
 	}
 	
 	/** Returns whether or not this widget intersects with another widget. Overwriting encouraged if alternate behavior is needed. **/
@@ -213,6 +307,12 @@ public abstract class Widget {
 		return (this._x+this._w > x && x+w > this._x && this._y+this._h > y && y+h > this._y);
 	}
 	
+	/** Returns whether drawing the widget could touch the given area. Used by panels to skip widgets that are off screen. By default 
+	 * this is the widget's bounds plus a small margin for borders; widgets that draw outside their bounds should override it. **/
+	public boolean mayDrawIn(int x, int y, int w, int h) {
+		return intersectsWith(x-_DIRTY_PADDING, y-_DIRTY_PADDING, w+_DIRTY_PADDING*2, h+_DIRTY_PADDING*2);
+	}
+	
 	/** Returns whether the mouse's x and y coordinates are contained within the widgets bounds. Overwriting encourages if alternate behaviour is needed. **/
 	public boolean containsMouse() {
 		if (Input.mouseX() < _x+_w && Input.mouseX() > _x && Input.mouseY() < _y+_h && Input.mouseY() > _y) {
@@ -240,6 +340,7 @@ public abstract class Widget {
 	/** Updates the widget's state relative to the mouse. This must be physically called in your widget's local Update() function for any mouse activity
 	 * to register. **/
 	protected void updateClickingState() {
+		boolean wasHovering = _hovering, wasClicking = _clicking;
 		if (_clicked) 
 			_clicked = false;
 		if (_blocked) {
@@ -264,6 +365,9 @@ public abstract class Widget {
 				}
 			}
 		}
+		if (_hovering != wasHovering || _clicking != wasClicking) {
+			markDirtyKeepingRenderCache();
+		}
 	}
 	
 	public final void update() {
@@ -273,9 +377,19 @@ public abstract class Widget {
 	    }
 	}
 	public final void draw() {
+		if (Draw.isDamageTracking()) {
+			Draw.beginDamagedFrame();
+			if (!needsRedraw()) {
+				return;
+			}
+		}
         drawCustom(_customDrawBefore);
         if (_visible) {
-            drawWidget();
+            if (_renderCaching && canCacheRender()) {
+                drawCached();
+            } else {
+                drawWidget();
+            }
         }
         drawCustom(_customDrawAfter);
     }
@@ -285,6 +399,113 @@ public abstract class Widget {
 	/** Method which must be implemented by your widget. Any draw functions for your widget should be called here, and drawn every frame relative to the widget's status. **/
 	protected abstract void drawWidget();  
 	
+	/** Turns render caching on or off. It's off by default.
+	 * <P>With render caching on, drawWidget() is drawn into an image the first time the widget is drawn in each visual state (see 
+	 * renderState()), and after that the image is copied to the screen instead. Setting anything that changes how the widget looks 
+	 * (anything that calls markDirty(), like setFillColor(), setFont(), setSize() or setText()) throws the images out of date, and 
+	 * each is drawn again the next time it's needed. Moving the widget or hovering over it doesn't. 
+	 * <P>This pays off for widgets that draw a lot but rarely change, like buttons with text and images. The images cover the widget's 
+	 * bounds plus a couple of pixels for borders, so anything drawn further out is cut off, and a widget whose drawWidget() draws 
+	 * something that changes without markDirty() being called (including a widget-controlled CustomDraw) must call 
+	 * invalidateRenderCache() itself. The before and after CustomDraws aren't cached. Each image takes 4 bytes a pixel; see 
+	 * renderCacheBytes(). Turning caching off frees them. **/
+	public void setRenderCaching(boolean renderCaching) {
+		_renderCaching = renderCaching;
+		if (!renderCaching && _renderCache != null) {
+			for (Image image: _renderCache) {
+				if (image != null) {
+					image.dispose();
+				}
+			}
+			_renderCache = null;
+			_renderCacheVersions = null;
+		}
+		invalidateRenderCache();
+	}
+	/** Returns whether render caching is on. **/
+	public boolean renderCaching() { return _renderCaching; }
+	/** Throws the images rendered for render caching out of date, so they're drawn again the next time they're needed. Called by 
+	 * markDirty(). **/
+	public void invalidateRenderCache() {
+		_renderVersion++;
+	}
+	/** Returns the number of bytes of image data held for render caching. **/
+	public long renderCacheBytes() {
+		long bytes = 0;
+		if (_renderCache != null) {
+			for (Image image: _renderCache) {
+				if (image != null) {
+					bytes += 4L*image.w()*image.h();
+				}
+			}
+		}
+		return bytes;
+	}
+	/** Returns a number from 0 up for the widget's current visual state. Render caching keeps one image per state, so everything 
+	 * drawWidget() draws must be the same for the same state until the widget is marked dirty. By default the states are disabled (0), 
+	 * normal (1), hovering (2) and clicking (3). Override if your widget looks different in other states too. **/
+	protected int renderState() {
+		if (!_enabled) {
+			return 0;
+		}
+		return _clicking ? 3 : (_hovering ? 2 : 1);
+	}
+	/** Returns whether the widget can be drawn through render caching right now. Widgets that draw outside their bounds or contain 
+	 * other widgets that change on their own override this to return false, and are drawn directly even with render caching on. **/
+	protected boolean canCacheRender() {
+		return true;
+	}
+	/** Draws the image of the current visual state, rendering it first if it's missing or out of date. **/
+	private void drawCached() {
+		int state = renderState();
+		int w = _w + _DIRTY_PADDING*2, h = _h + _DIRTY_PADDING*2;
+		if (w <= 0 || h <= 0) {
+			return;
+		}
+		if (_renderCache == null || _renderCache.length <= state) {
+			Image[] cache = new Image[Math.max(state+1, 4)];
+			int[] versions = new int[cache.length];
+			if (_renderCache != null) {
+				System.arraycopy(_renderCache, 0, cache, 0, _renderCache.length);
+				System.arraycopy(_renderCacheVersions, 0, versions, 0, _renderCacheVersions.length);
+			}
+			_renderCache = cache;
+			_renderCacheVersions = versions;
+		}
+		
+		Image image = _renderCache[state];
+		if (image == null || image.w() != w || image.h() != h) {
+			// Images of other states at the old size are out of date too, so they're freed rather than kept until they're next drawn
+			for (int i=0; i<_renderCache.length; i++) {
+				if (_renderCache[i] != null && (_renderCache[i].w() != w || _renderCache[i].h() != h)) {
+					_renderCache[i].dispose();
+					_renderCache[i] = null;
+				}
+			}
+			image = new Image(w, h);
+			_renderCache[state] = image;
+			_renderCacheVersions[state] = _renderVersion-1;
+		}
+		if (_renderCacheVersions[state] != _renderVersion) {
+			// If drawing marks the widget dirty, the image is drawn again next time
+			int version = _renderVersion;
+			image.resetGraphics();
+			Graphics2D g = image.graphics2D();
+			g.setComposite(AlphaComposite.Clear);
+			g.fillRect(0, 0, w, h);
+			g.setComposite(AlphaComposite.SrcOver);
+			g.translate(_DIRTY_PADDING-_x, _DIRTY_PADDING-_y);
+			Graphics2D screen = Draw.beginOffscreen(g);
+			try {
+				drawWidget();
+			} finally {
+				Draw.endOffscreen(screen);
+			}
+			_renderCacheVersions[state] = version;
+		}
+		Draw.image(image, _x-_DIRTY_PADDING, _y-_DIRTY_PADDING);
+	}
+	
 	public void drawCustom(CustomDraw cd) {
 	    if (cd != null) {
 	        cd.draw(this);
@@ -1,9 +1,13 @@
 package simple.gui.panel;
 
+import java.awt.Rectangle;
+import java.awt.Shape;
 import java.util.*;
 
+import simple.gui.BoundsListener;
 import simple.gui.Draw;
 import simple.gui.Widget;
+import simple.run.Input;
 
 public abstract class Panel extends Widget {
 	public static class Dimensions {
@@ -31,39 +35,49 @@ public abstract class Panel extends Widget {
 	
 	protected int     _defaultPriority;
 	protected boolean _drawContainingPanel;
+	protected boolean _clipToBounds;
 	
-	protected TreeMap<Integer, List<Widget>> _priorityMap;
-	protected Map<Widget, Integer> _widgetMap;
-	protected List<Widget> _widgetList;
+	/** Reused for the visible area while drawing, to avoid allocating every frame. **/
+	private Rectangle _visibleArea;
+	
+	/** The panel's widgets, by priority and in the order they were added. **/
+	protected WidgetStore _widgets;
+	private WidgetStore.Visitor _updater, _drawer;
+	/** Best priority among widgets under the mouse, used by the updater while updating. **/
+	private int _mousePriority;
+	
+	/** Index of where the widgets are, kept up to date as they move. Used to find the widgets under the mouse. **/
+	protected WidgetGrid _grid;
+	private BoundsListener _gridUpdater;
+	private List<Widget> _widgetsUnderMouse;
 	
 	protected Constraints _constraints;
 	
 	public int defaultPriority() { return _defaultPriority; }
 	public boolean doesDrawContainingPanel() { return _drawContainingPanel; }
-	
-	public boolean hasWidget(Widget widget) { return _widgetMap.containsKey(widget); }
-	public int size() { return _widgetList.size(); }
-	public int getWidgetPriority(Widget widget) { 
-		if (!hasWidget(widget)) {
-			throw new RuntimeException("Panel does not contain the given widget");
-		}
-		return _widgetMap.get(widget);
-	}
-	public Widget getIndex(int widgetID) { 
-		if (widgetID >= _widgetList.size() || widgetID < 0) {
-			throw new RuntimeException("Index out of bounds for stored Widget list. widgetID=" + widgetID);
-		}
-		return _widgetList.get(widgetID); 
-	}
-	public List<Widget> widgetList() { return _widgetList; }
+	/** Returns whether drawing of the panel's widgets is cut off at the panel's bounds. **/
+	public boolean doesClipToBounds() { return _clipToBounds; }
+	
+	public boolean hasWidget(Widget widget) { return _widgets.contains(widget); }
+	public int size() { return _widgets.size(); }
+	public int getWidgetPriority(Widget widget) { return _widgets.priorityOf(widget); }
+	public Widget getIndex(int widgetID) { return _widgets.get(widgetID); }
+	/** Returns a read-only list of the panel's widgets, in the order they were added. **/
+	public List<Widget> widgetList() { return _widgets.asList(); }
+	/** Returns the widgets in this panel whose bounds contain the given point, in no particular order. **/
+	public List<Widget> widgetsAt(int x, int y) { return _grid.widgetsAt(x, y, new ArrayList<Widget>()); }
+	/** Returns the widgets in this panel that intersect the given area, in no particular order. **/
+	public List<Widget> widgetsIntersecting(int x, int y, int w, int h) { return _grid.widgetsIntersecting(x, y, w, h, new ArrayList<Widget>()); }
 	
 	public void setWidgetPriority(Widget widget, int priority) {
-		_priorityMap.get(_widgetMap.get(widget)).remove(widget);
-		_widgetMap.put(widget, priority);
-		_priorityMap.get(priority).add(widget);
+		widget.markDirty();
+		_widgets.setPriority(widget, priority);
 	}
 	public void setDefaultPriority(int defaultPriority) { this._defaultPriority = defaultPriority; }
-	public void setDrawContainingPanel(boolean drawContainingPanel) { this._drawContainingPanel = drawContainingPanel; }
+	public void setDrawContainingPanel(boolean drawContainingPanel) { this._drawContainingPanel = drawContainingPanel; markDirty(); }
+	/** Sets whether drawing of the panel's widgets is cut off at the panel's bounds. When on, widgets outside the panel aren't drawn at 
+	 * all, and widgets partly outside are clipped. Off by default, since panels created without a size are smaller than their widgets. **/
+	public void setClipToBounds(boolean clipToBounds) { this._clipToBounds = clipToBounds; markDirty(); }
 	
 	public void setConstraints(int c) { setConstraints(c, c, c, c); }
 	public void setConstraints(int x, int y) { setConstraints(x, y, x, y); }
@@ -72,8 +86,8 @@ public abstract class Panel extends Widget {
 	
 	public void setEnabled(boolean enabled) {
 		super.setEnabled(enabled);
-		for (Widget w: _widgetList) {
-			w.setEnabled(enabled);
+		for (int i=0; i<_widgets.size(); i++) {
+			_widgets.get(i).setEnabled(enabled);
 		}
 	}
 		
@@ -84,7 +98,8 @@ public abstract class Panel extends Widget {
 		
 		super.setLocation(x, y);
 		
-		for (Widget w: _widgetList) {
+		for (int i=0; i<_widgets.size(); i++) {
+			Widget w = _widgets.get(i);
 			w.setLocation(w.x()+dx, w.y()+dy);
 		}
 	}
@@ -101,12 +116,34 @@ public abstract class Panel extends Widget {
 	}
 	public Panel(int x, int y, int w, int h) {
 		super(x, y, w, h);
-		_priorityMap = new TreeMap<>();
-		_widgetMap = new HashMap<>();
-		_widgetList = new ArrayList<>();
+		_widgets = new WidgetStore();
+		_updater = new WidgetStore.Visitor() {
+			public void visit(Widget w, int priority) {
+				if (priority > _mousePriority) {
+					// Blocking a widget makes the widget think the mouse isn't in it.
+					// This means if the mouse is hovering over two widgets, only the highest priority one will get mouse interaction.
+					w.blockWidget();
+				}
+				w.update();
+			}
+		};
+		_drawer = new WidgetStore.Visitor() {
+			public void visit(Widget w, int priority) {
+				if (w.mayDrawIn(_visibleArea.x, _visibleArea.y, _visibleArea.width, _visibleArea.height)) {
+					w.draw();
+				}
+			}
+		};
+		_grid = new WidgetGrid();
+		_gridUpdater = new BoundsListener() {
+			public void boundsChanged(Widget w) { _grid.update(w); }
+		};
+		_widgetsUnderMouse = new ArrayList<>();
 		
 		_defaultPriority = _DEFAULT_PRIORITY;
 		_drawContainingPanel = false;
+		_clipToBounds = false;
+		_visibleArea = new Rectangle();
 		_constraints = new Constraints(0, 0, 0, 0);
 	}
 	
@@ -121,64 +158,67 @@ public abstract class Panel extends Widget {
 	public abstract void addWidget(Widget newWidget, Dimensions d, Constraints c, int priority);
 	
 	protected void addWidgetToCollection(Widget newWidget, int priority) {
-		if (_widgetMap.containsKey(newWidget)) {
-			throw new RuntimeException("Each instance of Widget may only be referenced in (i.e. added to) each Panel one time.");
-		}
-		if (!_priorityMap.containsKey(priority)) {
-			_priorityMap.put(priority, new ArrayList<Widget>());
-		}
-		_priorityMap.get(priority).add(newWidget);
-		_widgetMap.put(newWidget, priority);
-		_widgetList.add(newWidget);
+		_widgets.add(newWidget, priority);
+		_grid.add(newWidget);
+		newWidget.addBoundsListener(_gridUpdater);
+		newWidget.markDirty();
 	}
 	
 	public boolean removeWidget(Widget widgetToRemove) {
-		if (!_widgetMap.containsKey(widgetToRemove)) {
+		if (!_widgets.remove(widgetToRemove)) {
 			return false;
 		}
 		
-		_priorityMap.get(_widgetMap.get(widgetToRemove)).remove(widgetToRemove);
-		_widgetMap.remove(widgetToRemove);
-		_widgetList.remove(widgetToRemove);
+		_grid.remove(widgetToRemove);
+		widgetToRemove.removeBoundsListener(_gridUpdater);
+		widgetToRemove.markDirty();
 		
 		return true;
 	}
 	public Widget removeIndex(int widgetID) {
-		if (widgetID >= _widgetList.size() || widgetID < 0) {
-			throw new RuntimeException("Index out of bounds for stored Widget list. widgetID=" + widgetID);
-		}
-		
-		Widget widgetToRemove = _widgetList.remove(widgetID);
-		_priorityMap.get(_widgetMap.get(widgetToRemove)).remove(widgetToRemove);
-		_widgetMap.remove(widgetToRemove);
+		Widget widgetToRemove = _widgets.remove(widgetID);
+		_grid.remove(widgetToRemove);
+		widgetToRemove.removeBoundsListener(_gridUpdater);
+		widgetToRemove.markDirty();
 		return widgetToRemove;
 	}
 	public void clear() {
-		_priorityMap = new TreeMap<>();
-		_widgetMap = new HashMap<>();
-		_widgetList = new ArrayList<>();
+		for (int i=0; i<_widgets.size(); i++) {
+			Widget w = _widgets.get(i);
+			w.removeBoundsListener(_gridUpdater);
+			w.markDirty();
+		}
+		_grid.clear();
+		_widgets.clear();
 	}
 	
+	/** Updates every widget. If the mouse is over several widgets, only those with the best (lowest) priority number get mouse 
+	 * interaction; the others are blocked. Widgets under the mouse are found through the grid, so this assumes containsMouse() is only 
+	 * true within a widget's bounds. **/
 	@Override
 	protected void updateWidget(){	
-		boolean setFlag = false;
-		boolean mouseInPriorityWidget = false; 
-		for (int priority: _priorityMap.keySet()) {
-			for (Widget w: _priorityMap.get(priority)) {
-				if (mouseInPriorityWidget) {
-					// Blocking a widget makes the widget think the mouse isn't in it.
-					// This means if the mouse is hovering over two widgets, only the highest priority one will get mouse interaction.
-					w.blockWidget();
-				}
-				w.update();
-				if (w.containsMouse()) {
-					setFlag = true;
-				}
-			}
-			if (setFlag) {
-				mouseInPriorityWidget = true;
+		_mousePriority = Integer.MAX_VALUE;
+		_widgetsUnderMouse.clear();
+		_grid.widgetsAt(Input.mouseX(), Input.mouseY(), _widgetsUnderMouse);
+		for (int i=0; i<_widgetsUnderMouse.size(); i++) {
+			Widget w = _widgetsUnderMouse.get(i);
+			if (w.containsMouse()) {
+				_mousePriority = Math.min(_mousePriority, _widgets.priorityOf(w));
 			}
 		}
+		
+		_widgets.forEach(true, _updater);
+	}
+	/** Children may lie outside the panel's bounds, so they each decide whether they need drawing. **/
+	@Override
+	protected boolean needsRedraw() { return true; }
+	/** Children change on their own, so a panel is never render cached. They can be render cached themselves. **/
+	@Override
+	protected boolean canCacheRender() { return false; }
+	/** Unless drawing is clipped to the panel's bounds, widgets may be anywhere, so the panel may draw anywhere. **/
+	@Override
+	public boolean mayDrawIn(int x, int y, int w, int h) {
+		return !_clipToBounds || super.mayDrawIn(x, y, w, h);
 	}
 	@Override
 	protected void drawWidget() {
@@ -191,10 +231,20 @@ public abstract class Panel extends Widget {
 		
 		drawCustom(_widgetControlledDraw);
 		
-		for (int priority: _priorityMap.descendingKeySet()) {
-			for (Widget w: _priorityMap.get(priority)) {
-				w.draw();
-			}
+		Shape oldClip = null;
+		if (_clipToBounds) {
+			oldClip = Draw.getClip();
+			Draw.clipRect(_x, _y, _w, _h);
+		}
+		
+		// Only widgets that could show up in the current clip (the screen, if there's none) are drawn
+		Draw.getClipBounds(_visibleArea);
+		if (!_visibleArea.isEmpty()) {
+			_widgets.forEach(false, _drawer);
+		}
+		
+		if (_clipToBounds) {
+			Draw.setClip(oldClip);
 		}
 	}
 }
@@ -29,13 +29,30 @@ public class PanelCollection extends Widget {
 		if (index < 0 || index >= _panelList.size()) {
 			throw new RuntimeException("PanelCollection setCurrentPanel(): Index out of bounds");
 		}
-		_currentPanel = _panelList.get(index); 
+		setCurrent(_panelList.get(index));
 	}
 	public void setCurrentPanel(Panel p) { 
 		if (!_panelMap.containsKey(p)) {
 			throw new RuntimeException("PanelCollection setCurrentPanel(): Index out of bounds");
 		}	
-		_currentPanel = p;
+		setCurrent(p);
+	}
+	private void setCurrent(Panel p) {
+		if (p != _currentPanel) {
+			markPanelDirty(_currentPanel);
+			_currentPanel = p;
+			markPanelDirty(_currentPanel);
+		}
+	}
+	/** Marks a panel and everything in it, since its widgets may lie outside its bounds. **/
+	private static void markPanelDirty(Panel p) {
+		if (p == null) {
+			return;
+		}
+		p.markDirty();
+		for (Widget w: p.widgetList()) {
+			w.markDirty();
+		}
 	}
 	
 	public List<Panel> panelList() { return _panelList; }
@@ -84,7 +101,7 @@ public class PanelCollection extends Widget {
 		Panel removed = _panelList.remove(index);
 		_panelMap.remove(removed);
 		if (removed == _currentPanel) {
-			_currentPanel = null;
+			setCurrent(null);
 		}
 	}
 	public void removePanel(Panel p) {
@@ -94,7 +111,7 @@ public class PanelCollection extends Widget {
 		int removed = _panelMap.remove(p);
 		_panelList.remove(removed);
 		if (p == _currentPanel) {
-			_currentPanel = null;
+			setCurrent(null);
 		}
 	}
 	
@@ -103,6 +120,15 @@ public class PanelCollection extends Widget {
 		_panelList = new ArrayList<Panel>();
 	}
 	
+	@Override
+	protected boolean needsRedraw() { return true; }
+	@Override
+	protected boolean canCacheRender() { return false; }
+	@Override
+	public boolean mayDrawIn(int x, int y, int w, int h) {
+		return _currentPanel != null && _currentPanel.mayDrawIn(x, y, w, h);
+	}
+	
 	@Override
 	protected void updateWidget() {
 		if (_currentPanel != null) {
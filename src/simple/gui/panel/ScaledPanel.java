@@ -56,7 +56,8 @@ public class ScaledPanel extends Panel {
 		_boxWidth  = w / (double)_cols;
 		_boxHeight = h / (double)_rows;
 		
-		for (Widget widget: _widgetList) {
+		for (int i=0; i<_widgets.size(); i++) {
+			Widget widget = _widgets.get(i);
 			Modifiers m = _widgetModifiersMap.get(widget);
 			
 			widget.setX((int)(this._x + Math.ceil(_boxWidth*(m.dimensions.x)) - m.constraints.x1));
@@ -0,0 +1,201 @@
+package simple.gui.panel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import simple.gui.Widget;
+
+/** Spatial index of widgets, used by panels to find the widgets at a point or in an area without looking at every widget.
+ * <P>The plane is divided into square cells, and each widget is listed in every cell its bounds overlap. Finding the widgets at a point
+ * only looks at one cell, and finding the widgets in an area only looks at the cells it covers. Widgets covering too many cells (e.g. a
+ * background the size of the screen) are kept in a separate list that is always checked, so they don't bloat every cell.
+ * <P>The index doesn't watch widgets itself; call update() after a widget moves or is resized. **/
+public class WidgetGrid {
+	/** Default width and height of a cell. **/
+	protected static int _DEFAULT_CELL_SIZE = 64;
+	/** Widgets covering more cells than this are kept in the oversized list instead. **/
+	protected static int _MAX_CELLS_PER_WIDGET = 64;
+
+	private static class Entry {
+		final Widget widget;
+		int cx1, cy1, cx2, cy2;
+		boolean oversized;
+		/** Last query that returned this entry, so widgets spanning several cells are only returned once. **/
+		int queryStamp;
+		Entry(Widget widget) { this.widget = widget; }
+	}
+
+	private final int _cellSize;
+	private Map<Long, List<Entry>> _cells;
+	private Map<Widget, Entry> _entries;
+	private List<Entry> _oversized;
+	private int _queryStamp;
+
+	/** Returns the width and height of a cell. **/
+	public int cellSize() { return _cellSize; }
+	/** Returns the number of widgets in the index. **/
+	public int size() { return _entries.size(); }
+	/** Returns whether the widget is in the index. **/
+	public boolean contains(Widget widget) { return _entries.containsKey(widget); }
+
+	public WidgetGrid() {
+		this(_DEFAULT_CELL_SIZE);
+	}
+	public WidgetGrid(int cellSize) {
+		if (cellSize <= 0) { throw new IllegalArgumentException("cellSize must be positive"); }
+		_cellSize = cellSize;
+		_cells = new HashMap<Long, List<Entry>>();
+		_entries = new HashMap<Widget, Entry>();
+		_oversized = new ArrayList<Entry>();
+		_queryStamp = 0;
+	}
+
+	/** Adds a widget at its current bounds. Does nothing if it's already in the index. **/
+	public void add(Widget widget) {
+		if (_entries.containsKey(widget)) {
+			return;
+		}
+		Entry e = new Entry(widget);
+		_entries.put(widget, e);
+		insert(e);
+	}
+	/** Removes a widget. Returns false if it wasn't in the index. **/
+	public boolean remove(Widget widget) {
+		Entry e = _entries.remove(widget);
+		if (e == null) {
+			return false;
+		}
+		erase(e);
+		return true;
+	}
+	/** Moves a widget to its current bounds. Cheap if it's still over the same cells. **/
+	public void update(Widget widget) {
+		Entry e = _entries.get(widget);
+		if (e == null) {
+			return;
+		}
+		int cx1 = cell(widget.x()), cy1 = cell(widget.y());
+		int cx2 = cell(widget.x()+widget.w()), cy2 = cell(widget.y()+widget.h());
+		if (cx1 == e.cx1 && cy1 == e.cy1 && cx2 == e.cx2 && cy2 == e.cy2) {
+			return;
+		}
+		erase(e);
+		insert(e);
+	}
+	/** Removes every widget. **/
+	public void clear() {
+		_cells.clear();
+		_entries.clear();
+		_oversized.clear();
+	}
+
+	/** Adds every widget whose bounds contain the point to the given list, in no particular order, and returns the list. **/
+	public List<Widget> widgetsAt(int x, int y, List<Widget> out) {
+		List<Entry> cell = _cells.get(key(cell(x), cell(y)));
+		if (cell != null) {
+			for (int i=0; i<cell.size(); i++) {
+				Widget w = cell.get(i).widget;
+				if (containsPoint(w, x, y)) {
+					out.add(w);
+				}
+			}
+		}
+		for (int i=0; i<_oversized.size(); i++) {
+			Widget w = _oversized.get(i).widget;
+			if (containsPoint(w, x, y)) {
+				out.add(w);
+			}
+		}
+		return out;
+	}
+	/** Adds every widget that intersects the given area (according to Widget.intersectsWith()) to the given list, in no particular
+	 * order, and returns the list. **/
+	public List<Widget> widgetsIntersecting(int x, int y, int w, int h, List<Widget> out) {
+		_queryStamp++;
+		int cx1 = cell(x), cy1 = cell(y), cx2 = cell(x+w), cy2 = cell(y+h);
+		if ((long)(cx2-cx1+1)*(cy2-cy1+1) > _cells.size()) {
+			// The area covers more cells than exist, so it's cheaper to look at every widget
+			for (Entry e: _entries.values()) {
+				if (e.widget.intersectsWith(x, y, w, h)) {
+					out.add(e.widget);
+				}
+			}
+			return out;
+		}
+		for (int cx=cx1; cx<=cx2; cx++) {
+			for (int cy=cy1; cy<=cy2; cy++) {
+				List<Entry> cell = _cells.get(key(cx, cy));
+				if (cell == null) {
+					continue;
+				}
+				for (int i=0; i<cell.size(); i++) {
+					Entry e = cell.get(i);
+					if (e.queryStamp != _queryStamp) {
+						e.queryStamp = _queryStamp;
+						if (e.widget.intersectsWith(x, y, w, h)) {
+							out.add(e.widget);
+						}
+					}
+				}
+			}
+		}
+		for (int i=0; i<_oversized.size(); i++) {
+			Widget widget = _oversized.get(i).widget;
+			if (widget.intersectsWith(x, y, w, h)) {
+				out.add(widget);
+			}
+		}
+		return out;
+	}
+
+	private void insert(Entry e) {
+		Widget w = e.widget;
+		e.cx1 = cell(w.x());
+		e.cy1 = cell(w.y());
+		e.cx2 = cell(w.x()+w.w());
+		e.cy2 = cell(w.y()+w.h());
+		e.oversized = (long)(e.cx2-e.cx1+1)*(e.cy2-e.cy1+1) > _MAX_CELLS_PER_WIDGET;
+		if (e.oversized) {
+			_oversized.add(e);
+			return;
+		}
+		for (int cx=e.cx1; cx<=e.cx2; cx++) {
+			for (int cy=e.cy1; cy<=e.cy2; cy++) {
+				Long key = key(cx, cy);
+				List<Entry> cell = _cells.get(key);
+				if (cell == null) {
+					cell = new ArrayList<Entry>(4);
+					_cells.put(key, cell);
+				}
+				cell.add(e);
+			}
+		}
+	}
+	private void erase(Entry e) {
+		if (e.oversized) {
+			_oversized.remove(e);
+			return;
+		}
+		for (int cx=e.cx1; cx<=e.cx2; cx++) {
+			for (int cy=e.cy1; cy<=e.cy2; cy++) {
+				Long key = key(cx, cy);
+				List<Entry> cell = _cells.get(key);
+				if (cell != null) {
+					cell.remove(e);
+					if (cell.isEmpty()) {
+						_cells.remove(key);
+					}
+				}
+			}
+		}
+	}
+
+	private int cell(int coordinate) { return Math.floorDiv(coordinate, _cellSize); }
+	private static long key(int cx, int cy) { return ((long)cx << 32) | (cy & 0xFFFFFFFFL); }
+	/** Same bounds test as Widget.containsMouse(), without the visibility check. **/
+	private static boolean containsPoint(Widget w, int x, int y) {
+		return x > w.x() && x < w.x()+w.w() && y > w.y() && y < w.y()+w.h();
+	}
+}
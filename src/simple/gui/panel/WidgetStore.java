@@ -0,0 +1,296 @@
+package simple.gui.panel;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import simple.gui.Widget;
+
+/** Storage for a panel's widgets, ordered both by priority and by the order they were added.
+ * <P>Widgets are kept in one array per priority, with the priorities in a sorted array. Removing a widget only clears its place (found
+ * through a hash map), and the arrays are compacted later once enough places are empty, so removing is O(1) no matter how many widgets
+ * there are. Visiting every widget in priority order goes straight through the arrays without creating iterators or boxing priorities.
+ * <P>Widgets may be added or removed while they're being visited, e.g. a button removing itself when clicked. Removed widgets are
+ * skipped, and compaction waits until the visit is over. **/
+public class WidgetStore {
+	/** Receives each widget when visiting with forEach(). **/
+	public static interface Visitor {
+		public void visit(Widget w, int priority);
+	}
+
+	/** Place of one widget in the store. **/
+	private static final class Slot {
+		final Widget widget;
+		Bucket bucket;
+		int bucketIndex, orderIndex;
+		Slot(Widget widget) { this.widget = widget; }
+	}
+	/** All widgets of one priority, in the order they were given that priority. Removed widgets leave a null until compacted. **/
+	private static final class Bucket {
+		final int priority;
+		Slot[] slots;
+		int size, dead;
+		Bucket(int priority) {
+			this.priority = priority;
+			this.slots = new Slot[8];
+		}
+	}
+
+	private Bucket[] _buckets;
+	private int _bucketCount;
+	/** Every widget in the order it was added, with nulls for removed widgets until compacted. **/
+	private Slot[] _order;
+	private int _orderSize, _orderDead;
+	private Map<Widget, Slot> _slots;
+	private int _visiting;
+	private boolean _bucketsNeedCompaction;
+	private final List<Widget> _listView;
+
+	public WidgetStore() {
+		_buckets = new Bucket[4];
+		_bucketCount = 0;
+		_order = new Slot[16];
+		_orderSize = 0;
+		_orderDead = 0;
+		_slots = new HashMap<Widget, Slot>();
+		_visiting = 0;
+		_bucketsNeedCompaction = false;
+		_listView = new AbstractList<Widget>() {
+			public Widget get(int index) { return WidgetStore.this.get(index); }
+			public int size() { return WidgetStore.this.size(); }
+		};
+	}
+
+	/** Returns the number of widgets stored. **/
+	public int size() { return _slots.size(); }
+	/** Returns whether the widget is stored. **/
+	public boolean contains(Widget widget) { return _slots.containsKey(widget); }
+	/** Returns the priority of a stored widget. **/
+	public int priorityOf(Widget widget) {
+		Slot slot = _slots.get(widget);
+		if (slot == null) {
+			throw new RuntimeException("Panel does not contain the given widget");
+		}
+		return slot.bucket.priority;
+	}
+	/** Returns the index-th widget in the order they were added. **/
+	public Widget get(int index) {
+		if (index < 0 || index >= size()) {
+			throw new RuntimeException("Index out of bounds for stored Widget list. widgetID=" + index);
+		}
+		compactOrder();
+		return _order[index].widget;
+	}
+	/** Returns a read-only view of the widgets in the order they were added. **/
+	public List<Widget> asList() { return _listView; }
+
+	/** Adds a widget with the given priority. Each widget may only be added once. **/
+	public void add(Widget widget, int priority) {
+		if (_slots.containsKey(widget)) {
+			throw new RuntimeException("Each instance of Widget may only be referenced in (i.e. added to) each Panel one time.");
+		}
+		Slot slot = new Slot(widget);
+		_slots.put(widget, slot);
+
+		if (_orderSize == _order.length) {
+			compactOrder();
+			if (_orderSize == _order.length) {
+				_order = Arrays.copyOf(_order, _order.length*2);
+			}
+		}
+		slot.orderIndex = _orderSize;
+		_order[_orderSize++] = slot;
+
+		addToBucket(slot, priority);
+	}
+	/** Removes a widget. Returns false if it wasn't stored. **/
+	public boolean remove(Widget widget) {
+		Slot slot = _slots.remove(widget);
+		if (slot == null) {
+			return false;
+		}
+		_order[slot.orderIndex] = null;
+		_orderDead++;
+		removeFromBucket(slot);
+		if (_orderDead > 32 && _orderDead > _orderSize/2) {
+			compactOrder();
+		}
+		return true;
+	}
+	/** Removes the index-th widget in the order they were added, and returns it. **/
+	public Widget remove(int index) {
+		Widget widget = get(index);
+		remove(widget);
+		return widget;
+	}
+	/** Moves a widget to a new priority. It goes after every widget already at that priority. **/
+	public void setPriority(Widget widget, int priority) {
+		Slot slot = _slots.get(widget);
+		if (slot == null) {
+			throw new RuntimeException("Panel does not contain the given widget");
+		}
+		removeFromBucket(slot);
+		addToBucket(slot, priority);
+	}
+	/** Removes every widget. **/
+	public void clear() {
+		_slots.clear();
+		Arrays.fill(_order, 0, _orderSize, null);
+		_orderSize = 0;
+		_orderDead = 0;
+		if (_visiting > 0) {
+			// Buckets can't be dropped while they're being visited, so empty them in place
+			for (int b=0; b<_bucketCount; b++) {
+				Bucket bucket = _buckets[b];
+				bucket.dead += bucket.size - bucket.dead;
+				Arrays.fill(bucket.slots, 0, bucket.size, null);
+			}
+			_bucketsNeedCompaction = true;
+		} else {
+			Arrays.fill(_buckets, 0, _bucketCount, null);
+			_bucketCount = 0;
+		}
+	}
+
+	/** Visits every widget in priority order: lowest priority number first if ascending, highest first otherwise. Widgets of the same
+	 * priority are visited in the order they were given that priority. **/
+	public void forEach(boolean ascending, Visitor visitor) {
+		_visiting++;
+		try {
+			int b = ascending ? 0 : _bucketCount-1;
+			while (b >= 0 && b < _bucketCount) {
+				Bucket bucket = _buckets[b];
+				// The bucket's array and size are read every step, since the visitor may add to it
+				for (int i=0; i<bucket.size; i++) {
+					Slot slot = bucket.slots[i];
+					if (slot != null) {
+						visitor.visit(slot.widget, bucket.priority);
+					}
+				}
+				// The visitor may also have added new priorities, which shifts the buckets, so continue from wherever this one is now
+				b = bucketIndex(bucket.priority) + (ascending ? 1 : -1);
+			}
+		} finally {
+			_visiting--;
+			if (_visiting == 0 && _bucketsNeedCompaction) {
+				compactBuckets();
+			}
+		}
+	}
+
+	private void addToBucket(Slot slot, int priority) {
+		int b = bucketIndex(priority);
+		Bucket bucket;
+		if (b >= 0) {
+			bucket = _buckets[b];
+		} else {
+			bucket = new Bucket(priority);
+			int insertAt = -(b+1);
+			if (_bucketCount == _buckets.length) {
+				_buckets = Arrays.copyOf(_buckets, _buckets.length*2);
+			}
+			System.arraycopy(_buckets, insertAt, _buckets, insertAt+1, _bucketCount-insertAt);
+			_buckets[insertAt] = bucket;
+			_bucketCount++;
+		}
+		if (bucket.size == bucket.slots.length) {
+			if (_visiting == 0 && bucket.dead > 0) {
+				compactBucket(bucket);
+			}
+			if (bucket.size == bucket.slots.length) {
+				bucket.slots = Arrays.copyOf(bucket.slots, bucket.slots.length*2);
+			}
+		}
+		slot.bucket = bucket;
+		slot.bucketIndex = bucket.size;
+		bucket.slots[bucket.size++] = slot;
+	}
+	private void removeFromBucket(Slot slot) {
+		Bucket bucket = slot.bucket;
+		bucket.slots[slot.bucketIndex] = null;
+		bucket.dead++;
+		slot.bucket = null;
+		if (bucket.dead == bucket.size || (bucket.dead > 32 && bucket.dead > bucket.size/2)) {
+			if (_visiting == 0) {
+				// Only this bucket changed, so the others are left alone
+				compactBucket(bucket);
+				if (bucket.size == 0) {
+					dropBucket(bucket);
+				}
+			} else {
+				_bucketsNeedCompaction = true;
+			}
+		}
+	}
+	/** Removes an empty bucket from the sorted array. **/
+	private void dropBucket(Bucket bucket) {
+		int b = bucketIndex(bucket.priority);
+		System.arraycopy(_buckets, b+1, _buckets, b, _bucketCount-b-1);
+		_buckets[--_bucketCount] = null;
+	}
+
+	/** Binary search for the bucket of the given priority. Returns -(insertion point)-1 if there is none, like Arrays.binarySearch(). **/
+	private int bucketIndex(int priority) {
+		int low = 0, high = _bucketCount-1;
+		while (low <= high) {
+			int mid = (low+high) >>> 1;
+			int midPriority = _buckets[mid].priority;
+			if (midPriority < priority) {
+				low = mid+1;
+			} else if (midPriority > priority) {
+				high = mid-1;
+			} else {
+				return mid;
+			}
+		}
+		return -(low+1);
+	}
+
+	/** Compacts every bucket and drops the empty ones. Done once a visit that removed widgets is over. **/
+	private void compactBuckets() {
+		_bucketsNeedCompaction = false;
+		int kept = 0;
+		for (int b=0; b<_bucketCount; b++) {
+			Bucket bucket = _buckets[b];
+			if (bucket.dead > 0) {
+				compactBucket(bucket);
+			}
+			if (bucket.size > 0) {
+				_buckets[kept++] = bucket;
+			}
+		}
+		Arrays.fill(_buckets, kept, _bucketCount, null);
+		_bucketCount = kept;
+	}
+	private static void compactBucket(Bucket bucket) {
+		int kept = 0;
+		for (int i=0; i<bucket.size; i++) {
+			Slot slot = bucket.slots[i];
+			if (slot != null) {
+				slot.bucketIndex = kept;
+				bucket.slots[kept++] = slot;
+			}
+		}
+		Arrays.fill(bucket.slots, kept, bucket.size, null);
+		bucket.size = kept;
+		bucket.dead = 0;
+	}
+	private void compactOrder() {
+		if (_orderDead == 0) {
+			return;
+		}
+		int kept = 0;
+		for (int i=0; i<_orderSize; i++) {
+			Slot slot = _order[i];
+			if (slot != null) {
+				slot.orderIndex = kept;
+				_order[kept++] = slot;
+			}
+		}
+		Arrays.fill(_order, kept, _orderSize, null);
+		_orderSize = kept;
+		_orderDead = 0;
+	}
+}
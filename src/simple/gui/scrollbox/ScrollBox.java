@@ -91,6 +91,10 @@ public abstract class ScrollBox extends Widget {
 		setScrollWidgetPosition();
 	}
 	
+	/** The scroll buttons and bar change as the mouse moves over them without the scrollBox knowing, so it's never render cached. **/
+	@Override
+	protected boolean canCacheRender() { return false; }
+	
 	/** Creates a default ScrollBox object. **/
 	public ScrollBox() {
 		this(0, 0, 10, 10);
@@ -3,8 +3,10 @@ package simple.gui.scrollbox;
 import java.awt.Font;
 import java.awt.FontMetrics;
 import java.util.ArrayList;
+import java.util.List;
 
 import simple.gui.Draw;
+import simple.gui.TextMetrics;
 import simple.run.Input;
 
 public class ScrollDialogBox extends ScrollBox {
@@ -20,6 +22,7 @@ public class ScrollDialogBox extends ScrollBox {
 	protected int _numLinesToDisplay;
 	
 	protected FontMetrics _fm;
+	protected TextMetrics _metrics;
 	
 	/** Returns raw line data (data that gets converted into displayable lines). **/
 	public ArrayList<String> lineRawData() { return _lines; }
@@ -40,6 +43,7 @@ public class ScrollDialogBox extends ScrollBox {
 	public void setFont(Font font) {
 	    super.setFont(font);
 	    _fm = Draw.getFontMetrics(font);
+	    _metrics = Draw.getTextMetrics(font);
 	}
 	
 	/** Creates a new scrollBox with default size and position. **/
@@ -54,6 +58,7 @@ public class ScrollDialogBox extends ScrollBox {
 		_lineDisplay = new ArrayList<String>();
 		_firstIndex = -1;
 		_fm = Draw.getFontMetrics(_font);
+		_metrics = Draw.getTextMetrics(_font);
 		_numLinesToDisplay = (_h-4)/(_fm.getMaxAscent()+2);
 	}
 	
@@ -73,40 +78,8 @@ public class ScrollDialogBox extends ScrollBox {
 	/** Adds a line to the raw line data, and splits the line into lines of the correct width. **/
 	public void addLine(String newLine) {
 		_lines.add(newLine);
+		wrapLine(newLine, _metrics, _w-4-_BAR_WIDTH, _lineDisplay);
 		
-		String currentText = newLine;
-		int lineWidth = _w-4-_BAR_WIDTH;
-		
-		first: while(true) {
-			// checks if the partitioned string will fit in the line
-			if (_fm.stringWidth(currentText) <= lineWidth) {
-				_lineDisplay.add(currentText);
-				break first;
-			// Searches for a point in the partitioned string that will fit in the box's bounds. Takes formation of words into account
-			} else {
-				boolean found = false;
-				for (int i=currentText.length()-1; i>=0; i--) {
-					if (_fm.stringWidth(currentText.substring(0, i+1)) <= lineWidth) {
-						found = true;
-						int lastIndex = i;
-						for (int j=lastIndex; j>0; j--) {
-							if (currentText.charAt(j) == ' ') {
-								if (!(j == 1 && currentText.charAt(0) == ' ')) {
-									lastIndex = j;
-								}
-								break;
-							}
-						}
-						_lineDisplay.add(currentText.substring(0, lastIndex+1));
-						currentText = "  " + currentText.substring(lastIndex+1);
-						break;
-					}
-				}
-				if (!found) {
-					break first;
-				}
-			}
-		}
 		if (_lineDisplay.size() == 1 && _firstIndex == -1) {
 			_firstIndex = 0;
 		} else if (_lineDisplay.size() > 1) {
@@ -114,33 +87,87 @@ public class ScrollDialogBox extends ScrollBox {
 			_scrollBar.setValue(_firstIndex);
 		}
 		_scrollBar.setRange(0, _lineDisplay.size()-1);
+		markDirty();
+	}
+	
+	/** Splits a line into pieces no wider than lineWidth, adding them to pieces (if it isn't null) and returning how many there are. 
+	 * <P>Each piece is as long as fits, shortened to end at the last space in it if there is one past the start. Pieces after the 
+	 * first are indented by two spaces. If not even one character fits, the rest of the line is left out. The line is measured once 
+	 * and each break is found by binary search, so a line takes time proportional to its length. **/
+	static int wrapLine(String line, TextMetrics metrics, int lineWidth, List<String> pieces) {
+		int n = line.length();
+		int[] widths = metrics.prefixWidths(line, 0, n, null);
+		int spaceWidth = metrics.charWidth(' ');
+		int start = 0, indent = 0, count = 0;
+		while (true) {
+			// The current piece is indent spaces followed by the line from start
+			int indentWidth = indent*spaceWidth;
+			if (indentWidth > lineWidth) {
+				// Only part of the indent fits, so the line can't get any shorter
+				return count;
+			}
+			int end = TextMetrics.lastFitting(widths, start, n, widths[start] + lineWidth - indentWidth);
+			if (end == n) {
+				if (pieces != null) { pieces.add(piece(line, start, indent, indent+n-start)); }
+				return count+1;
+			}
+			// Index in the piece of its last character that fits
+			int fit = indent + end-start - 1;
+			if (fit < 0) {
+				return count;
+			}
+			int lastIndex = fit;
+			for (int j=fit; j>0; j--) {
+				if (charAt(line, start, indent, j) == ' ') {
+					if (!(j == 1 && charAt(line, start, indent, 0) == ' ')) {
+						lastIndex = j;
+					}
+					break;
+				}
+			}
+			if (lastIndex+1 <= indent) {
+				// Only the indent fits, so the line can't get any shorter
+				return count;
+			}
+			if (pieces != null) { pieces.add(piece(line, start, indent, lastIndex+1)); }
+			count++;
+			start += lastIndex+1 - indent;
+			indent = 2;
+		}
+	}
+	private static char charAt(String line, int start, int indent, int k) {
+		return (k < indent) ? ' ' : line.charAt(start+k-indent);
+	}
+	private static String piece(String line, int start, int indent, int length) {
+		String text = line.substring(start, start+length-indent);
+		return (indent == 0) ? text : "  " + text;
 	}
 	
+	/** Adds a line made of pattern repeated as many times as fits in the width of the box. **/
 	public void addRepeatedTextLine(String pattern) {
-		String result = "";
-		String temp;
-		
 		int lineWidth = _w-4-_BAR_WIDTH;
+		int patternWidth = _metrics.stringWidth(pattern);
+		// Widths add up, so the number of repeats that fit can be worked out directly
+		int repeats = (patternWidth > 0) ? Math.max(0, lineWidth/patternWidth) : 0;
 		
-		while(true) {
-			temp = result + pattern;
-			if (_fm.stringWidth(temp) > lineWidth) {
-				break;
-			}
-			result = temp;
+		StringBuilder result = new StringBuilder(pattern.length()*repeats);
+		for (int i=0; i<repeats; i++) {
+			result.append(pattern);
 		}
-		addLine(result);
+		addLine(result.toString());
 	}
 	
 	/** Clears the raw line data and the line display data. **/
 	public void clear() {
 		_lines = new ArrayList<String>();
 		_lineDisplay = new ArrayList<String>();
+		markDirty();
 	}
 	
 	/** Updates the scrollBox and scroll widgets, and sets how those widgets interact with the scrollbox. **/
 	protected void updateWidget() {
 		updateScrollWidgets(); 
+		int oldFirstIndex = _firstIndex;
 		
 		if ((_scrollUp.clicked() || (Input.mouseWheelUp()&&hovering())) && _firstIndex > 0) {
 			_firstIndex -= 1;
@@ -153,6 +180,9 @@ public class ScrollDialogBox extends ScrollBox {
 		if (_scrollBar.value() != _firstIndex) {
 			_firstIndex = _scrollBar.value();
 		}
+		if (_firstIndex != oldFirstIndex) {
+			markDirty();
+		}
 	}
 	
 	/** Draws the scrollBox and scroll widgets. **/
@@ -64,6 +64,7 @@ public class ScrollListBox<WidgetType extends Widget> extends ScrollBox {
 			_scrollBar.setRange(0, _widgetList.size()-1);
 		}
 		setWidgetPosition();
+		markDirty();
 	}
 	
 	public void removeWidget(int widgetID) {
@@ -77,16 +78,19 @@ public class ScrollListBox<WidgetType extends Widget> extends ScrollBox {
 			setWidgetPosition();
 			_scrollBar.setRange(0, _widgetList.size()-1);
 		}
+		markDirty();
 	}
 	
 	public void clear() {
 		_widgetList = new ArrayList<WidgetType>();
 		_firstIndex = 0;
+		markDirty();
 	}
 	
 	@Override
 	protected void updateWidget() {		
 		updateScrollWidgets();
+		int oldFirstIndex = _firstIndex;
 		
 		if ((_scrollUp.clicked() || (Input.mouseWheelUp()&&hovering())) && _firstIndex > 0) {
 			_firstIndex -= 1;
@@ -102,6 +106,10 @@ public class ScrollListBox<WidgetType extends Widget> extends ScrollBox {
 			_firstIndex = _scrollBar.value();
 			setWidgetPosition();
 		}
+		if (_firstIndex != oldFirstIndex) {
+			// Widgets that scrolled out of view aren't moved, so their old area has to be marked from here
+			markDirty();
+		}
 		
 		if (_firstIndex != -1) {
 			for (int i=_firstIndex; i<_firstIndex+_numWidgetsToDisplay && i<_widgetList.size(); i++) {
@@ -0,0 +1,433 @@
+package simple.gui.scrollbox;
+
+import java.awt.Font;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import simple.gui.Draw;
+import simple.gui.TextMetrics;
+import simple.run.Input;
+
+/** A scrollBox for logs and consoles with too many lines for ScrollDialogBox, which wraps and keeps every line it's given.
+ * <P>Lines are kept in a ring buffer of a fixed maximum size, and the oldest lines are dropped once it's full. Lines are only wrapped
+ * when they come near the part being shown; until then the number of rows a line takes is estimated from its length. The row counts
+ * are kept in a prefix-sum tree, so finding the line at a scroll position or the scroll position of a line takes O(log n) time no
+ * matter how many lines there are. Lines wrap the same way as in ScrollDialogBox.
+ * <P>append() can be called from any thread, such as a thread doing work in the background; the lines show up on the next update.
+ * Everything else must be called from the program thread. While the last line is in view, the box follows new lines as they come in. **/
+public class ScrollLogBox extends ScrollBox {
+	/** Maximum number of lines kept by new ScrollLogBoxes when none is given. **/
+	protected static int _DEFAULT_MAX_LINES = 100000;
+	private static final int _INITIAL_CAPACITY = 64;
+
+	/** Raw lines in a ring buffer, oldest at _head. **/
+	protected String[] _lines;
+	protected int _head, _size;
+	protected final int _maxLines;
+	protected long _droppedLines;
+	/** Rows each slot of _lines takes (0 for empty slots), whether that is exact or estimated, and a Fenwick tree of the rows. **/
+	private int[] _rows;
+	private boolean[] _exact;
+	private int[] _tree;
+	private int _totalRows;
+
+	/** The line and row within it shown at the top of the box. **/
+	protected int _firstLine, _firstRow;
+	/** Whether the box moves down to show new lines. **/
+	protected boolean _followTail;
+	protected int _numRowsToDisplay, _lineHeight;
+	protected TextMetrics _metrics;
+	private int _averageCharWidth;
+	/** Rows being shown, rebuilt when the view changes. **/
+	private ArrayList<String> _visibleRows;
+	private boolean _viewChanged;
+	/** Scroll position last given to the scroll bar, to tell when the user dragged it. **/
+	private int _barValue;
+
+	/** Lines appended by any thread, waiting to be added on the next update. **/
+	private ArrayList<String> _pending;
+	private final Object _pendingLock = new Object();
+
+	/** Returns the number of lines kept. **/
+	public int lineCount() { return _size; }
+	/** Returns a line, with 0 the oldest one kept. **/
+	public String line(int index) {
+		if (index < 0 || index >= _size) { throw new IndexOutOfBoundsException("Line " + index + " out of bounds for " + _size + " lines"); }
+		return _lines[slot(index)];
+	}
+	/** Returns the maximum number of lines kept before the oldest are dropped. **/
+	public int maxLines() { return _maxLines; }
+	/** Returns how many lines were dropped to make room for new ones since the box was created or cleared. **/
+	public long droppedLines() { return _droppedLines; }
+	/** Returns the number of rows the lines take when wrapped. Lines far from the view are estimated, so this changes as the box is
+	 * scrolled. **/
+	public int rowCount() { return _totalRows; }
+	/** Returns the line shown at the top of the box. **/
+	public int firstLine() { return _firstLine; }
+
+	/** Sets the width and height of the box. Every line is wrapped again when it comes into view. **/
+	@Override
+	public void setSize(int w, int h) {
+		super.setSize(w, h);
+		if (_lines != null) {
+			updateMetrics();
+		}
+	}
+	@Override
+	public void setFont(Font font) {
+		super.setFont(font);
+		if (_lines != null) {
+			updateMetrics();
+		}
+	}
+
+	/** Creates a new scrollBox with default size and position. **/
+	public ScrollLogBox() {
+		this(0, 0, 10, 10);
+	}
+	/** Creates a new scrollBox with given position and size. **/
+	public ScrollLogBox(int x, int y, int w, int h) {
+		this(x, y, w, h, _DEFAULT_MAX_LINES);
+	}
+	/** Creates a new scrollBox with given position and size, which keeps at most maxLines lines. **/
+	public ScrollLogBox(int x, int y, int w, int h, int maxLines) {
+		super(x, y, w, h);
+		if (maxLines < 1) { throw new IllegalArgumentException("maxLines must be positive"); }
+
+		_maxLines = maxLines;
+		_pending = new ArrayList<String>();
+		_visibleRows = new ArrayList<String>();
+		allocate(Math.min(_INITIAL_CAPACITY, maxLines));
+		_followTail = true;
+		_barValue = -1;
+		updateMetrics();
+	}
+
+	/** Adds a line to the end of the log. Safe to call from any thread; the line is added on the next update. **/
+	public void append(String line) {
+		if (line == null) { throw new IllegalArgumentException("line must not be null"); }
+		synchronized (_pendingLock) {
+			_pending.add(line);
+		}
+	}
+	/** Adds a line to the end of the log right away. Program thread only. **/
+	public void addLine(String line) {
+		if (line == null) { throw new IllegalArgumentException("line must not be null"); }
+		if (_size == _lines.length) {
+			if (_size < _maxLines) {
+				grow();
+			} else {
+				// Full, so the newest line replaces the oldest
+				int slot = _head;
+				setRows(slot, 0, false);
+				_lines[slot] = null;
+				_head = (_head+1 == _lines.length) ? 0 : _head+1;
+				_size--;
+				_droppedLines++;
+				if (_firstLine > 0) {
+					_firstLine--;
+				} else {
+					_firstRow = 0;
+				}
+			}
+		}
+		int slot = slot(_size);
+		_lines[slot] = line;
+		_size++;
+		setRows(slot, estimateRows(line), false);
+		_viewChanged = true;
+	}
+	/** Removes every line, including those waiting to be added. **/
+	public void clear() {
+		synchronized (_pendingLock) {
+			_pending.clear();
+		}
+		allocate(Math.min(_INITIAL_CAPACITY, _maxLines));
+		_droppedLines = 0;
+		_firstLine = 0;
+		_firstRow = 0;
+		_followTail = true;
+		_viewChanged = true;
+		markDirty();
+	}
+
+	/** Scrolls so the given line is at the top. **/
+	public void scrollToLine(int line) {
+		_firstLine = Math.max(0, Math.min(line, _size-1));
+		_firstRow = 0;
+		_followTail = false;
+		_viewChanged = true;
+		refreshView();
+	}
+	/** Scrolls to the end and follows new lines from then on. **/
+	public void scrollToBottom() {
+		_followTail = true;
+		_viewChanged = true;
+		refreshView();
+	}
+
+	/******************
+	 * LINES AND ROWS *
+	 ******************/
+	private int slot(int line) {
+		int slot = _head + line;
+		return (slot >= _lines.length) ? slot - _lines.length : slot;
+	}
+	private void allocate(int capacity) {
+		_lines = new String[capacity];
+		_rows = new int[capacity];
+		_exact = new boolean[capacity];
+		_tree = new int[capacity+1];
+		_head = 0;
+		_size = 0;
+		_totalRows = 0;
+	}
+	/** Doubles the capacity of the ring (up to the maximum), putting the lines in order from slot 0. **/
+	private void grow() {
+		int capacity = (int)Math.min(_maxLines, _lines.length*2L);
+		String[] lines = new String[capacity];
+		int[] rows = new int[capacity];
+		boolean[] exact = new boolean[capacity];
+		for (int i=0; i<_size; i++) {
+			int slot = slot(i);
+			lines[i] = _lines[slot];
+			rows[i] = _rows[slot];
+			exact[i] = _exact[slot];
+		}
+		_lines = lines;
+		_rows = rows;
+		_exact = exact;
+		_head = 0;
+		rebuildTree();
+	}
+	/** Builds the Fenwick tree from _rows in linear time. **/
+	private void rebuildTree() {
+		int n = _rows.length;
+		_tree = new int[n+1];
+		_totalRows = 0;
+		for (int i=1; i<=n; i++) {
+			_tree[i] += _rows[i-1];
+			_totalRows += _rows[i-1];
+			int parent = i + (i & -i);
+			if (parent <= n) {
+				_tree[parent] += _tree[i];
+			}
+		}
+	}
+	private void setRows(int slot, int rows, boolean exact) {
+		int delta = rows - _rows[slot];
+		_rows[slot] = rows;
+		_exact[slot] = exact;
+		if (delta != 0) {
+			_totalRows += delta;
+			for (int i=slot+1; i<_tree.length; i += i & -i) {
+				_tree[i] += delta;
+			}
+		}
+	}
+	/** Returns the sum of the rows of slots before the given one. **/
+	private int slotPrefix(int slot) {
+		int sum = 0;
+		for (int i=slot; i>0; i -= i & -i) {
+			sum += _tree[i];
+		}
+		return sum;
+	}
+	/** Returns the slot holding row target, counting from slot 0: the last slot whose prefix is at most target. **/
+	private int findSlot(int target) {
+		int slot = 0;
+		for (int step=Integer.highestOneBit(_tree.length-1); step>0; step >>= 1) {
+			if (slot+step < _tree.length && _tree[slot+step] <= target) {
+				slot += step;
+				target -= _tree[slot];
+			}
+		}
+		return slot;
+	}
+	/** Returns the number of rows before the given line. Unused slots take no rows, so wrapping around the ring is two prefix sums. **/
+	protected int rowOfLine(int line) {
+		int slot = _head + line;
+		int headPrefix = slotPrefix(_head);
+		if (slot <= _lines.length) {
+			return slotPrefix(slot) - headPrefix;
+		}
+		return _totalRows - headPrefix + slotPrefix(slot - _lines.length);
+	}
+	/** Returns the line holding the given row, 0 <= row < rowCount(). **/
+	protected int lineOfRow(int row) {
+		int headPrefix = slotPrefix(_head);
+		int tailRows = _totalRows - headPrefix;
+		if (row < tailRows) {
+			return findSlot(headPrefix + row) - _head;
+		}
+		return findSlot(row - tailRows) + _lines.length - _head;
+	}
+	/** Returns the exact number of rows a line takes, wrapping it first if that hasn't been done at the current size. **/
+	protected int rows(int line) {
+		int slot = slot(line);
+		if (!_exact[slot]) {
+			// A line too narrow to show any of still takes a row, so every line can be scrolled to
+			setRows(slot, Math.max(1, ScrollDialogBox.wrapLine(_lines[slot], _metrics, lineWidth(), null)), true);
+		}
+		return _rows[slot];
+	}
+	private int estimateRows(String line) {
+		long width = (long)line.length() * _averageCharWidth;
+		return (int)Math.max(1, Math.min(Integer.MAX_VALUE/4, (width + lineWidth() - 1) / Math.max(1, lineWidth())));
+	}
+	private int lineWidth() { return _w-4-_BAR_WIDTH; }
+	/** Goes back to estimates for every line after a change of size or font. **/
+	private void updateMetrics() {
+		_metrics = Draw.getTextMetrics(_font);
+		_lineHeight = _metrics.maxAscent()+2;
+		_numRowsToDisplay = Math.max(1, (_h-4)/_lineHeight);
+		int total = 0;
+		for (char c=32; c<127; c++) {
+			total += _metrics.charWidth(c);
+		}
+		_averageCharWidth = Math.max(1, total/95);
+		Arrays.fill(_exact, false);
+		for (int i=0; i<_size; i++) {
+			int slot = slot(i);
+			_rows[slot] = estimateRows(_lines[slot]);
+		}
+		rebuildTree();
+		_viewChanged = true;
+		refreshView();
+	}
+
+	/********
+	 * VIEW *
+	 ********/
+	/** Moves the view by a number of rows, wrapping the lines it passes. **/
+	protected void scrollRows(int rows) {
+		_followTail = false;
+		while (rows < 0 && (_firstLine > 0 || _firstRow > 0)) {
+			if (_firstRow > 0) {
+				_firstRow--;
+			} else {
+				_firstLine--;
+				_firstRow = rows(_firstLine)-1;
+			}
+			rows++;
+		}
+		while (rows > 0 && _size > 0 && (_firstLine < _size-1 || _firstRow < rows(_firstLine)-1)) {
+			if (_firstRow < rows(_firstLine)-1) {
+				_firstRow++;
+			} else {
+				_firstLine++;
+				_firstRow = 0;
+			}
+			rows--;
+		}
+		_viewChanged = true;
+	}
+	/** Wraps the lines in and around the view, moves the view to the bottom when following, and updates the scroll bar and the rows
+	 * to draw if anything changed. **/
+	protected void refreshView() {
+		if (!_viewChanged) {
+			return;
+		}
+		_viewChanged = false;
+		if (_size == 0) {
+			_firstLine = 0;
+			_firstRow = 0;
+			_visibleRows.clear();
+			_barValue = 0;
+			_scrollBar.setRange(0, 0);
+			_scrollBar.setValue(0);
+			markDirty();
+			return;
+		}
+
+		if (_followTail) {
+			// Fill the view upwards from the last row
+			int line = _size-1, row = rows(line)-1;
+			for (int i=1; i<_numRowsToDisplay && (line > 0 || row > 0); i++) {
+				if (row > 0) {
+					row--;
+				} else {
+					line--;
+					row = rows(line)-1;
+				}
+			}
+			_firstLine = line;
+			_firstRow = row;
+		}
+		_firstLine = Math.min(_firstLine, _size-1);
+		_firstRow = Math.min(_firstRow, rows(_firstLine)-1);
+
+		// Lines a screen above and below are wrapped too, so the scroll bar doesn't jump when scrolling a little
+		for (int i=_firstLine-1, seen=0; i>=0 && seen<_numRowsToDisplay; i--) {
+			seen += rows(i);
+		}
+		_visibleRows.clear();
+		int seen = -_firstRow;
+		for (int i=_firstLine; i<_size && seen<_numRowsToDisplay*2; i++) {
+			int before = _visibleRows.size();
+			if (seen < _numRowsToDisplay) {
+				ScrollDialogBox.wrapLine(_lines[slot(i)], _metrics, lineWidth(), _visibleRows);
+				if (_visibleRows.size() == before) {
+					_visibleRows.add("");
+				}
+			}
+			seen += rows(i);
+		}
+		// The first line may start above the view
+		_visibleRows.subList(0, Math.min(_firstRow, _visibleRows.size())).clear();
+
+		_barValue = rowOfLine(_firstLine) + _firstRow;
+		_scrollBar.setRange(0, Math.max(0, _totalRows-1));
+		_scrollBar.setValue(_barValue);
+		markDirty();
+	}
+
+	/** Adds appended lines, and updates the scroll widgets and how they move the view. **/
+	protected void updateWidget() {
+		ArrayList<String> pending = null;
+		synchronized (_pendingLock) {
+			if (!_pending.isEmpty()) {
+				pending = _pending;
+				_pending = new ArrayList<String>();
+			}
+		}
+		if (pending != null) {
+			for (String line: pending) {
+				addLine(line);
+			}
+		}
+
+		updateScrollWidgets();
+		if (_scrollUp.clicked() || (Input.mouseWheelUp() && hovering())) {
+			scrollRows(-1);
+		} else if (_scrollDown.clicked() || (Input.mouseWheelDown() && hovering())) {
+			scrollRows(1);
+		} else if (_scrollBar.value() != _barValue && _size > 0) {
+			int row = Math.min(_scrollBar.value(), _totalRows-1);
+			_firstLine = lineOfRow(row);
+			_firstRow = row - rowOfLine(_firstLine);
+			_followTail = false;
+			_viewChanged = true;
+		}
+		refreshView();
+		// Scrolling back down to the last row starts following again. The lines in view and below it are wrapped, so near the end the
+		// row count is exact
+		if (!_followTail && _barValue + _numRowsToDisplay >= _totalRows) {
+			_followTail = true;
+		}
+	}
+
+	/** Draws the scrollBox, the scroll widgets and the rows in view. **/
+	protected void drawWidget() {
+		drawScrollWidgets();
+
+		Draw.setColors(_fillColor, _borderColor);
+		Draw.rect(_x, _y, _w-_BAR_WIDTH, _h);
+
+		Draw.setFont(_font);
+		Draw.setStroke(_textColor);
+		for (int i=0; i<_numRowsToDisplay && i<_visibleRows.size(); i++) {
+			Draw.text(_visibleRows.get(i), _x+2, _y+2+_lineHeight*i);
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package simple.gui.textarea;
+
+/** Editable sequence of characters for text widgets.
+ * <P>The characters are kept in one array with a gap of unused space at the last place edited. Typing or deleting there only moves the
+ * edge of the gap, and editing somewhere else moves the characters between the two places into the other side of the gap, so a run
+ * of edits close together costs about as much as the characters typed rather than the length of the whole text.
+ * <P>toString() is cached until the next edit, so asking for the whole text between edits doesn't copy it each time. **/
+public class GapBuffer implements CharSequence {
+	private static final int _MIN_GAP = 16;
+
+	private char[] _chars;
+	private int _gapStart, _gapEnd;
+	private String _string;
+
+	public GapBuffer() {
+		this(_MIN_GAP);
+	}
+	public GapBuffer(int capacity) {
+		_chars = new char[Math.max(capacity, _MIN_GAP)];
+		_gapStart = 0;
+		_gapEnd = _chars.length;
+		_string = "";
+	}
+
+	/** Returns the number of characters stored. **/
+	@Override
+	public int length() { return _chars.length - (_gapEnd - _gapStart); }
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= length()) {
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + length());
+		}
+		return (index < _gapStart) ? _chars[index] : _chars[index + _gapEnd - _gapStart];
+	}
+	@Override
+	public CharSequence subSequence(int start, int end) { return substring(start, end); }
+	/** Returns the characters from start (inclusive) to end (exclusive) as a new String. **/
+	public String substring(int start, int end) {
+		checkRange(start, end);
+		if (_string != null) {
+			return _string.substring(start, end);
+		}
+		char[] chars = new char[end - start];
+		getChars(start, end, chars, 0);
+		return new String(chars);
+	}
+	/** Copies the characters from start (inclusive) to end (exclusive) into dst, starting at dstBegin. **/
+	public void getChars(int start, int end, char[] dst, int dstBegin) {
+		checkRange(start, end);
+		if (start < _gapStart) {
+			int n = Math.min(end, _gapStart) - start;
+			System.arraycopy(_chars, start, dst, dstBegin, n);
+			dstBegin += n;
+			start += n;
+		}
+		if (start < end) {
+			System.arraycopy(_chars, start + _gapEnd - _gapStart, dst, dstBegin, end - start);
+		}
+	}
+
+	/** Inserts a character at the given index. **/
+	public void insert(int index, char c) {
+		prepareInsert(index, 1);
+		_chars[_gapStart++] = c;
+	}
+	/** Inserts the characters of s at the given index. **/
+	public void insert(int index, CharSequence s) {
+		int n = s.length();
+		prepareInsert(index, n);
+		if (s instanceof String) {
+			((String)s).getChars(0, n, _chars, _gapStart);
+		} else {
+			for (int i=0; i<n; i++) {
+				_chars[_gapStart+i] = s.charAt(i);
+			}
+		}
+		_gapStart += n;
+	}
+	/** Adds a character at the end. **/
+	public void append(char c) { insert(length(), c); }
+	/** Adds the characters of s at the end. **/
+	public void append(CharSequence s) { insert(length(), s); }
+	/** Removes the characters from start (inclusive) to end (exclusive). **/
+	public void delete(int start, int end) {
+		checkRange(start, end);
+		if (start == end) {
+			return;
+		}
+		moveGap(start);
+		_gapEnd += end - start;
+		_string = null;
+	}
+	/** Removes every character. Keeps the array for reuse. **/
+	public void clear() {
+		_gapStart = 0;
+		_gapEnd = _chars.length;
+		_string = "";
+	}
+
+	@Override
+	public String toString() {
+		if (_string == null) {
+			char[] chars = new char[length()];
+			getChars(0, chars.length, chars, 0);
+			_string = new String(chars);
+		}
+		return _string;
+	}
+
+	private void prepareInsert(int index, int n) {
+		if (index < 0 || index > length()) {
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + length());
+		}
+		if (_gapEnd - _gapStart < n) {
+			grow(n);
+		}
+		moveGap(index);
+		_string = null;
+	}
+	/** Moves the gap so it starts at the given index. **/
+	private void moveGap(int index) {
+		if (index < _gapStart) {
+			int n = _gapStart - index;
+			System.arraycopy(_chars, index, _chars, _gapEnd - n, n);
+			_gapStart -= n;
+			_gapEnd -= n;
+		} else if (index > _gapStart) {
+			int n = index - _gapStart;
+			System.arraycopy(_chars, _gapEnd, _chars, _gapStart, n);
+			_gapStart += n;
+			_gapEnd += n;
+		}
+	}
+	/** Makes the array big enough for n more characters, at least doubling it so appending stays linear overall. **/
+	private void grow(int n) {
+		int length = length();
+		int capacity = Math.max(_chars.length*2, length + n + _MIN_GAP);
+		char[] chars = new char[capacity];
+		int tail = _chars.length - _gapEnd;
+		System.arraycopy(_chars, 0, chars, 0, _gapStart);
+		System.arraycopy(_chars, _gapEnd, chars, capacity - tail, tail);
+		_gapEnd = capacity - tail;
+		_chars = chars;
+	}
+	private void checkRange(int start, int end) {
+		if (start < 0 || end > length() || start > end) {
+			throw new IndexOutOfBoundsException("Range " + start + " to " + end + " out of bounds for length " + length());
+		}
+	}
+}
@@ -1,13 +1,24 @@
 package simple.gui.textarea;
 
+import java.awt.AlphaComposite;
+import java.awt.Color;
 import java.awt.Font;
 import java.awt.FontMetrics;
-import java.util.LinkedList;
+import java.awt.Graphics2D;
+import java.util.Arrays;
 
 import simple.gui.Draw;
 import simple.gui.Image;
+import simple.gui.TextMetrics;
 import simple.gui.Widget;
 
+/** Base class for widgets showing wrapped text.
+ * <P>The text is kept in a GapBuffer, and the way it is broken into display lines is kept as an index of where each line starts and 
+ * ends and how wide it is. Editing relayouts from the first line the edit can change and stops as soon as a line starts at the same 
+ * place (shifted by the edit) as before, so typing anywhere in a long text only rebreaks the lines around it. Only lines that changed 
+ * are redrawn into the render image, which is kept between edits. 
+ * <P>A line is broken before the first character that doesn't fit in the width of the widget, just after the last whitespace before 
+ * that character if there is one, and always at a '\n'. **/
 public abstract class TextArea extends Widget{
 
 	public static enum Alignment {
@@ -45,8 +56,9 @@ public abstract class TextArea extends Widget{
 	}
 	
 	
-	protected LinkedList<String> _textDisplay;
-	protected String _text;
+	
+	
+	protected GapBuffer _text;
 	protected Image _textRender;
 	protected FontMetrics _fm;
 	protected int _maxRenderLines, _currentRenderLines, _baseTextY, _lineHeight;
@@ -54,42 +66,82 @@ public abstract class TextArea extends Widget{
 	protected Alignment _alignment;
 	protected boolean _boxVisible;
 	
+	protected TextMetrics _metrics;
+	/** Display lines: the index of the first character, the index after the last character shown (not counting a '\n' that ends 
+	 * the line), the index of the last character looked at when deciding where the line ends (the text length for the last line) 
+	 * and the width of the line in pixels. All of them only grow from one line to the next. **/
+	private int[] _lineStart, _lineEnd, _lineScan, _lineWidth;
+	private int _lineCount;
+	/** Edits not laid out yet, as a range of the current text holding every change and how much longer the text got. **/
+	private int _editStart, _editEnd, _editDelta;
+	private boolean _relayoutAll;
+	/** Lines that need to be redrawn into the render image. **/
+	private int _repaintStart, _repaintEnd;
+	private boolean _repaintAll;
+	
 	public boolean editable() { return _editable; } 
 	public boolean active() { return _active; }
 	public int maxRenderLines() { return _maxRenderLines; }
 	public int currentRenderLines() { return _currentRenderLines; }   
-	public String text() { return _text; }
-	public boolean isEmpty() { return _text.equals(""); }
+	public String text() { return _text.toString(); }
+	public int textLength() { return _text.length(); }
+	public boolean isEmpty() { return _text.length() == 0; }
 	public Alignment alignment() { return _alignment; }
+	/** Returns the number of display lines the text is broken into, including those that don't fit in the widget. **/
+	public int lineCount() { layout(); return _lineCount; }
+	/** Returns the text shown on a display line, untrimmed. **/
+	public String lineText(int line) { 
+		layout();
+		if (line < 0 || line >= _lineCount) { throw new IndexOutOfBoundsException("Line " + line + " out of bounds for " + _lineCount + " lines"); }
+		return _text.substring(_lineStart[line], _lineEnd[line]); 
+	}
 	
 	public void setEnabled(boolean enabled) {
         super.setEnabled(enabled);
         _active = _active && enabled;
     }
 	public void setEditable(boolean editable) { _editable = editable; }
-	public void setActive(boolean active) { _active = active; }
+	public void setActive(boolean active) { 
+		if (active != _active) {
+			// The cursor appears or disappears
+			markDirty();
+		}
+		_active = active; 
+	}
 	public void setText(String text) { 
-		clear();
-		addString(text);
+		_text.clear();
+		_text.append(text);
+		_relayoutAll = true;
 		generateLineMetrics();
 	}
 	public void setAlignment(Alignment alignment) { 
 	    _alignment = alignment;
+	    _repaintAll = true;
         generateBaseMetrics();
 	}
-	public void setBoxVisible(boolean boxVisible) { _boxVisible = boxVisible; }
+	public void setBoxVisible(boolean boxVisible) { _boxVisible = boxVisible; markDirty(); }
+	@Override
+	public void setTextColor(Color textColor) {
+		super.setTextColor(textColor);
+		if (_text != null) {
+			_repaintAll = true;
+			renderTextImage();
+		}
+	}
 	
 	@Override
 	public void setSize(int w, int h) {
 		super.setSize(w, h);
-		setText(_text);
+		_relayoutAll = true;
 		generateLineMetrics();
 	}
 	@Override
 	public void setFont(Font f) {
 		super.setFont(f);
 		_fm = Draw.getFontMetrics(_font);
-		setText(_text);
+		_metrics = Draw.getTextMetrics(_font);
+		_repaintAll = true;
+		_relayoutAll = true;
 		generateLineMetrics();
 	}
 	
@@ -108,45 +160,45 @@ public abstract class TextArea extends Widget{
 		_boxVisible = true;
 		_editable = true;
 		_active = false;
-		_textDisplay = new LinkedList<String>();
-		_text = "";
+		_text = new GapBuffer(text.length());
+		_lineStart = new int[8];
+		_lineEnd = new int[8];
+		_lineScan = new int[8];
+		_lineWidth = new int[8];
+		_relayoutAll = true;
+		_editStart = 1;
+		_editEnd = 0;
+		_repaintAll = true;
+		_repaintStart = Integer.MAX_VALUE;
+		_repaintEnd = 0;
 		
 		setFont(_font);
 		setText(text);
 		setAlignment(Alignment.NORTHWEST);
 	}
 	
+	/***********
+	 * EDITING *
+	 ***********/
+	/** Inserts text at the given index and relayouts the lines it changes. **/
+	public void insert(int index, CharSequence s) {
+		_text.insert(index, s);
+		textChanged(index, s.length(), 0);
+		generateLineMetrics();
+	}
+	/** Removes the characters from start (inclusive) to end (exclusive) and relayouts the lines it changes. **/
+	public void delete(int start, int end) {
+		_text.delete(start, end);
+		textChanged(start, 0, end-start);
+		generateLineMetrics();
+	}
 	public void addString(String s) {
-        for (int i=0; i<s.length(); i++) {
-            addChar(s.charAt(i), false);
-        }
-        generateLineMetrics();
+		insert(_text.length(), s);
 	}
 	
 	protected void addChar(char c, boolean updateMetrics) {
-	    _text += c;
-        
-        String textDisplayLine = _textDisplay.getLast();
-        textDisplayLine += c;
-        
-        if (_fm.stringWidth(textDisplayLine) > _w-4) {
-            int breakPoint = textDisplayLine.length()-2;
-            for (int i=breakPoint; i>0; i--) {
-                if (Character.isWhitespace(textDisplayLine.charAt(i))) {
-                    breakPoint = i;
-                    break;
-                }
-            }
-            String currentLineText = textDisplayLine.substring(0, breakPoint+1);
-            String nextLineText = textDisplayLine.substring(breakPoint+1);
-            
-            _textDisplay.removeLast();
-            _textDisplay.addLast(currentLineText);
-            _textDisplay.addLast(nextLineText);
-        } else {
-            _textDisplay.removeLast();
-            _textDisplay.addLast(textDisplayLine);
-        }
+		_text.append(c);
+		textChanged(_text.length()-1, 1, 0);
         if (updateMetrics) {
             generateLineMetrics();
         }
@@ -158,19 +210,10 @@ public abstract class TextArea extends Widget{
 		removeChar(true);
 	}
 	protected void removeChar(boolean updateMetrics) {
-	    if (_text.length() > 0) {
-            _text = _text.substring(0, _text.length()-1);
-        }
-        
-        String textDisplayLine = _textDisplay.getLast();
-        if (textDisplayLine.equals("")) {
-            if (_textDisplay.size() > 1) {
-                _textDisplay.removeLast();
-            }
-        } else {
-            textDisplayLine = textDisplayLine.substring(0, textDisplayLine.length()-1);
-            _textDisplay.removeLast();
-            _textDisplay.addLast(textDisplayLine);
+	    int length = _text.length();
+	    if (length > 0) {
+	    	_text.delete(length-1, length);
+	    	textChanged(length-1, 0, 1);
         }
         if (updateMetrics) {
             generateLineMetrics();
@@ -178,33 +221,192 @@ public abstract class TextArea extends Widget{
 	}
 	
 	public void clear() {
-		_text = "";
-		_textDisplay = new LinkedList<String>();
-		_textDisplay.add("");
+		_text.clear();
+		_relayoutAll = true;
 		generateLineMetrics();
 	}
 	
+	/** Records that inserted characters replaced deleted ones at the given index, to be laid out by the next layout(). **/
+	private void textChanged(int index, int inserted, int deleted) {
+		if (_relayoutAll) {
+			return;
+		}
+		if (_editStart > _editEnd) {
+			_editStart = index;
+			_editEnd = index + inserted;
+			_editDelta = inserted - deleted;
+		} else {
+			// Everything after the edit moves, the end of the edited range included if it's past the deleted characters
+			int end = (_editEnd > index+deleted) ? _editEnd + inserted - deleted : index + inserted;
+			_editStart = Math.min(_editStart, index);
+			_editEnd = Math.max(end, index + inserted);
+			_editDelta += inserted - deleted;
+		}
+	}
+	
+	/**********
+	 * LAYOUT *
+	 **********/
+	/** Brings the line index up to date with the text. **/
+	protected void layout() {
+		if (_relayoutAll) {
+			layoutLines(0, 0, false);
+		} else if (_editStart <= _editEnd) {
+			// The lines before the first one that looked at an edited character break the same way as before
+			int lo = 0, hi = _lineCount-1;
+			while (lo < hi) {
+				int mid = (lo+hi) >>> 1;
+				if (_lineScan[mid] < _editStart) {
+					lo = mid+1;
+				} else {
+					hi = mid;
+				}
+			}
+			layoutLines(lo, _lineStart[lo], true);
+		}
+		_relayoutAll = false;
+		_editStart = 1;
+		_editEnd = 0;
+	}
+	/** Breaks the text into lines starting with line number first at index start. With converge, stops at the first new line past the 
+	 * edited range that starts where an old line did (after shifting it by the edit) and keeps the old lines from there on. 
+	 * Marks the lines that changed to be redrawn. **/
+	private void layoutLines(int first, int start, boolean converge) {
+		int n = _text.length();
+		int maxWidth = _w-4;
+		int oldCount = _lineCount;
+		int[] starts = new int[8], ends = new int[8], scans = new int[8], widths = new int[8];
+		int count = 0;
+		int old = first+1;
+		boolean converged = false;
+		
+		int s = start;
+		while (true) {
+			int width = 0, spaceIndex = -1, spaceWidth = 0;
+			int end, scan, next = -1;
+			for (int p=s; ; p++) {
+				if (p == n) {
+					end = scan = n;
+					break;
+				}
+				char c = _text.charAt(p);
+				if (c == '\n') {
+					end = scan = p;
+					next = p+1;
+					break;
+				}
+				int cw = _metrics.charWidth(c);
+				if (width + cw > maxWidth && p > s) {
+					if (spaceIndex > s) {
+						end = next = spaceIndex+1;
+						width = spaceWidth;
+					} else {
+						end = next = p;
+					}
+					scan = p;
+					break;
+				}
+				width += cw;
+				if (Character.isWhitespace(c)) {
+					spaceIndex = p;
+					spaceWidth = width;
+				}
+			}
+			if (count == starts.length) {
+				starts = Arrays.copyOf(starts, count*2);
+				ends = Arrays.copyOf(ends, count*2);
+				scans = Arrays.copyOf(scans, count*2);
+				widths = Arrays.copyOf(widths, count*2);
+			}
+			starts[count] = s;
+			ends[count] = end;
+			scans[count] = scan;
+			widths[count] = width;
+			count++;
+			if (next < 0) {
+				break;
+			}
+			s = next;
+			if (converge && s >= _editEnd) {
+				int oldStart = s - _editDelta;
+				while (old < oldCount && _lineStart[old] < oldStart) {
+					old++;
+				}
+				if (old < oldCount && _lineStart[old] == oldStart) {
+					converged = true;
+					break;
+				}
+			}
+		}
+		
+		int kept = converged ? oldCount - old : 0;
+		int total = first + count + kept;
+		ensureLineCapacity(total);
+		if (converged) {
+			int to = first + count;
+			System.arraycopy(_lineStart, old, _lineStart, to, kept);
+			System.arraycopy(_lineEnd, old, _lineEnd, to, kept);
+			System.arraycopy(_lineScan, old, _lineScan, to, kept);
+			System.arraycopy(_lineWidth, old, _lineWidth, to, kept);
+			for (int i=to; i<total; i++) {
+				_lineStart[i] += _editDelta;
+				_lineEnd[i] += _editDelta;
+				_lineScan[i] += _editDelta;
+			}
+		}
+		System.arraycopy(starts, 0, _lineStart, first, count);
+		System.arraycopy(ends, 0, _lineEnd, first, count);
+		System.arraycopy(scans, 0, _lineScan, first, count);
+		System.arraycopy(widths, 0, _lineWidth, first, count);
+		_lineCount = total;
+		// Kept lines show the same text, but in a different place if the number of lines before them changed
+		repaintLines(first, (converged && first + count == old) ? old : Math.max(oldCount, total));
+	}
+	private void ensureLineCapacity(int lines) {
+		if (lines > _lineStart.length) {
+			int capacity = Math.max(lines, _lineStart.length*2);
+			_lineStart = Arrays.copyOf(_lineStart, capacity);
+			_lineEnd = Arrays.copyOf(_lineEnd, capacity);
+			_lineScan = Arrays.copyOf(_lineScan, capacity);
+			_lineWidth = Arrays.copyOf(_lineWidth, capacity);
+		}
+	}
+	
 	protected void generateLineMetrics() {
+		layout();
         _lineHeight = _fm.getMaxAscent()+2;
         _maxRenderLines = Math.max(1, (_h-4)/(_lineHeight));
-        _currentRenderLines = Math.min(_maxRenderLines, _textDisplay.size());
+        int renderLines = Math.min(_maxRenderLines, _lineCount);
+        if (renderLines != _currentRenderLines) {
+        	// The last line shown isn't trimmed, so the old and new last lines both change
+        	repaintLines(Math.min(renderLines, _currentRenderLines)-1, Math.max(renderLines, _currentRenderLines));
+        	_currentRenderLines = renderLines;
+        }
         generateBaseMetrics();
 	}
 	protected void generateBaseMetrics() {
+		int baseTextY;
 	    if (Alignment.isTopAligned(_alignment)) {
-            _baseTextY = 2;
+            baseTextY = 2;
         } else if(Alignment.centeredHorizontal(_alignment)) {
-            _baseTextY = 2+_h/2 - (_lineHeight/2)*_currentRenderLines;
+            baseTextY = 2+_h/2 - (_lineHeight/2)*_currentRenderLines;
         } else {
-            _baseTextY = _h-2 - _lineHeight*_currentRenderLines;
+            baseTextY = _h-2 - _lineHeight*_currentRenderLines;
         }
 	    
 	    if (Alignment.centeredVertical(_alignment)) {
-	        _baseTextY += (_lineHeight/2 - 2);
+	        baseTextY += (_lineHeight/2 - 2);
+	    }
+	    if (baseTextY != _baseTextY) {
+	    	_baseTextY = baseTextY;
+	    	_repaintAll = true;
 	    }
         renderTextImage();
 	}
 	
+	/***********
+	 * DRAWING *
+	 ***********/
 	protected void drawBox() {
 	    Draw.setColors(_textAreaColor, _borderColor);
 	    Draw.rect(_x, _y, _w, _h);
@@ -212,26 +414,69 @@ public abstract class TextArea extends Widget{
 	protected void drawCursor() {
 	    if (_currentRenderLines <= _maxRenderLines && _enabled && _editable && _active) {
             if ((System.nanoTime() / 500000000) % 2 == 0) {
-                String currentText = _textDisplay.getLast();
-                int currentLine = _textDisplay.size()-1;
+                int currentLine = _lineCount-1;
+                int currentWidth = _lineWidth[currentLine];
                 int currentY = _baseTextY + currentLine*_lineHeight;
                 if (Alignment.isLeftAligned(_alignment)) {
-                    Draw.line(2 + _fm.stringWidth(currentText)+1, currentY, 2 + _fm.stringWidth(currentText)+1, currentY+_lineHeight);
+                    Draw.line(2 + currentWidth+1, currentY, 2 + currentWidth+1, currentY+_lineHeight);
                 } else if (Alignment.centeredVertical(_alignment)) {
-                    Draw.line(_w/2 + _fm.stringWidth(currentText)/2 + 1, currentY - _fm.getMaxAscent()/2, _w/2 + _fm.stringWidth(currentText)/2 + 1, currentY+_lineHeight - _fm.getMaxAscent()/2);
+                    Draw.line(_w/2 + currentWidth/2 + 1, currentY - _fm.getMaxAscent()/2, _w/2 + currentWidth/2 + 1, currentY+_lineHeight - _fm.getMaxAscent()/2);
                 } else {
                     Draw.line(_w-1, currentY, _w-1, currentY+_lineHeight);
                 }
             }
         }
 	}
+	/** Marks lines from start (inclusive) to end (exclusive) as needing to be redrawn into the render image. **/
+	private void repaintLines(int start, int end) {
+		_repaintStart = Math.min(_repaintStart, Math.max(start, 0));
+		_repaintEnd = Math.max(_repaintEnd, end);
+	}
+	/** Redraws the lines that changed since the last call into the render image, or all of them if the image had to be created or 
+	 * everything moved, and marks the area they cover as dirty. **/
 	protected void renderTextImage() {
-		_textRender = new Image(_w, _h);
+		if (_textRender == null || _textRender.w() != _w || _textRender.h() != _h) {
+			_textRender = new Image(_w, _h);
+			_repaintAll = true;
+		}
+		// Lines past the ones shown now may have been shown before, and need clearing
+		int start = Math.max(_repaintStart, 0), end = Math.min(_repaintEnd, _maxRenderLines);
+		if (_repaintAll) {
+			start = 0;
+			end = _maxRenderLines;
+		}
+		if (!_repaintAll && start >= end) {
+			_repaintStart = Integer.MAX_VALUE;
+			_repaintEnd = 0;
+			return;
+		}
+		// Text drawn centered reaches up to about a line above its y and text drawn from the top a line below its line, so the area
+		// cleared goes a line past the changed lines each way and the lines next to it are drawn again clipped to it
+		int top = 0, bottom = _h;
+		if (!_repaintAll) {
+			top = Math.max(0, _baseTextY + _lineHeight*(start-1));
+			bottom = Math.min(_h, _baseTextY + _lineHeight*(end+1));
+			start = Math.max(0, start-2);
+			end = end+2;
+		}
+		end = Math.min(end, _currentRenderLines);
+		if (bottom <= top) {
+			_repaintAll = false;
+			_repaintStart = Integer.MAX_VALUE;
+			_repaintEnd = 0;
+			return;
+		}
+		
+		Graphics2D g = _textRender.graphics2D();
+		g.setComposite(AlphaComposite.Clear);
+		g.fillRect(0, top, _w, bottom-top);
+		g.setComposite(AlphaComposite.SrcOver);
+		g.setClip(0, top, _w, bottom-top);
 		Draw.setFont(_textRender, _font);
 		Draw.setStroke(_textColor);
 		
-		for (int i=0; i<_currentRenderLines; i++) {
-			String currentText = _textDisplay.get(i);
+		for (int i=start; i<end; i++) {
+			String currentText = _text.substring(_lineStart[i], _lineEnd[i]);
 			if (i != _currentRenderLines-1) { currentText = currentText.trim(); }
 			
 			int currentY = _baseTextY + _lineHeight*i;
@@ -243,5 +488,16 @@ public abstract class TextArea extends Widget{
 			    Draw.textRight(_textRender, currentText, _w-2, currentY);
 			}
 		}
+		g.setClip(null);
+		
+		if (_repaintAll) {
+			markDirty();
+		} else {
+			invalidateRenderCache();
+			Draw.markDirty(_x, _y+top, _w, bottom-top);
+		}
+		_repaintAll = false;
+		_repaintStart = Integer.MAX_VALUE;
+		_repaintEnd = 0;
 	}
 }
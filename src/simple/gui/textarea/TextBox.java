@@ -7,6 +7,9 @@ import simple.run.Input;
 
 // creates a floating text box. Only works if clicked(active)
 public class TextBox extends TextArea {
+	/** Whether the blinking cursor was in its visible phase last frame. **/
+	protected boolean _cursorPhase;
+	
 	public TextBox() {
 		this(0, 0, 10, 10);
 	}
@@ -23,24 +26,38 @@ public class TextBox extends TextArea {
 	@Override
 	protected void updateWidget() {
 		if (clicked()) {
-			_active = true;
+			setActive(true);
 		} else if (!containsMouse() && Input.mousePressed()) {
-			_active = false;
+			setActive(false);
+		}
+		
+		if (_active && _editable) {
+			boolean cursorPhase = (System.nanoTime() / 500000000) % 2 == 0;
+			if (cursorPhase != _cursorPhase) {
+				_cursorPhase = cursorPhase;
+				markDirty();
+			}
 		}
 		
 		handleInput();
 	}
 	
 	protected void handleInput() {
-		if (Input.getChar() != 0 && _editable) {
-			if (_active) {
-				if (Input.getChar() == KeyEvent.VK_BACK_SPACE) {
-					removeChar();
-				} else if (Input.getChar() == KeyEvent.VK_ENTER) {
-					_textDisplay.add("");
-				} else if (Input.getChar() >= 32 && Input.getChar() <= 127) {
-					addChar(Input.getChar());
-				}
+		if (!_editable || !_active) {
+			return;
+		}
+		// Every character typed since the last frame is handled, so fast typing isn't spread out over several frames
+		for (int i=0; i<Input.eventCount(); i++) {
+			if (Input.eventType(i) != Input.KEY_TYPED) {
+				continue;
+			}
+			char c = Input.eventKeyChar(i);
+			if (c == KeyEvent.VK_BACK_SPACE) {
+				removeChar();
+			} else if (c == KeyEvent.VK_ENTER) {
+				addChar('\n');
+			} else if (c >= 32 && c <= 127) {
+				addChar(c);
 			}
 		}
 	}
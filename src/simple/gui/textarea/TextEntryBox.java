@@ -40,16 +40,22 @@ public class TextEntryBox extends TextBox {
 			_enteredText = "";
 			clear();
 		}
-		if (Input.getChar() != 0) {
-			if (_active) {
-				if (Input.getChar() == KeyEvent.VK_BACK_SPACE) {
-					removeChar();
-				} else if (Input.getChar() == KeyEvent.VK_ENTER) {
-					_textIsEntered = true;
-					_enteredText = _text;
-				} else if (Input.getChar() >= 32 && Input.getChar() <= 127) {
-					addChar(Input.getChar());
-				}
+		if (!_active) {
+			return;
+		}
+		for (int i=0; i<Input.eventCount() && !_textIsEntered; i++) {
+			if (Input.eventType(i) != Input.KEY_TYPED) {
+				continue;
+			}
+			char c = Input.eventKeyChar(i);
+			if (c == KeyEvent.VK_BACK_SPACE) {
+				removeChar();
+			} else if (c == KeyEvent.VK_ENTER) {
+				// Anything typed after Enter in the same frame is dropped, since the text is cleared next frame
+				_textIsEntered = true;
+				_enteredText = text();
+			} else if (c >= 32 && c <= 127) {
+				addChar(c);
 			}
 		}
 	}
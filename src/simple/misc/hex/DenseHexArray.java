@@ -0,0 +1,224 @@
+package simple.misc.hex;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/** HexArray for a bounded grid, keeping the data of each hex in a flat array instead of a map.<P>
+ *
+ *  get() and set() map the cube coordinates to an array index arithmetically (see HexIndexer), so they allocate nothing. The HexArray
+ *  methods still work; the HexData they return are views that read and write the array, created on demand. Hexes can't be added
+ *  outside of the grid's shape, and removing a hex only clears its data.
+ * */
+public class DenseHexArray<T> extends HexArray<T> {
+    protected final HexIndexer _indexer;
+    protected Object[] _values;
+    /** Second buffer for step(), allocated on first use */
+    private Object[] _back;
+
+    /** Computes the next data of a hex, for step(). The grid passed in still holds the current data of every hex */
+    @FunctionalInterface
+    public interface Stencil<T> {
+        public T apply(int index, T data, DenseHexArray<T> grid);
+    }
+
+    /** HexData backed by one index of the array */
+    private class Cell extends HexData<T> {
+        private final int _i;
+        Cell(int i) {
+            super(null, _indexer.cubeAt(i));
+            _i = i;
+        }
+        @Override
+        public T data() { return getAt(_i); }
+        @Override
+        public void setData(T data) { setAt(_i, data); }
+    }
+
+    public HexIndexer indexer() { return _indexer; }
+    public boolean contains(int hx, int hy, int hz) { return _indexer.contains(hx, hy, hz); }
+    public boolean contains(Tuple cube) { return _indexer.contains(cube); }
+
+    @SuppressWarnings("unchecked")
+    public T get(int hx, int hy, int hz) { return (T)_values[_indexer.checkedIndexOf(hx, hy, hz)]; }
+    public T get(Tuple cube) { return get(cube.entry(0), cube.entry(1), cube.entry(2)); }
+    public void set(T data, int hx, int hy, int hz) { _values[_indexer.checkedIndexOf(hx, hy, hz)] = data; }
+    public void set(T data, Tuple cube) { set(data, cube.entry(0), cube.entry(1), cube.entry(2)); }
+
+    @SuppressWarnings("unchecked")
+    public T getAt(int index) { return (T)_values[index]; }
+    public void setAt(int index, T data) { _values[index] = data; }
+    /** Returns the data of the neighbor of the hex at the index in the given direction, or null if it isn't in the grid */
+    public T neighborValue(int index, int direction) {
+        int n = _indexer.neighbor(index, direction);
+        return (n < 0) ? null : getAt(n);
+    }
+
+    /** Sets the data of every hex to what the generator makes for it, in parallel. The generator must be thread safe. See
+     *  DenseHexGrid for how the work is split */
+    public void parallelFill(HexData.Generator<T> generator) {
+        fill(generator, true);
+    }
+    private void fill(final HexData.Generator<T> generator, boolean parallel) {
+        DenseHexGrid.forEachChunk(_values.length, parallel, (from, to) -> 
+            _indexer.forEach(from, to, (i, hx, hy, hz) -> _values[i] = generator.generate(hx, hy, hz)));
+    }
+    /** Replaces the data of every hex with the function applied to it, in parallel. The function must be thread safe */
+    public void parallelMap(final UnaryOperator<T> function) {
+        DenseHexGrid.forEachChunk(_values.length, true, (from, to) -> {
+            for (int i=from; i<to; i++) {
+                if (_indexer.contains(i)) {
+                    _values[i] = function.apply(getAt(i));
+                }
+            }
+        });
+    }
+    /** Folds the data of all hexes into one result, in parallel. Each chunk is folded in index order starting from the identity,
+     *  then the chunk results are combined in chunk order, so the result doesn't depend on the number of threads */
+    @SuppressWarnings("unchecked")
+    public <U> U reduce(final U identity, final BiFunction<U, ? super T, U> accumulator, BinaryOperator<U> combiner) {
+        final Object[] partial = new Object[DenseHexGrid.chunkCount(_values.length)];
+        DenseHexGrid.forEachChunk(_values.length, true, (from, to) -> {
+            U result = identity;
+            for (int i=from; i<to; i++) {
+                if (_indexer.contains(i)) {
+                    result = accumulator.apply(result, getAt(i));
+                }
+            }
+            partial[from / DenseHexGrid.CHUNK_SIZE] = result;
+        });
+        U result = identity;
+        for (Object p: partial) {
+            result = combiner.apply(result, (U)p);
+        }
+        return result;
+    }
+    /** Advances every hex by one step of the stencil, in parallel, double buffered like the primitive grids' step(). The stencil must
+     *  be thread safe */
+    public void step(final Stencil<T> stencil) {
+        if (_back == null) {
+            _back = new Object[_values.length];
+        }
+        final Object[] current = _values, next = _back;
+        DenseHexGrid.forEachChunk(current.length, true, (from, to) -> {
+            for (int i=from; i<to; i++) {
+                next[i] = _indexer.contains(i) ? stencil.apply(i, getAt(i), this) : current[i];
+            }
+        });
+        _values = next;
+        _back = current;
+    }
+
+    @Override
+    public HexData<T> index(int hx, int hy, int hz) {
+        int i = _indexer.indexOf(hx, hy, hz);
+        return (i < 0) ? null : new Cell(i);
+    }
+    @Override
+    public HexData<T> index(Tuple triple) { 
+        return (triple.length() == 3) ? index(triple.entry(0), triple.entry(1), triple.entry(2)) : null; 
+    }
+    @Override
+    public HexData<T> index(long packed) {
+        if (Tuple.unpackLength(packed) != 3) return null;
+        return index(Tuple.unpackX(packed), Tuple.unpackY(packed), Tuple.unpackZ(packed));
+    }
+    @Override
+    public void setIndex(T data, int hx, int hy, int hz) { set(data, hx, hy, hz); }
+    @Override
+    public void setIndex(T data, Tuple triple) { set(data, triple); }
+
+    @Override
+    public void put(HexData<T> hexData) { set(hexData.data(), hexData.cubeIndex()); }
+    @Override
+    public void remove(HexData<T> hexData) { remove(hexData.cubeIndex()); }
+    @Override
+    public void put(Tuple cubeCoord, T data) { set(data, cubeCoord); }
+    @Override
+    public void remove(Tuple cubeCoord) {
+        int i = _indexer.indexOf(cubeCoord);
+        if (i >= 0) _values[i] = null;
+    }
+    @Override
+    public void putGenerated(Tuple cubeCoord) {
+        set((_dataGenerator == null) ? null : _dataGenerator.generate(cubeCoord), cubeCoord);
+    }
+
+    /****************
+     * CONSTRUCTORS *
+     ****************/
+    public DenseHexArray(HexIndexer indexer, HexData.Generator<T> dataGenerator) {
+        this(indexer, dataGenerator, false);
+    }
+    /** Creates the array, generating the data of all hexes on several threads at once if parallel is true. The data generator must
+     *  then be thread safe */
+    public DenseHexArray(HexIndexer indexer, HexData.Generator<T> dataGenerator, boolean parallel) {
+        super(null, dataGenerator);
+        if (indexer == null) { throw new IllegalArgumentException("indexer must not be null"); }
+        _indexer = indexer;
+        _values = new Object[indexer.size()];
+
+        if (_dataGenerator != null) {
+            fill(_dataGenerator, parallel);
+        }
+    }
+    public DenseHexArray(HexIndexer indexer) {
+        this(indexer, null);
+    }
+    /** Creates a grid covering the hexes of the generator, which must produce cube coordinates (see HexIndexer.of()) */
+    public DenseHexArray(Tuple.Generator tupleGenerator, HexData.Generator<T> dataGenerator) {
+        this(HexIndexer.of(tupleGenerator), dataGenerator);
+        _tupleGenerator = tupleGenerator;
+    }
+
+    /** Returns the number of hexes in the grid */
+    @Override
+    public int size() { return _indexer.count(); }
+    @Override
+    protected Stream<HexData<T>> stream(boolean parallel) {
+        if (_tupleGenerator != null) {
+            return super.stream(parallel);
+        }
+        IntStream indices = IntStream.range(0, _values.length);
+        return (parallel ? indices.parallel() : indices).filter(i -> _indexer.contains(i)).mapToObj(i -> new Cell(i));
+    }
+
+    /** Iterates in index order, or in the order of the tuple generator if one was given */
+    @Override
+    public Iterator<HexData<T>> iterator() {
+        if (_tupleGenerator != null) {
+            final Iterator<Tuple> tupleIterator = _tupleGenerator.create();
+            return new Iterator<HexData<T>>() {
+                @Override
+                public boolean hasNext() {
+                    return tupleIterator.hasNext();
+                }
+                @Override
+                public HexData<T> next() {
+                    return index(tupleIterator.next());
+                }};
+        }
+        return new Iterator<HexData<T>>() {
+            int next = advance(0);
+
+            private int advance(int i) {
+                while (i < _values.length && !_indexer.contains(i)) i++;
+                return i;
+            }
+            @Override
+            public boolean hasNext() {
+                return next < _values.length;
+            }
+            @Override
+            public HexData<T> next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                HexData<T> cell = new Cell(next);
+                next = advance(next+1);
+                return cell;
+            }};
+    }
+}
@@ -0,0 +1,56 @@
+package simple.misc.hex;
+
+import java.util.stream.IntStream;
+
+/** Base of the hex grids that keep one primitive value per hex in a flat array (IntHexArray, FloatHexArray and LongHexArray).<P>
+ *
+ *  Positions are mapped to array indices by a HexIndexer, so reading or writing a hex allocates nothing. Loops over every hex can
+ *  use the index methods (getAt, setAt) directly, with HexIndexer.hx/hy/hz to get the coordinates back when needed.<P>
+ *
+ *  The bulk operations (parallelFill, parallelMap, reduce and step) split the array into chunks of CHUNK_SIZE indices and run the
+ *  chunks on the common fork-join pool. The chunks don't depend on the number of threads, and reductions combine the chunk results
+ *  in index order, so results are the same on any machine, even for floating point sums.
+ * */
+public abstract class DenseHexGrid {
+    /** Number of indices handled by each parallel task */
+    public static final int CHUNK_SIZE = 4096;
+
+    /** Work on the indices from (inclusive) to to (exclusive) */
+    @FunctionalInterface
+    interface Chunk {
+        void run(int from, int to);
+    }
+
+    protected final HexIndexer _indexer;
+
+    public HexIndexer indexer() { return _indexer; }
+    /** Returns the length of the backing array */
+    public int size() { return _indexer.size(); }
+    public boolean contains(int hx, int hy, int hz) { return _indexer.contains(hx, hy, hz); }
+    public boolean contains(Tuple cube) { return _indexer.contains(cube); }
+
+    /** Returns whether the index belongs to a hex */
+    public boolean containsIndex(int index) { return _indexer.contains(index); }
+    /** Returns the index of the neighbor in the given direction (see HexArray.DIRECTIONS), or -1 if it isn't part of the grid */
+    public int neighbor(int index, int direction) { return _indexer.neighbor(index, direction); }
+
+    protected DenseHexGrid(HexIndexer indexer) {
+        if (indexer == null) { throw new IllegalArgumentException("indexer must not be null"); }
+        _indexer = indexer;
+    }
+
+    static int chunkCount(int size) {
+        return (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    }
+    /** Runs the chunk task over every chunk of the range 0..size-1, on the fork-join pool if parallel and there's more than one */
+    static void forEachChunk(final int size, boolean parallel, final Chunk chunk) {
+        int chunks = chunkCount(size);
+        if (!parallel || chunks <= 1) {
+            for (int c=0; c<chunks; c++) {
+                chunk.run(c*CHUNK_SIZE, Math.min(size, (c+1)*CHUNK_SIZE));
+            }
+            return;
+        }
+        IntStream.range(0, chunks).parallel().forEach(c -> chunk.run(c*CHUNK_SIZE, Math.min(size, (c+1)*CHUNK_SIZE)));
+    }
+}
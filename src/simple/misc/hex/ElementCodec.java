@@ -0,0 +1,74 @@
+package simple.misc.hex;
+
+import java.nio.ByteBuffer;
+
+/** Converts the data of one hex to and from a fixed number of bytes, for storing hexes outside the heap (see HexChunkStore).<P>
+ *
+ *  Every value takes exactly size() bytes, so values can be found by offset without reading the ones before them. Null is never
+ *  written or read; stores keep track of which hexes hold data separately.
+ * */
+public interface ElementCodec<T> {
+    /** Returns the number of bytes each value takes */
+    public int size();
+    /** Writes the value at the buffer's position, advancing it by size() bytes */
+    public void write(T value, ByteBuffer buffer);
+    /** Reads a value at the buffer's position, advancing it by size() bytes */
+    public T read(ByteBuffer buffer);
+
+    public static final ElementCodec<Byte> BYTE = new ElementCodec<Byte>() {
+        @Override
+        public int size() { return 1; }
+        @Override
+        public void write(Byte value, ByteBuffer buffer) { buffer.put(value); }
+        @Override
+        public Byte read(ByteBuffer buffer) { return buffer.get(); }
+    };
+    public static final ElementCodec<Short> SHORT = new ElementCodec<Short>() {
+        @Override
+        public int size() { return 2; }
+        @Override
+        public void write(Short value, ByteBuffer buffer) { buffer.putShort(value); }
+        @Override
+        public Short read(ByteBuffer buffer) { return buffer.getShort(); }
+    };
+    public static final ElementCodec<Integer> INTEGER = new ElementCodec<Integer>() {
+        @Override
+        public int size() { return 4; }
+        @Override
+        public void write(Integer value, ByteBuffer buffer) { buffer.putInt(value); }
+        @Override
+        public Integer read(ByteBuffer buffer) { return buffer.getInt(); }
+    };
+    public static final ElementCodec<Long> LONG = new ElementCodec<Long>() {
+        @Override
+        public int size() { return 8; }
+        @Override
+        public void write(Long value, ByteBuffer buffer) { buffer.putLong(value); }
+        @Override
+        public Long read(ByteBuffer buffer) { return buffer.getLong(); }
+    };
+    public static final ElementCodec<Float> FLOAT = new ElementCodec<Float>() {
+        @Override
+        public int size() { return 4; }
+        @Override
+        public void write(Float value, ByteBuffer buffer) { buffer.putFloat(value); }
+        @Override
+        public Float read(ByteBuffer buffer) { return buffer.getFloat(); }
+    };
+    public static final ElementCodec<Double> DOUBLE = new ElementCodec<Double>() {
+        @Override
+        public int size() { return 8; }
+        @Override
+        public void write(Double value, ByteBuffer buffer) { buffer.putDouble(value); }
+        @Override
+        public Double read(ByteBuffer buffer) { return buffer.getDouble(); }
+    };
+    public static final ElementCodec<Boolean> BOOLEAN = new ElementCodec<Boolean>() {
+        @Override
+        public int size() { return 1; }
+        @Override
+        public void write(Boolean value, ByteBuffer buffer) { buffer.put(value ? (byte)1 : (byte)0); }
+        @Override
+        public Boolean read(ByteBuffer buffer) { return buffer.get() != 0; }
+    };
+}
@@ -1,6 +1,9 @@
 package simple.misc.hex;
 
 import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class HexArray<T> implements Iterable<HexData<T>> {     
                 
@@ -15,37 +18,66 @@ public class HexArray<T> implements Iterable<HexData<T>> {
              { 0, -1,  1}  // right-down
          };
     
+    
+    /** Visits the six hexes next to the given hex, in the order of DIRECTIONS. Same as HexData.adjecentHexes(), without allocating */
+    public static void forEachNeighbor(int hx, int hy, int hz, IntTriConsumer action) {
+        for (int i=0; i<6; i++) {
+            int[] d = DIRECTIONS[i];
+            action.accept(hx + d[0], hy + d[1], hz + d[2]);
+        }
+    }
+    /** Visits the six corners of the given hex. Same as HexData.adjecentCorners(), without allocating */
+    public static void forEachCorner(int hx, int hy, int hz, IntTriConsumer action) {
+        for (int i=0; i<6; i++) {
+            int[] d = HexCornerArray.DIRECTIONS[i&1][i>>1];
+            action.accept(hx + d[0], hy + d[1], hz + d[2]);
+        }
+    }
+    /** Visits the six edges of the given hex. Same as HexData.adjecentEdges(), without allocating */
+    public static void forEachEdge(int hx, int hy, int hz, IntTriConsumer action) {
+        for (int i=0; i<6; i++) {
+            int[] d = DIRECTIONS[i];
+            action.accept(2*hx + d[0], 2*hy + d[1], 2*hz + d[2]);
+        }
+    }
             
     /**************************
      * NON-STATIC DEFINITIONS *
      **************************/
-    protected Map<Tuple, HexData<T>> _cubeMap;
+    /** Hexes keyed by their packed cube coordinates (see Tuple.pack()). Coordinates that can't be packed can't be in the map, so 
+     *  looking them up or removing them finds nothing rather than throwing; only adding them throws */
+    protected LongKeyMap<HexData<T>> _cubeMap;
     protected Tuple.Generator _tupleGenerator;
     protected HexData.Generator<T> _dataGenerator;
     
-    public HexData<T> index(int hx, int hy, int hz) { return index(new Tuple(hx, hy, hz)); }
-    public HexData<T> index(Tuple triple) { return _cubeMap.get(triple); }
+    public HexData<T> index(int hx, int hy, int hz) { 
+        return Tuple.isPackable(hx, hy, hz) ? _cubeMap.get(Tuple.pack(hx, hy, hz)) : null; 
+    }
+    public HexData<T> index(Tuple triple) { return triple.isPackable() ? _cubeMap.get(triple.packed()) : null; }
+    public HexData<T> index(long packed) { return _cubeMap.get(packed); }
     public Tuple.Generator tupleGenerator() { return _tupleGenerator; }
     public HexData.Generator<T> dataGenerator() { return _dataGenerator; }
     
-    public void setIndex(T data, int hx, int hy, int hz) { index(new Tuple(hx, hy, hz)).setData(data); }
-    public void setIndex(T data, Tuple triple) { _cubeMap.get(triple).setData(data); }
+    public void setIndex(T data, int hx, int hy, int hz) { index(hx, hy, hz).setData(data); }
+    public void setIndex(T data, Tuple triple) { index(triple).setData(data); }
     public void setTupleGenerator(Tuple.Generator newGenerator) { _tupleGenerator = newGenerator; }
     public void setDataGenerator(HexData.Generator<T> newGenerator) { _dataGenerator = newGenerator; }
     
     /* Adds a new item into the set*/
     public void put(HexData<T> hexData) { 
-        _cubeMap.put(hexData.cubeIndex(), hexData);
+        _cubeMap.put(hexData.cubeIndex().packed(), hexData);
     }
     public void remove(HexData<T> hexData) {
-        _cubeMap.remove(hexData.cubeIndex());
+        remove(hexData.cubeIndex());
     }
     
     public void put(Tuple cubeCoord, T data) { 
         put(new HexData<T>(data, cubeCoord));
     }
     public void remove(Tuple cubeCoord) {
-        remove(new HexData<T>(null, cubeCoord));
+        if (cubeCoord.isPackable()) {
+            _cubeMap.remove(cubeCoord.packed());
+        }
     }
     
     public void putGenerated(Tuple cubeCoord) { 
@@ -56,15 +88,31 @@ public class HexArray<T> implements Iterable<HexData<T>> {
      * CONSTRUCTORS *
      ****************/
     public HexArray(Tuple.Generator tupleGenerator, HexData.Generator<T> dataGenerator) {
-        _cubeMap = new HashMap<Tuple, HexData<T>>();
+        this(tupleGenerator, dataGenerator, false);
+    }
+    /** Creates the array, generating the data of all hexes on several threads at once if parallel is true. The data generator must
+     *  then be thread safe (e.g. it must not create widgets, which aren't) */
+    public HexArray(Tuple.Generator tupleGenerator, final HexData.Generator<T> dataGenerator, boolean parallel) {
+        int expected = (tupleGenerator instanceof Tuple.IndexedGenerator) ? ((Tuple.IndexedGenerator)tupleGenerator).size() : 0;
+        _cubeMap = new LongKeyMap<HexData<T>>(expected);
         
         _tupleGenerator = tupleGenerator;
         _dataGenerator = dataGenerator;
         
         if (_tupleGenerator != null) {
-            for (Tuple t: _tupleGenerator) {
-                HexData<T> hexData = new HexData<T>(t, _dataGenerator);
-                _cubeMap.put(hexData.cubeIndex(), hexData);
+            if (parallel) {
+                // Generate in parallel, but fill the map on this thread since it isn't thread safe
+                List<HexData<T>> generated = _tupleGenerator.parallelStream()
+                        .map(t -> new HexData<T>(t, dataGenerator))
+                        .collect(Collectors.toList());
+                for (HexData<T> hexData: generated) {
+                    _cubeMap.put(hexData.cubeIndex().packed(), hexData);
+                }
+            } else {
+                for (Tuple t: _tupleGenerator) {
+                    HexData<T> hexData = new HexData<T>(t, _dataGenerator);
+                    _cubeMap.put(hexData.cubeIndex().packed(), hexData);
+                }
             }
         }
     }
@@ -78,15 +126,31 @@ public class HexArray<T> implements Iterable<HexData<T>> {
         this(null, dataGenerator);
     }
     
+    /** Returns the number of hexes stored */
+    public int size() { return _cubeMap.size(); }
+    
+    /** Returns a stream of the hexes, in the same order as iterating */
+    public Stream<HexData<T>> stream() { return stream(false); }
+    /** Returns a parallel stream of the hexes. Splits evenly when the tuple generator is an IndexedGenerator. The array must not be
+     *  changed while the stream runs */
+    public Stream<HexData<T>> parallelStream() { return stream(true); }
+    protected Stream<HexData<T>> stream(boolean parallel) {
+        if (_tupleGenerator == null) {
+            return StreamSupport.stream(Spliterators.spliterator(_cubeMap.iterator(), _cubeMap.size(), Spliterator.NONNULL), parallel);
+        }
+        Stream<Tuple> tuples = parallel ? _tupleGenerator.parallelStream() : _tupleGenerator.stream();
+        return tuples.map(t -> index(t));
+    }
+    
     /** Use the stored generator to generate tuples used to iterate through the map */
     @Override
     public Iterator<HexData<T>> iterator() {
         if (_tupleGenerator == null) {
-            return _cubeMap.values().iterator();
+            return _cubeMap.iterator();
         }
         
         // If the generator returns 2-tuples, use the basemap. Else use the cubemap
-        final Map<Tuple, HexData<T>> workingMap = _cubeMap;
+        final LongKeyMap<HexData<T>> workingMap = _cubeMap;
         final Iterator<Tuple> tupleIterator = _tupleGenerator.create();
         
         return new Iterator<HexData<T>>() {
@@ -98,7 +162,7 @@ public class HexArray<T> implements Iterable<HexData<T>> {
 
             @Override
             public HexData<T> next() {
-                return workingMap.get(tupleIterator.next());
+                return workingMap.get(tupleIterator.next().packed());
             }};
     }
 }
@@ -1,4 +1,98 @@
 package simple.misc.hex;
 
+import java.util.ArrayList;
+import java.util.List;
+
+/** Geometry on cube coordinates: distances, rounding, lines and line of sight. The int variants allocate nothing. */
 public class HexArrayFunctions {
+    /** Nudge added to lines so points exactly between two hexes always round the same way */
+    private static final double NUDGE_X = 1e-6, NUDGE_Y = 2e-6, NUDGE_Z = -3e-6;
+
+    /** Returns the number of moves between two hexes */
+    public static int distance(int ax, int ay, int az, int bx, int by, int bz) {
+        return Math.max(Math.abs(ax-bx), Math.max(Math.abs(ay-by), Math.abs(az-bz)));
+    }
+    public static int distance(Tuple a, Tuple b) {
+        return distance(a.entry(0), a.entry(1), a.entry(2), b.entry(0), b.entry(1), b.entry(2));
+    }
+
+    /** Rounds fractional cube coordinates to the hex containing them and passes it to the consumer. Rounds each coordinate, then
+     *  fixes the one that moved most so the three still add up to the rounded sum */
+    public static void round(double x, double y, double z, IntTriConsumer action) {
+        long rx = Math.round(x), ry = Math.round(y), rz = Math.round(z);
+        long sum = Math.round(x + y + z);
+        double dx = Math.abs(rx - x), dy = Math.abs(ry - y), dz = Math.abs(rz - z);
+        if (dx > dy && dx > dz) {
+            rx = sum - ry - rz;
+        } else if (dy > dz) {
+            ry = sum - rx - rz;
+        } else {
+            rz = sum - rx - ry;
+        }
+        action.accept((int)rx, (int)ry, (int)rz);
+    }
+    public static Tuple round(double x, double y, double z) {
+        final int[] result = new int[3];
+        round(x, y, z, new IntTriConsumer() {
+            @Override
+            public void accept(int hx, int hy, int hz) {
+                result[0] = hx; result[1] = hy; result[2] = hz;
+            }});
+        return new Tuple(result);
+    }
+
+    /** Visits every hex on the line between two hexes, both ends included, in order from a to b. Samples distance+1 evenly spaced
+     *  points along the line and rounds each to a hex, so consecutive hexes are always neighbors */
+    public static void line(int ax, int ay, int az, int bx, int by, int bz, IntTriConsumer action) {
+        int n = distance(ax, ay, az, bx, by, bz);
+        if (n == 0) {
+            action.accept(ax, ay, az);
+            return;
+        }
+        double sx = ax + NUDGE_X, sy = ay + NUDGE_Y, sz = az + NUDGE_Z;
+        double step = 1.0/n;
+        for (int i=0; i<=n; i++) {
+            double t = i*step;
+            round(sx + (bx-ax)*t, sy + (by-ay)*t, sz + (bz-az)*t, action);
+        }
+    }
+    public static Tuple[] line(Tuple a, Tuple b) {
+        final List<Tuple> hexes = new ArrayList<Tuple>(distance(a, b)+1);
+        line(a.entry(0), a.entry(1), a.entry(2), b.entry(0), b.entry(1), b.entry(2), new IntTriConsumer() {
+            @Override
+            public void accept(int x, int y, int z) {
+                hexes.add(new Tuple(x, y, z));
+            }});
+        return hexes.toArray(new Tuple[hexes.size()]);
+    }
+
+    /** Returns whether b can be seen from a: no hex strictly between them on the line from a to b blocks. The ends themselves may
+     *  block, so walls can be seen */
+    public static boolean hasLineOfSight(int ax, int ay, int az, int bx, int by, int bz, IntTriPredicate blocks) {
+        int n = distance(ax, ay, az, bx, by, bz);
+        double sx = ax + NUDGE_X, sy = ay + NUDGE_Y, sz = az + NUDGE_Z;
+        double step = 1.0/Math.max(n, 1);
+        for (int i=1; i<n; i++) {
+            double t = i*step;
+            double x = sx + (bx-ax)*t, y = sy + (by-ay)*t, z = sz + (bz-az)*t;
+            // Same rounding as round(), inlined so nothing has to be passed out
+            long rx = Math.round(x), ry = Math.round(y), rz = Math.round(z);
+            long sum = Math.round(x + y + z);
+            double dx = Math.abs(rx - x), dy = Math.abs(ry - y), dz = Math.abs(rz - z);
+            if (dx > dy && dx > dz) {
+                rx = sum - ry - rz;
+            } else if (dy > dz) {
+                ry = sum - rx - rz;
+            } else {
+                rz = sum - rx - ry;
+            }
+            if (blocks.test((int)rx, (int)ry, (int)rz)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    public static boolean hasLineOfSight(Tuple a, Tuple b, IntTriPredicate blocks) {
+        return hasLineOfSight(a.entry(0), a.entry(1), a.entry(2), b.entry(0), b.entry(1), b.entry(2), blocks);
+    }
 }
@@ -0,0 +1,580 @@
+package simple.misc.hex;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/** Sparse hex storage for large or generated worlds, split into chunks that are paged out to disk when memory runs low.<P>
+ *
+ *  Hexes are grouped by their axial coordinates (q = hx, r = hz) into chunks of CHUNK_SIDE x CHUNK_SIDE hexes. A chunk is only
+ *  created when a hex in it is first given data, so empty parts of the world cost nothing. At most maxResidentChunks() chunks are
+ *  kept in memory; when another one is needed, the one used least recently is written to a page file and dropped. Chunks on disk
+ *  are read back the next time one of their hexes is asked for, and prefetch() reads in the chunks around a point (e.g. the camera)
+ *  before they're needed.<P>
+ *
+ *  The page file is memory-mapped, and each chunk takes one fixed-size record in it: a bitmap of which hexes hold data, followed by
+ *  the data of those hexes written by the ElementCodec. Records of chunks that become empty are reused. The page file is scratch
+ *  space for this store only; it's deleted by close().<P>
+ *
+ *  All hexes must lie on the plane hx+hy+hz = 0, with hx and hz between MIN_COORDINATE and MAX_COORDINATE (about 33 million
+ *  either way, the range of chunk keys packed with Tuple.pack()). Looking up a hex outside that range finds nothing, and setting data
+ *  there throws IndexOutOfBoundsException. Setting a hex to null removes it. The store is not thread safe.
+ * */
+public class HexChunkStore<T> implements Iterable<HexData<T>>, Closeable {
+    /** Default number of chunks kept in memory before chunks are paged out */
+    protected static int _DEFAULT_MAX_RESIDENT_CHUNKS = 256;
+    /** Default size in bytes of each memory-mapped piece of the page file */
+    protected static int _DEFAULT_SEGMENT_BYTES = 1 << 24;
+
+    public static final int CHUNK_BITS = 5;
+    /** Number of hexes along each side of a chunk, in axial coordinates */
+    public static final int CHUNK_SIDE = 1 << CHUNK_BITS;
+    /** Number of hexes in a chunk */
+    public static final int CHUNK_AREA = CHUNK_SIDE*CHUNK_SIDE;
+    private static final int CHUNK_MASK = CHUNK_SIDE - 1;
+    /** Smallest and largest hx and hz a hex in the store can have */
+    public static final int MIN_COORDINATE = Tuple.PACK_MIN << CHUNK_BITS;
+    public static final int MAX_COORDINATE = (Tuple.PACK_MAX << CHUNK_BITS) | CHUNK_MASK;
+    private static final int BITMAP_LONGS = CHUNK_AREA/64;
+
+    /** Chunk in memory, linked into the least recently used list */
+    private static final class Chunk {
+        final long key;
+        final int cq, cr;
+        final Object[] values = new Object[CHUNK_AREA];
+        int count;
+        boolean dirty;
+        /** Record in the page file, or null if the chunk has never been paged out */
+        Page page;
+        Chunk newer, older;
+
+        Chunk(long key, int cq, int cr) {
+            this.key = key;
+            this.cq = cq;
+            this.cr = cr;
+        }
+    }
+    /** Place of a chunk in the page file */
+    private static final class Page {
+        final int record;
+        int count;
+        boolean resident;
+
+        Page(int record) { this.record = record; }
+    }
+
+    /** View of one hex of the store. Reads and writes go through the store, so views stay valid when their chunk is paged out */
+    private class Cell extends HexData<T> {
+        private final int _q, _r;
+        Cell(int q, int r) {
+            super(null, q, -q-r, r);
+            _q = q;
+            _r = r;
+        }
+        @Override
+        public T data() { return getAxial(_q, _r); }
+        @Override
+        public void setData(T data) { setAxial(data, _q, _r); }
+    }
+
+    protected final ElementCodec<T> _codec;
+    protected int _maxResidentChunks;
+
+    private final LongKeyMap<Chunk> _resident;
+    private final LongKeyMap<Page> _pages;
+    /** Ends of the circular least recently used list: older is the most recently used chunk, newer the least recently used */
+    private final Chunk _lru;
+    /** Chunk used last, checked before the map since neighboring hexes are usually asked for one after another */
+    private Chunk _last;
+    private int _size, _pagedOut;
+
+    private File _pageFile;
+    private RandomAccessFile _file;
+    private FileChannel _channel;
+    private final ArrayList<MappedByteBuffer> _segments;
+    private final int _recordBytes, _recordsPerSegment;
+    private int _records;
+    private int[] _freeRecords;
+    private int _freeCount;
+    private boolean _closed;
+
+    /****************
+     * CONSTRUCTORS *
+     ****************/
+    public HexChunkStore(ElementCodec<T> codec) {
+        this(codec, _DEFAULT_MAX_RESIDENT_CHUNKS, null);
+    }
+    public HexChunkStore(ElementCodec<T> codec, int maxResidentChunks) {
+        this(codec, maxResidentChunks, null);
+    }
+    /** Creates a store paging out to the given file, which is overwritten and deleted on close(). With a null file, a temporary file
+     *  is created the first time a chunk is paged out */
+    public HexChunkStore(ElementCodec<T> codec, int maxResidentChunks, File pageFile) {
+        if (codec == null) { throw new IllegalArgumentException("codec must not be null"); }
+        if (codec.size() < 0) { throw new IllegalArgumentException("codec size must not be negative"); }
+        if (maxResidentChunks < 1) { throw new IllegalArgumentException("maxResidentChunks must be at least 1"); }
+        _codec = codec;
+        _maxResidentChunks = maxResidentChunks;
+        _resident = new LongKeyMap<Chunk>(maxResidentChunks);
+        _pages = new LongKeyMap<Page>();
+        _lru = new Chunk(0, 0, 0);
+        _lru.newer = _lru.older = _lru;
+        _pageFile = pageFile;
+        _segments = new ArrayList<MappedByteBuffer>();
+        _recordBytes = BITMAP_LONGS*8 + CHUNK_AREA*codec.size();
+        _recordsPerSegment = Math.max(1, _DEFAULT_SEGMENT_BYTES/_recordBytes);
+        _freeRecords = new int[16];
+    }
+
+    public ElementCodec<T> codec()  { return _codec; }
+    /** Returns the number of hexes holding data, in memory or paged out */
+    public int size()               { return _size; }
+    public boolean isEmpty()        { return _size == 0; }
+    /** Returns the number of chunks in memory */
+    public int residentChunks()     { return _resident.size(); }
+    /** Returns the number of chunks only on disk */
+    public int pagedChunks()        { return _pagedOut; }
+    public int maxResidentChunks()  { return _maxResidentChunks; }
+    /** Returns the page file, or null if nothing has been paged out yet */
+    public File pageFile()          { return _pageFile; }
+
+    /** Sets how many chunks are kept in memory, paging out the least recently used ones if there are more */
+    public void setMaxResidentChunks(int maxResidentChunks) {
+        if (maxResidentChunks < 1) { throw new IllegalArgumentException("maxResidentChunks must be at least 1"); }
+        _maxResidentChunks = maxResidentChunks;
+        while (_resident.size() > _maxResidentChunks) {
+            evict(_lru.newer);
+        }
+    }
+
+    /**************
+     * HEX ACCESS *
+     **************/
+    /** Returns the data of the hex, or null if it has none. Reads the hex's chunk back from disk if it was paged out */
+    public T get(int hx, int hy, int hz) {
+        checkPlane(hx, hy, hz);
+        return getAxial(hx, hz);
+    }
+    public T get(Tuple cube) { return get(cube.entry(0), cube.entry(1), cube.entry(2)); }
+    public boolean contains(int hx, int hy, int hz) { return get(hx, hy, hz) != null; }
+    public boolean contains(Tuple cube) { return get(cube) != null; }
+
+    /** Sets the data of the hex, creating its chunk if needed. Setting null removes the hex. Throws IndexOutOfBoundsException if hx or 
+     *  hz is outside MIN_COORDINATE to MAX_COORDINATE and data isn't null */
+    public void set(T data, int hx, int hy, int hz) {
+        checkPlane(hx, hy, hz);
+        setAxial(data, hx, hz);
+    }
+    public void set(T data, Tuple cube) { set(data, cube.entry(0), cube.entry(1), cube.entry(2)); }
+    public void remove(int hx, int hy, int hz) { set(null, hx, hy, hz); }
+    public void remove(Tuple cube) { set(null, cube); }
+
+    /** Returns a view of the hex, or null if it has no data. The view reads and writes through the store */
+    public HexData<T> index(int hx, int hy, int hz) {
+        return contains(hx, hy, hz) ? new Cell(hx, hz) : null;
+    }
+    public HexData<T> index(Tuple cube) { return index(cube.entry(0), cube.entry(1), cube.entry(2)); }
+
+    @SuppressWarnings("unchecked")
+    private T getAxial(int q, int r) {
+        if (!inRange(q, r)) {
+            return null;
+        }
+        Chunk chunk = chunk(q >> CHUNK_BITS, r >> CHUNK_BITS, false);
+        return (chunk == null) ? null : (T)chunk.values[slot(q, r)];
+    }
+    private void setAxial(T data, int q, int r) {
+        if (!inRange(q, r)) {
+            if (data == null) {
+                return;
+            }
+            throw new IndexOutOfBoundsException("Hex (q " + q + ", r " + r + ") is outside the store's range of " + MIN_COORDINATE 
+                    + " to " + MAX_COORDINATE);
+        }
+        Chunk chunk = chunk(q >> CHUNK_BITS, r >> CHUNK_BITS, data != null);
+        if (chunk == null) {
+            return;
+        }
+        int slot = slot(q, r);
+        Object old = chunk.values[slot];
+        if (old == null && data != null) {
+            chunk.count++;
+            _size++;
+        } else if (old != null && data == null) {
+            chunk.count--;
+            _size--;
+        }
+        chunk.values[slot] = data;
+        chunk.dirty = true;
+    }
+
+    /************
+     * PREFETCH *
+     ************/
+    /** Reads in the paged out chunks within the given number of chunks of the hex, and marks every chunk there as recently used so it
+     *  won't be paged out before chunks further away. Loading is done right away on the calling thread, nearest chunks last, and the
+     *  radius is cut down so the chunks loaded fit in memory together. Returns the number of chunks read from disk */
+    public int prefetch(int hx, int hy, int hz, int chunkRadius) {
+        checkPlane(hx, hy, hz);
+        int cq = hx >> CHUNK_BITS, cr = hz >> CHUNK_BITS;
+        int radius = chunkRadius;
+        while (radius > 0 && 3*radius*(radius+1) + 1 > _maxResidentChunks) {
+            radius--;
+        }
+        int loaded = 0;
+        for (int d=radius; d>=0; d--) {
+            // Walk the ring of chunks at distance d, in axial chunk coordinates
+            int q = cq - d, r = cr + d;
+            int steps = (d == 0) ? 1 : 6*d;
+            for (int k=0; k<steps; k++) {
+                if (isPackable(q, r)) {
+                    Chunk chunk = _resident.get(Tuple.pack(q, r));
+                    if (chunk != null) {
+                        touch(chunk);
+                    } else if (_pages.get(Tuple.pack(q, r)) != null) {
+                        chunk(q, r, false);
+                        loaded++;
+                    }
+                }
+                if (d > 0) {
+                    int[] dir = HexArray.DIRECTIONS[k/d];
+                    q += dir[0];
+                    r += dir[2];
+                }
+            }
+        }
+        return loaded;
+    }
+    public int prefetch(Tuple cube, int chunkRadius) {
+        return prefetch(cube.entry(0), cube.entry(1), cube.entry(2), chunkRadius);
+    }
+
+    /*************
+     * ITERATION *
+     *************/
+    /** Iterates over every hex holding data, chunk by chunk, reading paged out chunks back in as they're reached (which may page out
+     *  others). The chunks to visit are decided when the iterator is created; changes to a chunk after it's reached aren't seen */
+    @Override
+    public Iterator<HexData<T>> iterator() {
+        long[] keys = new long[_resident.size() + _pagedOut];
+        int n = 0;
+        for (int i=0; i<_resident.capacity(); i++) {
+            if (_resident.valueAt(i) != null) {
+                keys[n++] = _resident.keyAt(i);
+            }
+        }
+        for (int i=0; i<_pages.capacity(); i++) {
+            Page page = _pages.valueAt(i);
+            if (page != null && !page.resident && page.count > 0) {
+                keys[n++] = _pages.keyAt(i);
+            }
+        }
+        Arrays.sort(keys, 0, n);
+        return new ChunkIterator(keys, n);
+    }
+
+    /** Returns the hexes of the region (e.g. the part of the world on screen) that hold data. The region's tuples must be cube
+     *  coordinates. Each hex is looked up as the iteration reaches it */
+    public Iterable<HexData<T>> region(final Tuple.Generator region) {
+        return new Iterable<HexData<T>>() {
+            @Override
+            public Iterator<HexData<T>> iterator() {
+                final Iterator<Tuple> tuples = region.iterator();
+                return new Iterator<HexData<T>>() {
+                    HexData<T> next = advance();
+
+                    private HexData<T> advance() {
+                        while (tuples.hasNext()) {
+                            HexData<T> hex = index(tuples.next());
+                            if (hex != null) return hex;
+                        }
+                        return null;
+                    }
+                    @Override
+                    public boolean hasNext() {
+                        return next != null;
+                    }
+                    @Override
+                    public HexData<T> next() {
+                        if (next == null) throw new NoSuchElementException();
+                        HexData<T> hex = next;
+                        next = advance();
+                        return hex;
+                    }};
+            }};
+    }
+
+    private class ChunkIterator implements Iterator<HexData<T>> {
+        private final long[] _keys;
+        private final int _count;
+        private int _nextKey;
+        private Chunk _chunk;
+        private int _slot;
+
+        ChunkIterator(long[] keys, int count) {
+            _keys = keys;
+            _count = count;
+            advance();
+        }
+        /** Moves to the next slot holding data, going on to the next chunk when this one runs out */
+        private void advance() {
+            while (true) {
+                if (_chunk != null) {
+                    while (++_slot < CHUNK_AREA) {
+                        if (_chunk.values[_slot] != null) return;
+                    }
+                }
+                if (_nextKey >= _count) {
+                    _chunk = null;
+                    return;
+                }
+                long key = _keys[_nextKey++];
+                _chunk = chunk(Tuple.unpackX(key), Tuple.unpackY(key), false);
+                _slot = -1;
+            }
+        }
+        @Override
+        public boolean hasNext() {
+            return _chunk != null;
+        }
+        @Override
+        public HexData<T> next() {
+            if (_chunk == null) throw new NoSuchElementException();
+            HexData<T> hex = new Cell((_chunk.cq << CHUNK_BITS) + (_slot & CHUNK_MASK), (_chunk.cr << CHUNK_BITS) + (_slot >> CHUNK_BITS));
+            advance();
+            return hex;
+        }
+    }
+
+    /**********
+     * CHUNKS *
+     **********/
+    /** Returns the chunk, reading it from disk if it was paged out. A chunk that doesn't exist yet is created if asked, or else null
+     *  is returned without allocating */
+    private Chunk chunk(int cq, int cr, boolean create) {
+        Chunk chunk = _last;
+        if (chunk != null && chunk.cq == cq && chunk.cr == cr) {
+            return chunk;
+        }
+        long key = Tuple.pack(cq, cr);
+        chunk = _resident.get(key);
+        if (chunk == null) {
+            Page page = _pages.get(key);
+            if (page == null && !create) {
+                return null;
+            }
+            checkOpen();
+            while (_resident.size() >= _maxResidentChunks) {
+                evict(_lru.newer);
+            }
+            chunk = new Chunk(key, cq, cr);
+            if (page != null) {
+                readPage(chunk, page);
+                page.resident = true;
+                chunk.page = page;
+                _pagedOut--;
+            }
+            _resident.put(key, chunk);
+            link(chunk);
+        } else {
+            touch(chunk);
+        }
+        _last = chunk;
+        return chunk;
+    }
+
+    /** Drops the chunk from memory, writing it to the page file first if it changed since it was last there */
+    private void evict(Chunk chunk) {
+        unlink(chunk);
+        _resident.remove(chunk.key);
+        if (_last == chunk) {
+            _last = null;
+        }
+        Page page = chunk.page;
+        if (chunk.count == 0) {
+            // Nothing to keep; give the record back
+            if (page != null) {
+                _pages.remove(chunk.key);
+                freeRecord(page.record);
+            }
+            return;
+        }
+        if (page == null) {
+            page = new Page(allocateRecord());
+            _pages.put(chunk.key, page);
+        }
+        if (chunk.dirty || page.count != chunk.count) {
+            writePage(chunk, page);
+        }
+        page.count = chunk.count;
+        page.resident = false;
+        _pagedOut++;
+    }
+
+    /** Adds the chunk to the list as the most recently used */
+    private void link(Chunk chunk) {
+        chunk.newer = _lru;
+        chunk.older = _lru.older;
+        _lru.older.newer = chunk;
+        _lru.older = chunk;
+    }
+    private void unlink(Chunk chunk) {
+        chunk.older.newer = chunk.newer;
+        chunk.newer.older = chunk.older;
+        chunk.newer = chunk.older = null;
+    }
+    private void touch(Chunk chunk) {
+        if (_lru.older != chunk) {
+            unlink(chunk);
+            link(chunk);
+        }
+    }
+
+    private static int slot(int q, int r) {
+        return ((r & CHUNK_MASK) << CHUNK_BITS) | (q & CHUNK_MASK);
+    }
+    private static boolean inRange(int q, int r) {
+        return q >= MIN_COORDINATE && q <= MAX_COORDINATE && r >= MIN_COORDINATE && r <= MAX_COORDINATE;
+    }
+    private static boolean isPackable(int cq, int cr) {
+        return Tuple.isPackable(cq) && Tuple.isPackable(cr);
+    }
+    private static void checkPlane(int hx, int hy, int hz) {
+        if (hx + hy + hz != 0) {
+            throw new IllegalArgumentException("Hex is not on the plane hx+hy+hz = 0: (" + hx + ", " + hy + ", " + hz + ")");
+        }
+    }
+    private void checkOpen() {
+        if (_closed) { throw new IllegalStateException("HexChunkStore is closed"); }
+    }
+
+    /*************
+     * PAGE FILE *
+     *************/
+    private void writePage(Chunk chunk, Page page) {
+        ByteBuffer buffer = record(page.record);
+        Object[] values = chunk.values;
+        for (int w=0; w<BITMAP_LONGS; w++) {
+            long bits = 0;
+            for (int b=0; b<64; b++) {
+                if (values[w*64 + b] != null) bits |= 1L << b;
+            }
+            buffer.putLong(bits);
+        }
+        int size = _codec.size();
+        for (int s=0; s<CHUNK_AREA; s++) {
+            if (values[s] != null) {
+                @SuppressWarnings("unchecked")
+                T value = (T)values[s];
+                // Checked after every value, like HexCodec does, so a wrong size never shifts the values after it
+                int valueStart = buffer.position();
+                try {
+                    _codec.write(value, buffer);
+                } catch (BufferOverflowException e) {
+                    throw new IllegalStateException("ElementCodec wrote more than " + size + " bytes", e);
+                }
+                if (buffer.position() - valueStart != size) {
+                    throw new IllegalStateException("ElementCodec wrote " + (buffer.position() - valueStart) + " bytes, not " + size);
+                }
+            }
+        }
+        chunk.dirty = false;
+    }
+    private void readPage(Chunk chunk, Page page) {
+        ByteBuffer buffer = record(page.record);
+        long[] bitmap = new long[BITMAP_LONGS];
+        for (int w=0; w<BITMAP_LONGS; w++) {
+            bitmap[w] = buffer.getLong();
+        }
+        int count = 0;
+        for (int w=0; w<BITMAP_LONGS; w++) {
+            long bits = bitmap[w];
+            while (bits != 0) {
+                int b = Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                chunk.values[w*64 + b] = _codec.read(buffer);
+                count++;
+            }
+        }
+        chunk.count = count;
+        chunk.dirty = false;
+    }
+
+    /** Returns a buffer over the record, positioned at its start */
+    private ByteBuffer record(int record) {
+        int segment = record / _recordsPerSegment;
+        while (_segments.size() <= segment) {
+            mapSegment();
+        }
+        ByteBuffer buffer = _segments.get(segment).duplicate();
+        int offset = (record % _recordsPerSegment)*_recordBytes;
+        buffer.limit(offset + _recordBytes);
+        buffer.position(offset);
+        return buffer;
+    }
+    private void mapSegment() {
+        try {
+            if (_channel == null) {
+                if (_pageFile == null) {
+                    _pageFile = File.createTempFile("hexchunks", ".page");
+                    _pageFile.deleteOnExit();
+                }
+                _file = new RandomAccessFile(_pageFile, "rw");
+                _file.setLength(0);
+                _channel = _file.getChannel();
+            }
+            long segmentBytes = (long)_recordsPerSegment*_recordBytes;
+            _segments.add(_channel.map(FileChannel.MapMode.READ_WRITE, _segments.size()*segmentBytes, segmentBytes));
+        } catch (IOException e) {
+            throw new RuntimeException("Could not map hex chunk page file: " + _pageFile, e);
+        }
+    }
+    private int allocateRecord() {
+        return (_freeCount > 0) ? _freeRecords[--_freeCount] : _records++;
+    }
+    private void freeRecord(int record) {
+        if (_freeCount == _freeRecords.length) {
+            _freeRecords = Arrays.copyOf(_freeRecords, _freeCount*2);
+        }
+        _freeRecords[_freeCount++] = record;
+    }
+
+    /** Drops every hex and closes and deletes the page file. The store can't be used afterwards. The file's memory mappings are
+     *  released once they're garbage collected, so on some systems the file is only removed when the program exits */
+    @Override
+    public void close() {
+        if (_closed) {
+            return;
+        }
+        _closed = true;
+        _resident.clear();
+        _pages.clear();
+        _lru.newer = _lru.older = _lru;
+        _last = null;
+        _segments.clear();
+        _size = 0;
+        _pagedOut = 0;
+        if (_file != null) {
+            try {
+                _file.close();
+            } catch (IOException e) {
+                throw new RuntimeException("Could not close hex chunk page file: " + _pageFile, e);
+            } finally {
+                _file = null;
+                _channel = null;
+                if (_pageFile != null && !_pageFile.delete()) {
+                    _pageFile.deleteOnExit();
+                }
+            }
+        }
+    }
+}
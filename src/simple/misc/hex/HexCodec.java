@@ -0,0 +1,543 @@
+package simple.misc.hex;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.function.Function;
+
+/** Compact binary format for saving and loading hex grids (HexArray, HexCornerArray, HexEdgeArray, DenseHexArray and the primitive
+ *  dense grids).<P>
+ *
+ *  Every encoding starts with a header: the magic number 'HEXC', a version, the kind of grid, whether the payload is dense or sparse,
+ *  the type and parameters of the tuple generator (if it's one of Tuple's own) and the number of bytes per value. Then comes either
+ *  <UL>
+ *  <LI>a dense payload, for grids whose hexes are exactly those of their generator or indexer: the values in generator or index order,
+ *      with no coordinates at all. The primitive grids write their array as is.
+ *  <LI>a sparse payload, for everything else: the packed coordinates sorted so that rows of neighboring hexes are consecutive, stored
+ *      as runs (gap from the previous run and run length, as variable-length integers), then the values in the same order.
+ *  </UL>
+ *  Values of object grids are written by an ElementCodec, all with the same size, after a bitmap of which ones aren't null. Numbers
+ *  are little-endian, so on most machines the primitive grids load with a plain memory copy.<P>
+ *
+ *  Encoding returns a ByteBuffer that save() writes to a file; decoding reads from any ByteBuffer, including the MappedByteBuffer
+ *  map() returns, so a file is read straight from the page cache without going through streams. Data generators can't be saved, so
+ *  decoded grids have none.
+ * */
+public final class HexCodec {
+    /** 'HEXC' */
+    public static final int MAGIC = 0x48455843;
+    public static final int VERSION = 1;
+
+    // Kinds of grid
+    static final byte HEXES = 1, CORNERS = 2, EDGES = 3, INT_GRID = 4, FLOAT_GRID = 5, LONG_GRID = 6, OBJECT_GRID = 7;
+    // Payload layouts
+    static final byte DENSE = 0, SPARSE = 1;
+    // Tuple generators
+    static final byte NO_GENERATOR = 0, ARRAY_GENERATOR = 1, RADIAL_GENERATOR = 2, TRIANGLE_GENERATOR = 3;
+
+    private HexCodec() {}
+
+    /************
+     * ENCODING *
+     ************/
+    /** Encodes the hexes and their data. Dense if the array holds exactly the hexes of its tuple generator, sparse otherwise. A
+     *  DenseHexArray is encoded from its indexer */
+    public static <T> ByteBuffer encode(HexArray<T> hexes, ElementCodec<T> codec) {
+        if (hexes instanceof DenseHexArray) {
+            return encode((DenseHexArray<T>)hexes, codec);
+        }
+        Output out = new Output();
+        Tuple.Generator generator = hexes.tupleGenerator();
+        if (isDense(hexes, generator)) {
+            Tuple.IndexedGenerator indexed = (Tuple.IndexedGenerator)generator;
+            int count = indexed.size();
+            writeHeader(out, HEXES, DENSE, generator, codec.size());
+            out.ensure(4).putInt(count);
+            Object[] values = new Object[count];
+            for (int i=0; i<count; i++) {
+                values[i] = hexes.index(indexed.tupleAt(i)).data();
+            }
+            writeValues(out, values, count, codec);
+        } else {
+            writeHeader(out, HEXES, SPARSE, generator, codec.size());
+            writeSparse(out, hexes._cubeMap, HexData::data, codec);
+        }
+        return out.finish();
+    }
+    public static <T> ByteBuffer encode(HexCornerArray<T> corners, ElementCodec<T> codec) {
+        Output out = new Output();
+        writeHeader(out, CORNERS, SPARSE, null, codec.size());
+        writeSparse(out, corners._cubeMap, CornerData::data, codec);
+        return out.finish();
+    }
+    public static <T> ByteBuffer encode(HexEdgeArray<T> edges, ElementCodec<T> codec) {
+        Output out = new Output();
+        writeHeader(out, EDGES, SPARSE, null, codec.size());
+        writeSparse(out, edges._cubeMap, EdgeData::data, codec);
+        return out.finish();
+    }
+    /** Encodes the grid's shape and every value, in index order */
+    public static <T> ByteBuffer encode(DenseHexArray<T> grid, ElementCodec<T> codec) {
+        Output out = new Output();
+        writeHeader(out, OBJECT_GRID, DENSE, grid.tupleGenerator(), codec.size());
+        writeIndexer(out, grid.indexer());
+        writeValues(out, grid._values, grid._values.length, codec);
+        return out.finish();
+    }
+    public static ByteBuffer encode(IntHexArray grid) {
+        Output out = new Output();
+        writeHeader(out, INT_GRID, DENSE, null, 4);
+        writeIndexer(out, grid.indexer());
+        ByteBuffer buffer = out.ensure(grid._values.length*4L);
+        buffer.asIntBuffer().put(grid._values);
+        buffer.position(buffer.position() + grid._values.length*4);
+        return out.finish();
+    }
+    public static ByteBuffer encode(FloatHexArray grid) {
+        Output out = new Output();
+        writeHeader(out, FLOAT_GRID, DENSE, null, 4);
+        writeIndexer(out, grid.indexer());
+        ByteBuffer buffer = out.ensure(grid._values.length*4L);
+        buffer.asFloatBuffer().put(grid._values);
+        buffer.position(buffer.position() + grid._values.length*4);
+        return out.finish();
+    }
+    public static ByteBuffer encode(LongHexArray grid) {
+        Output out = new Output();
+        writeHeader(out, LONG_GRID, DENSE, null, 8);
+        writeIndexer(out, grid.indexer());
+        ByteBuffer buffer = out.ensure(grid._values.length*8L);
+        buffer.asLongBuffer().put(grid._values);
+        buffer.position(buffer.position() + grid._values.length*8);
+        return out.finish();
+    }
+
+    /************
+     * DECODING *
+     ************/
+    /** Decodes hexes encoded from a HexArray or DenseHexArray (in which case a DenseHexArray is returned). Reads from the buffer's
+     *  position without changing it */
+    public static <T> HexArray<T> decodeHexArray(ByteBuffer buffer, ElementCodec<T> codec) {
+        ByteBuffer in = input(buffer);
+        Header header = readHeader(in, codec.size());
+        if (header.kind == OBJECT_GRID) {
+            DenseHexArray<T> grid = new DenseHexArray<T>(HexIndexer.read(in));
+            grid._tupleGenerator = header.generator;
+            readValues(in, grid._values, grid._values.length, codec);
+            return grid;
+        }
+        checkKind(header, HEXES);
+        HexArray<T> hexes = new HexArray<T>();
+        hexes._tupleGenerator = header.generator;
+        if (header.layout == DENSE) {
+            if (!(header.generator instanceof Tuple.IndexedGenerator)) { throw new IllegalArgumentException("Dense hexes need a generator"); }
+            Tuple.IndexedGenerator indexed = (Tuple.IndexedGenerator)header.generator;
+            int count = in.getInt();
+            if (count != indexed.size()) { throw new IllegalArgumentException("Hex count doesn't match the generator: " + count); }
+            Object[] values = new Object[count];
+            readValues(in, values, count, codec);
+            hexes._cubeMap = new LongKeyMap<HexData<T>>(count);
+            for (int i=0; i<count; i++) {
+                @SuppressWarnings("unchecked")
+                T value = (T)values[i];
+                hexes.put(new HexData<T>(value, indexed.tupleAt(i)));
+            }
+        } else {
+            Sparse sparse = readSparse(in, codec);
+            hexes._cubeMap = new LongKeyMap<HexData<T>>(sparse.count);
+            for (int i=0; i<sparse.count; i++) {
+                @SuppressWarnings("unchecked")
+                T value = (T)sparse.values[i];
+                hexes.put(new HexData<T>(value, sparse.tuple(i)));
+            }
+        }
+        return hexes;
+    }
+    public static <T> HexCornerArray<T> decodeCornerArray(ByteBuffer buffer, ElementCodec<T> codec) {
+        ByteBuffer in = input(buffer);
+        checkKind(readHeader(in, codec.size()), CORNERS);
+        Sparse sparse = readSparse(in, codec);
+        HexCornerArray<T> corners = new HexCornerArray<T>();
+        corners._cubeMap = new LongKeyMap<CornerData<T>>(sparse.count);
+        for (int i=0; i<sparse.count; i++) {
+            @SuppressWarnings("unchecked")
+            T value = (T)sparse.values[i];
+            corners.setAtIndex(value, sparse.tuple(i));
+        }
+        return corners;
+    }
+    public static <T> HexEdgeArray<T> decodeEdgeArray(ByteBuffer buffer, ElementCodec<T> codec) {
+        ByteBuffer in = input(buffer);
+        checkKind(readHeader(in, codec.size()), EDGES);
+        Sparse sparse = readSparse(in, codec);
+        HexEdgeArray<T> edges = new HexEdgeArray<T>();
+        edges._cubeMap = new LongKeyMap<EdgeData<T>>(sparse.count);
+        for (int i=0; i<sparse.count; i++) {
+            @SuppressWarnings("unchecked")
+            T value = (T)sparse.values[i];
+            edges.setAtIndex(value, sparse.tuple(i));
+        }
+        return edges;
+    }
+    public static IntHexArray decodeIntHexArray(ByteBuffer buffer) {
+        ByteBuffer in = input(buffer);
+        checkKind(readHeader(in, 4), INT_GRID);
+        IntHexArray grid = new IntHexArray(HexIndexer.read(in));
+        checkRemaining(in, grid._values.length*4L);
+        in.asIntBuffer().get(grid._values);
+        return grid;
+    }
+    public static FloatHexArray decodeFloatHexArray(ByteBuffer buffer) {
+        ByteBuffer in = input(buffer);
+        checkKind(readHeader(in, 4), FLOAT_GRID);
+        FloatHexArray grid = new FloatHexArray(HexIndexer.read(in));
+        checkRemaining(in, grid._values.length*4L);
+        in.asFloatBuffer().get(grid._values);
+        return grid;
+    }
+    public static LongHexArray decodeLongHexArray(ByteBuffer buffer) {
+        ByteBuffer in = input(buffer);
+        checkKind(readHeader(in, 8), LONG_GRID);
+        LongHexArray grid = new LongHexArray(HexIndexer.read(in));
+        checkRemaining(in, grid._values.length*8L);
+        in.asLongBuffer().get(grid._values);
+        return grid;
+    }
+
+    /*********
+     * FILES *
+     *********/
+    /** Writes an encoded grid (from its position to its limit) to the file, replacing what was there */
+    public static void save(ByteBuffer encoded, File file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(0);
+            FileChannel channel = raf.getChannel();
+            ByteBuffer data = encoded.duplicate();
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write hex grid file: " + file, e);
+        }
+    }
+    /** Maps the file into memory read-only, for decoding without copying it onto the heap first */
+    public static MappedByteBuffer map(File file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } catch (IOException e) {
+            throw new RuntimeException("Could not open hex grid file: " + file, e);
+        }
+    }
+
+    /**********
+     * HEADER *
+     **********/
+    private static final class Header {
+        byte kind, layout;
+        Tuple.Generator generator;
+    }
+
+    private static void writeHeader(Output out, byte kind, byte layout, Tuple.Generator generator, int elementSize) {
+        ByteBuffer buffer = out.ensure(36);
+        buffer.putInt(MAGIC).put((byte)VERSION).put(kind).put(layout);
+        if (generator instanceof Tuple.ArrayGenerator && converterId(((Tuple.ArrayGenerator)generator).converter()) >= 0) {
+            Tuple.ArrayGenerator array = (Tuple.ArrayGenerator)generator;
+            buffer.put(ARRAY_GENERATOR).putInt(array.width()).putInt(array.height()).putInt(array.even())
+                  .putInt(converterId(array.converter()));
+        } else if (generator instanceof Tuple.RadialGenerator) {
+            Tuple.RadialGenerator radial = (Tuple.RadialGenerator)generator;
+            buffer.put(RADIAL_GENERATOR).putInt(radial.radius()).putInt(radial.centerx()).putInt(radial.centery())
+                  .putInt(radial.centerz());
+        } else if (generator instanceof Tuple.TriangleGenerator) {
+            Tuple.TriangleGenerator triangle = (Tuple.TriangleGenerator)generator;
+            buffer.put(TRIANGLE_GENERATOR).putInt(triangle.layers()).putInt(triangle.invert()).putInt(triangle.centerx())
+                  .putInt(triangle.centery()).putInt(triangle.centerz());
+        } else {
+            buffer.put(NO_GENERATOR);
+        }
+        buffer.putInt(elementSize);
+    }
+    private static Header readHeader(ByteBuffer in, int elementSize) {
+        checkRemaining(in, 8);
+        if (in.getInt() != MAGIC) { throw new IllegalArgumentException("Not an encoded hex grid"); }
+        int version = in.get();
+        if (version != VERSION) { throw new IllegalArgumentException("Unsupported hex grid format version: " + version); }
+        Header header = new Header();
+        header.kind = in.get();
+        header.layout = in.get();
+        byte generator = in.get();
+        switch (generator) {
+            case NO_GENERATOR:
+                break;
+            case ARRAY_GENERATOR:
+                header.generator = Tuple.createArrayGenerator(in.getInt(), in.getInt(), in.getInt(), converter(in.getInt()));
+                break;
+            case RADIAL_GENERATOR:
+                header.generator = Tuple.createRadialHexGenerator(in.getInt(), in.getInt(), in.getInt(), in.getInt());
+                break;
+            case TRIANGLE_GENERATOR:
+                header.generator = Tuple.createTriangleHexGenerator(in.getInt(), in.getInt(), in.getInt(), in.getInt(), in.getInt());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown hex generator type: " + generator);
+        }
+        int size = in.getInt();
+        if (size != elementSize) {
+            throw new IllegalArgumentException("Values were encoded with " + size + " bytes each, the codec uses " + elementSize);
+        }
+        return header;
+    }
+    private static void checkKind(Header header, byte kind) {
+        if (header.kind != kind) { throw new IllegalArgumentException("Encoded grid is of kind " + header.kind + ", expected " + kind); }
+    }
+
+    private static int converterId(HexData.CoordinateConverter converter) {
+        if (converter == HexData.FLAT_TOP_COORD)  return 0;
+        if (converter == HexData.POINT_TOP_COORD) return 1;
+        return -1;
+    }
+    private static HexData.CoordinateConverter converter(int id) {
+        switch (id) {
+            case 0: return HexData.FLAT_TOP_COORD;
+            case 1: return HexData.POINT_TOP_COORD;
+            default: throw new IllegalArgumentException("Unknown coordinate converter: " + id);
+        }
+    }
+
+    /*****************
+     * DENSE PAYLOAD *
+     *****************/
+    /** Whether every hex of the array is one of its generator's and the other way round, so the coordinates needn't be written */
+    private static boolean isDense(HexArray<?> hexes, Tuple.Generator generator) {
+        if (!(generator instanceof Tuple.ArrayGenerator || generator instanceof Tuple.RadialGenerator
+                || generator instanceof Tuple.TriangleGenerator)) {
+            return false;
+        }
+        if (generator instanceof Tuple.ArrayGenerator && converterId(((Tuple.ArrayGenerator)generator).converter()) < 0) {
+            return false;
+        }
+        Tuple.IndexedGenerator indexed = (Tuple.IndexedGenerator)generator;
+        if (indexed.size() != hexes.size()) {
+            return false;
+        }
+        for (int i=0; i<indexed.size(); i++) {
+            if (hexes.index(indexed.tupleAt(i)) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+    private static void writeIndexer(Output out, HexIndexer indexer) {
+        indexer.write(out.ensure(indexer.encodedSize()));
+    }
+
+    /** Writes the bitmap of non-null values, then every value (nulls as zeros) */
+    private static <T> void writeValues(Output out, Object[] values, int count, ElementCodec<T> codec) {
+        int size = codec.size();
+        int words = (count + 63) >>> 6;
+        ByteBuffer buffer = out.ensure(words*8L + (long)count*size);
+        for (int w=0; w<words; w++) {
+            long bits = 0;
+            for (int b=0; b<64 && w*64+b < count; b++) {
+                if (values[w*64 + b] != null) bits |= 1L << b;
+            }
+            buffer.putLong(bits);
+        }
+        for (int i=0; i<count; i++) {
+            int start = buffer.position();
+            if (values[i] != null) {
+                @SuppressWarnings("unchecked")
+                T value = (T)values[i];
+                codec.write(value, buffer);
+                if (buffer.position() - start != size) {
+                    throw new IllegalStateException("ElementCodec wrote " + (buffer.position() - start) + " bytes, not " + size);
+                }
+            } else {
+                buffer.position(start + size);
+            }
+        }
+    }
+    private static <T> void readValues(ByteBuffer in, Object[] values, int count, ElementCodec<T> codec) {
+        int size = codec.size();
+        int words = (count + 63) >>> 6;
+        checkRemaining(in, words*8L + (long)count*size);
+        int bitmap = in.position(), base = bitmap + words*8;
+        for (int w=0; w<words; w++) {
+            long bits = in.getLong(bitmap + w*8);
+            while (bits != 0) {
+                int i = w*64 + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                in.position(base + i*size);
+                values[i] = codec.read(in);
+            }
+        }
+        in.position(base + count*size);
+    }
+
+    /******************
+     * SPARSE PAYLOAD *
+     ******************/
+    /** Coordinates and values read from a sparse payload */
+    private static final class Sparse {
+        int dimension, count;
+        long[] keys;
+        Object[] values;
+
+        Tuple tuple(int i) {
+            return Tuple.unpack(packedKey(keys[i], dimension));
+        }
+    }
+
+    /** Writes the coordinates as runs and then the values. Coordinates are turned into sort keys ordered by z, then x+y, then x (or
+     *  by y, then x, for 2-tuples), so the hexes along a row have consecutive keys and each row becomes one run */
+    private static <E, T> void writeSparse(Output out, LongKeyMap<E> map, Function<E, T> data, ElementCodec<T> codec) {
+        int count = map.size();
+        long[] keys = new long[count];
+        int dimension = 0, n = 0;
+        for (int i=0; i<map.capacity(); i++) {
+            if (map.valueAt(i) == null) {
+                continue;
+            }
+            long packed = map.keyAt(i);
+            int dim = Tuple.unpackLength(packed);
+            if (dimension != 0 && dim != dimension) {
+                throw new IllegalArgumentException("Can't encode a grid mixing 2-tuple and 3-tuple coordinates");
+            }
+            dimension = dim;
+            keys[n++] = sortKey(packed);
+        }
+        if (dimension == 0) {
+            dimension = 3;
+        }
+        Arrays.sort(keys);
+
+        ByteBuffer buffer = out.ensure(9);
+        buffer.put((byte)dimension).putInt(count);
+        int runsAt = buffer.position();
+        buffer.putInt(0);
+        int runs = 0;
+        long previous = 0;
+        for (int i=0; i<count; ) {
+            int j = i+1;
+            while (j < count && keys[j] == keys[j-1] + 1) j++;
+            // The first run's start is stored as is; later ones as the gap from the end of the run before
+            buffer = out.ensure(15);
+            putVarLong(buffer, (runs == 0) ? keys[i] : keys[i] - previous);
+            putVarLong(buffer, j - i);
+            previous = keys[j-1];
+            runs++;
+            i = j;
+        }
+        out._buffer.putInt(runsAt, runs);
+
+        Object[] values = new Object[count];
+        for (int i=0; i<count; i++) {
+            values[i] = data.apply(map.get(packedKey(keys[i], dimension)));
+        }
+        writeValues(out, values, count, codec);
+    }
+    private static <T> Sparse readSparse(ByteBuffer in, ElementCodec<T> codec) {
+        checkRemaining(in, 9);
+        Sparse sparse = new Sparse();
+        sparse.dimension = in.get();
+        sparse.count = in.getInt();
+        int runs = in.getInt();
+        if ((sparse.dimension != 2 && sparse.dimension != 3) || sparse.count < 0 || runs < 0 || runs > sparse.count) {
+            throw new IllegalArgumentException("Invalid sparse hex payload");
+        }
+        sparse.keys = new long[sparse.count];
+        int n = 0;
+        long previous = 0;
+        for (int r=0; r<runs; r++) {
+            long start = (r == 0) ? getVarLong(in) : previous + getVarLong(in);
+            long length = getVarLong(in);
+            if (length < 1 || length > sparse.count - n) { throw new IllegalArgumentException("Invalid sparse hex payload"); }
+            for (int k=0; k<length; k++) {
+                sparse.keys[n++] = start + k;
+            }
+            previous = start + length - 1;
+        }
+        if (n != sparse.count) { throw new IllegalArgumentException("Invalid sparse hex payload"); }
+        sparse.values = new Object[sparse.count];
+        readValues(in, sparse.values, sparse.count, codec);
+        return sparse;
+    }
+
+    private static long sortKey(long packed) {
+        int x = Tuple.unpackX(packed), y = Tuple.unpackY(packed);
+        if (Tuple.unpackLength(packed) == 2) {
+            return ((long)(y + (1 << 20)) << 21) | (x + (1 << 20));
+        }
+        int z = Tuple.unpackZ(packed);
+        long key = ((long)(z + (1 << 20)) << 43) | ((long)(x + y + (1 << 21)) << 21) | (x + (1 << 20));
+        // Flip the top bit so signed order matches the order of z
+        return key ^ Long.MIN_VALUE;
+    }
+    private static long packedKey(long sortKey, int dimension) {
+        if (dimension == 2) {
+            return Tuple.pack((int)(sortKey & 0x1FFFFF) - (1 << 20), (int)(sortKey >>> 21) - (1 << 20));
+        }
+        long key = sortKey ^ Long.MIN_VALUE;
+        int x = (int)(key & 0x1FFFFF) - (1 << 20);
+        int sum = (int)((key >>> 21) & 0x3FFFFF) - (1 << 21);
+        return Tuple.pack(x, sum - x, (int)(key >>> 43) - (1 << 20));
+    }
+
+    /** Writes an unsigned variable-length integer, 7 bits per byte */
+    private static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte)value);
+    }
+    private static long getVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift=0; shift<64; shift+=7) {
+            byte b = in.get();
+            value |= (long)(b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Invalid variable-length integer");
+    }
+
+    /***********
+     * BUFFERS *
+     ***********/
+    private static ByteBuffer input(ByteBuffer buffer) {
+        return buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+    private static void checkRemaining(ByteBuffer in, long bytes) {
+        if (in.remaining() < bytes) { throw new IllegalArgumentException("Encoded hex grid is truncated"); }
+    }
+
+    /** Growing little-endian buffer */
+    private static final class Output {
+        ByteBuffer _buffer = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+
+        /** Makes room for the given number of bytes and returns the buffer to write them to */
+        ByteBuffer ensure(long bytes) {
+            if (_buffer.remaining() < bytes) {
+                long needed = _buffer.position() + bytes;
+                if (needed > Integer.MAX_VALUE - 8) { throw new IllegalArgumentException("Hex grid is too large to encode"); }
+                ByteBuffer grown = ByteBuffer.allocate((int)Math.max(needed, Math.min(Integer.MAX_VALUE - 8, _buffer.capacity()*2L)))
+                                             .order(ByteOrder.LITTLE_ENDIAN);
+                _buffer.flip();
+                grown.put(_buffer);
+                _buffer = grown;
+            }
+            return _buffer;
+        }
+        ByteBuffer finish() {
+            _buffer.flip();
+            return _buffer;
+        }
+    }
+}
@@ -1,8 +1,6 @@
 package simple.misc.hex;
 
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Map;
 
 public class HexCornerArray<T> implements Iterable<CornerData<T>> {
     /** Coordinate differences between different corners (although only 3 are valid per corner) */
@@ -31,26 +29,55 @@ public class HexCornerArray<T> implements Iterable<CornerData<T>> {
         return DIRECTIONS[((cornerCoord.entry(0) + cornerCoord.entry(1) + cornerCoord.entry(2)) + 1) / 2];
     }
     
+    /** Visits the three corners next to the given corner. Same as CornerData.adjecentCorners(), without allocating */
+    public static void forEachNeighbor(int cx, int cy, int cz, IntTriConsumer action) {
+        int[][] directions = DIRECTIONS[((cx + cy + cz)*-1 + 1) / 2];
+        for (int i=0; i<3; i++) {
+            action.accept(cx + directions[i][0], cy + directions[i][1], cz + directions[i][2]);
+        }
+    }
+    /** Visits the three edges meeting at the given corner. Same as CornerData.adjecentEdges(), without allocating */
+    public static void forEachEdge(int cx, int cy, int cz, IntTriConsumer action) {
+        int[][] directions = DIRECTIONS[((cx + cy + cz)*-1 + 1) / 2];
+        for (int i=0; i<3; i++) {
+            action.accept(2*cx + directions[i][0], 2*cy + directions[i][1], 2*cz + directions[i][2]);
+        }
+    }
+    /** Visits the three hexes meeting at the given corner. Same as CornerData.adjecentHexes(), without allocating */
+    public static void forEachHex(int cx, int cy, int cz, IntTriConsumer action) {
+        int[][] directions = DIRECTIONS[((cx + cy + cz) + 1) / 2];
+        for (int i=0; i<3; i++) {
+            action.accept(cx + directions[i][0], cy + directions[i][1], cz + directions[i][2]);
+        }
+    }
+    
     
     // Coordinates only made of cube coordinates
-    protected Map<Tuple, CornerData<T>> _cubeMap;
+    // Keyed by the packed coordinates (see Tuple.pack()). Coordinates that can't be packed aren't in the map, so looking them up
+    // returns null; only adding them throws
+    protected LongKeyMap<CornerData<T>> _cubeMap;
 
-    public CornerData<T> atIndex(int x, int y) { return atIndex(new Tuple(x, y)); }
-    public CornerData<T> atIndex(Tuple cube) { return _cubeMap.get(cube); }
+    public CornerData<T> atIndex(int x, int y) { return Tuple.isPackable(x, y) ? _cubeMap.get(Tuple.pack(x, y)) : null; }
+    public CornerData<T> atIndex(int x, int y, int z) { return Tuple.isPackable(x, y, z) ? _cubeMap.get(Tuple.pack(x, y, z)) : null; }
+    public CornerData<T> atIndex(Tuple cube) { return cube.isPackable() ? _cubeMap.get(cube.packed()) : null; }
+    public CornerData<T> atIndex(long packed) { return _cubeMap.get(packed); }
     
-    public void setAtIndex(T data, int x, int y) { setAtIndex(data, new Tuple(x, y)); }
-    public void setAtIndex(T data, Tuple cube) { _cubeMap.put(cube, new CornerData<T>(data, cube)); }
+    public void setAtIndex(T data, int x, int y) { setAtIndex(data, Tuple.of(x, y)); }
+    public void setAtIndex(T data, int x, int y, int z) { setAtIndex(data, Tuple.of(x, y, z)); }
+    public void setAtIndex(T data, Tuple cube) { _cubeMap.put(cube.packed(), new CornerData<T>(data, cube)); }
     
-    public void addAtIndex(int x, int y) { addAtIndex(new Tuple(x, y)); }
+    public void addAtIndex(int x, int y) { addAtIndex(Tuple.of(x, y)); }
+    public void addAtIndex(int x, int y, int z) { addAtIndex(Tuple.of(x, y, z)); }
     public void addAtIndex(Tuple cube) { 
-        if (!_cubeMap.containsKey(cube)) _cubeMap.put(cube, new CornerData<T>(cube)); 
+        long packed = cube.packed();
+        if (!_cubeMap.containsKey(packed)) _cubeMap.put(packed, new CornerData<T>(cube)); 
     }
     
     public HexCornerArray() {
-        _cubeMap = new HashMap<Tuple, CornerData<T>>();
+        _cubeMap = new LongKeyMap<CornerData<T>>();
     }
     public <E> HexCornerArray(HexArray<E> baseArray) {
-        _cubeMap = new HashMap<Tuple, CornerData<T>>();
+        _cubeMap = new LongKeyMap<CornerData<T>>();
         
         for (HexData<E> hex: baseArray) {
             for (Tuple cube: hex.adjecentCorners()) {
@@ -62,7 +89,7 @@ public class HexCornerArray<T> implements Iterable<CornerData<T>> {
     @Override
     public Iterator<CornerData<T>> iterator() {
         // TODO Auto-generated method stub
-        return _cubeMap.values().iterator();
+        return _cubeMap.iterator();
     }
 }
 
@@ -0,0 +1,8 @@
+package simple.misc.hex;
+
+/** Cost of entering a hex, used by HexPathfinder. A path's cost is the sum of the costs of every hex on it except the start. */
+@FunctionalInterface
+public interface HexCost {
+    /** Returns the cost of moving into the given hex. Negative, infinite or NaN costs mark the hex as impassable */
+    public float cost(int hx, int hy, int hz);
+}
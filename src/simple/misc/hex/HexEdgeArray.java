@@ -1,8 +1,6 @@
 package simple.misc.hex;
 
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Map;
 
 public class HexEdgeArray<T> implements Iterable<EdgeData<T>> {
     /** Coordinate differences between different edges. Alignment determines 4 direction possibilities */
@@ -27,25 +25,63 @@ public class HexEdgeArray<T> implements Iterable<EdgeData<T>> {
             }
         };
     
+    /** Returns which coordinate of the edge is even (0, 1 or 2), i.e. which row of DIRECTIONS applies to it */
+    public static int edgeAlignment(int ex, int ey, int ez) {
+        return ((Math.floorMod(ex,2)^1) + (Math.floorMod(ey,2)^1)*2 + (Math.floorMod(ez,2)^1)*3) - 1;
+    }
+    /** Visits the four edges touching the given edge. Same as EdgeData.adjecentEdges(), without allocating */
+    public static void forEachNeighbor(int ex, int ey, int ez, IntTriConsumer action) {
+        int[][] directions = DIRECTIONS[edgeAlignment(ex, ey, ez)];
+        for (int i=0; i<4; i++) {
+            action.accept(ex + directions[i][0], ey + directions[i][1], ez + directions[i][2]);
+        }
+    }
+    /** Visits the two corners at the ends of the given edge. Same as EdgeData.adjecentCorners(), without allocating */
+    public static void forEachCorner(int ex, int ey, int ez, IntTriConsumer action) {
+        int edgeDir = edgeAlignment(ex, ey, ez);
+        for (int i=0; i<2; i++) {
+            // The aligned coordinate stays, the other two move by -1 for the first corner and +1 for the second. Halving truncates
+            // towards zero, the same as Tuple.mult(0.5f)
+            int shift = i*2 - 1;
+            action.accept((ex + (edgeDir == 0 ? 0 : shift))/2, (ey + (edgeDir == 1 ? 0 : shift))/2, (ez + (edgeDir == 2 ? 0 : shift))/2);
+        }
+    }
+    /** Visits the two hexes on either side of the given edge. Same as EdgeData.adjecentHexes(), without allocating */
+    public static void forEachHex(int ex, int ey, int ez, IntTriConsumer action) {
+        int[][] directions = DIRECTIONS[edgeAlignment(ex, ey, ez)];
+        for (int i=0; i<2; i++) {
+            int[] a = directions[1+i*2];
+            int[] b = directions[(2+i*2)%4];
+            action.accept((ex + a[0] + b[0])/2, (ey + a[1] + b[1])/2, (ez + a[2] + b[2])/2);
+        }
+    }
+    
     // Coordinates only made of cube coordinates
-    protected Map<Tuple, EdgeData<T>> _cubeMap;
+    // Keyed by the packed coordinates (see Tuple.pack()). Coordinates that can't be packed aren't in the map, so looking them up
+    // returns null; only adding them throws
+    protected LongKeyMap<EdgeData<T>> _cubeMap;
 
-    public EdgeData<T> atIndex(int x, int y) { return atIndex(new Tuple(x, y)); }
-    public EdgeData<T> atIndex(Tuple cube) { return _cubeMap.get(cube); }
+    public EdgeData<T> atIndex(int x, int y) { return Tuple.isPackable(x, y) ? _cubeMap.get(Tuple.pack(x, y)) : null; }
+    public EdgeData<T> atIndex(int x, int y, int z) { return Tuple.isPackable(x, y, z) ? _cubeMap.get(Tuple.pack(x, y, z)) : null; }
+    public EdgeData<T> atIndex(Tuple cube) { return cube.isPackable() ? _cubeMap.get(cube.packed()) : null; }
+    public EdgeData<T> atIndex(long packed) { return _cubeMap.get(packed); }
     
-    public void setAtIndex(T data, int x, int y) { setAtIndex(data, new Tuple(x, y)); }
-    public void setAtIndex(T data, Tuple cube) { _cubeMap.put(cube, new EdgeData<T>(data, cube)); }
+    public void setAtIndex(T data, int x, int y) { setAtIndex(data, Tuple.of(x, y)); }
+    public void setAtIndex(T data, int x, int y, int z) { setAtIndex(data, Tuple.of(x, y, z)); }
+    public void setAtIndex(T data, Tuple cube) { _cubeMap.put(cube.packed(), new EdgeData<T>(data, cube)); }
     
-    public void addAtIndex(int x, int y) { addAtIndex(new Tuple(x, y)); }
+    public void addAtIndex(int x, int y) { addAtIndex(Tuple.of(x, y)); }
+    public void addAtIndex(int x, int y, int z) { addAtIndex(Tuple.of(x, y, z)); }
     public void addAtIndex(Tuple cube) { 
-        if (!_cubeMap.containsKey(cube)) _cubeMap.put(cube, new EdgeData<T>(cube)); 
+        long packed = cube.packed();
+        if (!_cubeMap.containsKey(packed)) _cubeMap.put(packed, new EdgeData<T>(cube)); 
     }
     
     public HexEdgeArray() {
-        _cubeMap = new HashMap<Tuple, EdgeData<T>>();
+        _cubeMap = new LongKeyMap<EdgeData<T>>();
     }
     public <E> HexEdgeArray(HexArray<E> baseArray) {
-        _cubeMap = new HashMap<Tuple, EdgeData<T>>();
+        _cubeMap = new LongKeyMap<EdgeData<T>>();
         
         for (HexData<E> hex: baseArray) {
             for (Tuple cube: hex.adjecentCorners()) {
@@ -57,6 +93,6 @@ public class HexEdgeArray<T> implements Iterable<EdgeData<T>> {
     @Override
     public Iterator<EdgeData<T>> iterator() {
         // TODO Auto-generated method stub
-        return _cubeMap.values().iterator();
+        return _cubeMap.iterator();
     }
 }
@@ -0,0 +1,178 @@
+package simple.misc.hex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/** Field of view on a bounded hex grid, by shadowcasting ring by ring.<P>
+ *
+ *  The hexes at distance r from the origin form a ring of 6r hexes, and each is given an equal arc of 1/(6r) of the full turn,
+ *  centered on its position along the ring. Rings are visited outwards while keeping a list of arcs in shadow. A hex is visible if
+ *  the center of its arc isn't in shadow; a blocking hex is visible if any part of its arc isn't, so the walls around a room are seen
+ *  whole. Every visible blocking hex adds its arc to the shadows. Lines along the six hex directions fall on exact arc centers at every
+ *  distance, so corridors along them are seen straight down. Hexes outside the grid block.<P>
+ *
+ *  Results are written into a BitSet indexed by HexIndexer.indexOf(), which can be reused between calls. compute() allocates nothing
+ *  once the shadow list of the calling thread has grown to fit, and computeAll() spreads many fields of view over the fork-join pool.<P>
+ *
+ *  The grid is given as a HexIndexer and what blocks sight as a predicate on cube coordinates, so any storage of hexes works. For a
+ *  HexArray there are overloads taking the array, where a hex blocks if the predicate accepts its data; they build the indexer with
+ *  HexIndexer.of(HexArray) unless given one, so keep an indexer to reuse when computing often.
+ * */
+public class HexFieldOfView {
+    /** Sorted, disjoint arcs in shadow, as [start, end] pairs in turns (0 to 1) */
+    private static final class Shadows {
+        double[] arcs = new double[32];
+        int count;
+
+        void clear() { count = 0; }
+        boolean full() { return count == 1 && arcs[0] <= 0 && arcs[1] >= 1; }
+
+        /** Whether the angle lies strictly inside some shadow. Hexes exactly on the edge of a shadow stay visible */
+        boolean covers(double angle) {
+            if (angle == 0) {
+                // A shadow across angle 0 is stored as one arc ending at 1 and one starting at 0
+                return count > 0 && arcs[0] <= 0 && arcs[1] > 0 && arcs[count*2-2] < 1 && arcs[count*2-1] >= 1;
+            }
+            for (int i=0; i<count; i++) {
+                if (angle <= arcs[i*2]) return false;
+                if (angle < arcs[i*2+1]) return true;
+            }
+            return false;
+        }
+        /** Whether the whole arc lies inside one shadow. Arcs may wrap past 1 */
+        boolean coversArc(double start, double end) {
+            if (start < 0) return coversArc(start+1, 1) && coversArc(0, end);
+            for (int i=0; i<count; i++) {
+                if (start < arcs[i*2]) return false;
+                if (end <= arcs[i*2+1]) return true;
+            }
+            return false;
+        }
+        /** Adds an arc, merging it with the shadows it overlaps. Arcs may wrap past 1 */
+        void add(double start, double end) {
+            if (start < 0) {
+                add(start+1, 1);
+                add(0, end);
+                return;
+            }
+            // Find the first shadow ending at or after the start, and the first starting after the end
+            int first = 0;
+            while (first < count && arcs[first*2+1] < start) first++;
+            int last = first;
+            while (last < count && arcs[last*2] <= end) last++;
+            if (first < last) {
+                start = Math.min(start, arcs[first*2]);
+                end = Math.max(end, arcs[(last-1)*2+1]);
+            }
+            int removed = last - first;
+            if (removed == 0) {
+                if ((count+1)*2 > arcs.length) {
+                    arcs = Arrays.copyOf(arcs, arcs.length*2);
+                }
+                System.arraycopy(arcs, first*2, arcs, first*2+2, (count-first)*2);
+                count++;
+            } else if (removed > 1) {
+                System.arraycopy(arcs, last*2, arcs, first*2+2, (count-last)*2);
+                count -= removed-1;
+            }
+            arcs[first*2] = start;
+            arcs[first*2+1] = end;
+        }
+    }
+
+    private static final ThreadLocal<Shadows> SHADOWS = new ThreadLocal<Shadows>() {
+        @Override
+        protected Shadows initialValue() { return new Shadows(); }
+    };
+
+    /** Computes which hexes of the grid can be seen from the origin, up to the given distance, and sets their bits in the result
+     *  (which is cleared first). The origin itself is always visible. Returns the result */
+    public static BitSet compute(HexIndexer indexer, int ox, int oy, int oz, int radius, IntTriPredicate blocks, BitSet result) {
+        result.clear();
+        int origin = indexer.indexOf(ox, oy, oz);
+        if (origin < 0) {
+            return result;
+        }
+        result.set(origin);
+        Shadows shadows = SHADOWS.get();
+        shadows.clear();
+
+        for (int r=1; r<=radius && !shadows.full(); r++) {
+            double arc = 1.0/(6*r);
+            // Walk the ring starting from the corner in direction 4, the same walk as Tuple.createRadialHexGenerator()
+            int x = ox - r, y = oy, z = oz + r;
+            int k = 0;
+            for (int dir=0; dir<6; dir++) {
+                int[] d = HexArray.DIRECTIONS[dir];
+                for (int rep=0; rep<r; rep++, k++) {
+                    double center = k*arc;
+                    double start = center - arc*0.5, end = center + arc*0.5;
+                    int index = indexer.indexOf(x, y, z);
+                    boolean blocking = index < 0 || blocks.test(x, y, z);
+                    if (blocking) {
+                        if (!shadows.coversArc(start, end)) {
+                            if (index >= 0) result.set(index);
+                            shadows.add(start, end);
+                        }
+                    } else if (!shadows.covers(center)) {
+                        result.set(index);
+                    }
+                    x += d[0];
+                    y += d[1];
+                    z += d[2];
+                }
+            }
+        }
+        return result;
+    }
+    public static BitSet compute(HexIndexer indexer, Tuple origin, int radius, IntTriPredicate blocks, BitSet result) {
+        return compute(indexer, origin.entry(0), origin.entry(1), origin.entry(2), radius, blocks, result);
+    }
+    /** Computes the field of view over the hexes of an array, where a hex blocks if blocks accepts its data and hexes missing from
+     *  the array block. The result is indexed by indexer, which must cover the array (see HexIndexer.of(HexArray)) */
+    public static <T> BitSet compute(HexArray<T> hexes, HexIndexer indexer, Tuple origin, int radius, Predicate<? super T> blocks,
+            BitSet result) {
+        return compute(indexer, origin, radius, blocking(hexes, blocks), result);
+    }
+    /** Returns the hexes of the array visible from the origin, where a hex blocks if blocks accepts its data. Builds an indexer for
+     *  the array each call */
+    public static <T> List<HexData<T>> compute(HexArray<T> hexes, Tuple origin, int radius, Predicate<? super T> blocks) {
+        HexIndexer indexer = HexIndexer.of(hexes);
+        BitSet visible = compute(hexes, indexer, origin, radius, blocks, new BitSet(indexer.size()));
+        List<HexData<T>> result = new ArrayList<HexData<T>>(visible.cardinality());
+        for (int i=visible.nextSetBit(0); i>=0; i=visible.nextSetBit(i+1)) {
+            // Hexes the indexer covers but the array is missing are seen as walls, but there's no HexData to return for them
+            HexData<T> hex = hexes.index(indexer.hx(i), indexer.hy(i), indexer.hz(i));
+            if (hex != null) {
+                result.add(hex);
+            }
+        }
+        return result;
+    }
+    private static <T> IntTriPredicate blocking(final HexArray<T> hexes, final Predicate<? super T> blocks) {
+        return (x, y, z) -> {
+            HexData<T> hex = hexes.index(x, y, z);
+            return hex == null || blocks.test(hex.data());
+        };
+    }
+
+    /** Computes the field of view from each origin (given as indices of the grid) in parallel on the common fork-join pool. Results
+     *  are written into results[i] for origins[i]; null entries are filled with new BitSets, the others are reused. The blocking
+     *  predicate is called from several threads at once, so it must be thread safe. Returns the results */
+    public static BitSet[] computeAll(final HexIndexer indexer, final int[] origins, final int radius, final IntTriPredicate blocks,
+            final BitSet[] results) {
+        if (results.length < origins.length) { throw new IllegalArgumentException("results must have room for every origin"); }
+        IntStream.range(0, origins.length).parallel().forEach(i -> {
+            if (results[i] == null) {
+                results[i] = new BitSet(indexer.size());
+            }
+            int o = origins[i];
+            compute(indexer, indexer.hx(o), indexer.hy(o), indexer.hz(o), radius, blocks, results[i]);
+        });
+        return results;
+    }
+}
@@ -0,0 +1,312 @@
+package simple.misc.hex;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+
+/** Maps the cube coordinates of a bounded hex grid to indices 0..size()-1 of a flat array, with no hashing or allocation.<P>
+ *
+ *  All hexes of a grid lie on one plane hx+hy+hz = sum, so a hex is known from hx and hz alone. The grid is stored as one row per
+ *  hz value, each row covering a continuous range of hx values. Finding an index is a range check and two array reads.<P>
+ *
+ *  Shapes with gaps inside a row (only possible through of()) still reserve indices for the gaps; contains() is false for those.
+ * */
+public final class HexIndexer {
+    /** Creates an indexer for the same hexes as Tuple.createRadialHexGenerator(radius, centerx, centery, centerz) */
+    public static HexIndexer radial(int radius, int centerx, int centery, int centerz) {
+        if (radius < 0) { throw new IllegalArgumentException("radius must not be negative"); }
+        int rows = 2*radius + 1;
+        int[] rowMinX = new int[rows];
+        int[] rowLength = new int[rows];
+        for (int dz=-radius; dz<=radius; dz++) {
+            int minX = Math.max(-radius, -radius-dz);
+            int maxX = Math.min(radius, radius-dz);
+            rowMinX[dz+radius] = centerx + minX;
+            rowLength[dz+radius] = maxX - minX + 1;
+        }
+        return new HexIndexer(centerx+centery+centerz, centerz-radius, rowMinX, rowLength, null);
+    }
+    public static HexIndexer radial(int radius) {
+        return radial(radius, 0, 0, 0);
+    }
+    /** Creates an indexer for the same hexes as Tuple.createArrayGenerator(width, height, even, coordConv) */
+    public static HexIndexer rectangular(int width, int height, int even, HexData.CoordinateConverter coordConv) {
+        return of(Tuple.createArrayGenerator(width, height, even, coordConv));
+    }
+    /** Creates an indexer for the same hexes as Tuple.createTriangleHexGenerator(layers, invert, centerx, centery, centerz) */
+    public static HexIndexer triangular(int layers, int invert, int centerx, int centery, int centerz) {
+        return of(Tuple.createTriangleHexGenerator(layers, invert, centerx, centery, centerz));
+    }
+    /** Creates an indexer for the hexes of a HexArray: a DenseHexArray's own indexer, those of its tuple generator if it has one 
+     *  producing cube coordinates, otherwise the hexes it holds now */
+    public static HexIndexer of(final HexArray<?> hexes) {
+        if (hexes instanceof DenseHexArray) {
+            return ((DenseHexArray<?>)hexes).indexer();
+        }
+        Tuple.Generator generator = hexes.tupleGenerator();
+        if (generator != null && generator.tupleDimension() == 3) {
+            return of(generator);
+        }
+        return of(new Tuple.Generator() {
+            @Override
+            public Iterator<Tuple> create() {
+                final Iterator<? extends HexData<?>> iterator = hexes._cubeMap.iterator();
+                return new Iterator<Tuple>() {
+                    @Override
+                    public boolean hasNext() { return iterator.hasNext(); }
+                    @Override
+                    public Tuple next() { return iterator.next().cubeIndex(); }
+                };
+            }
+            @Override
+            public int tupleDimension() { return 3; }
+        });
+    }
+    /** Creates an indexer for every hex generated by the given generator. The generator must produce cube coordinates (3-tuples)
+     *  that all lie on the same plane, which is the case for every generator in Tuple. */
+    public static HexIndexer of(Tuple.Generator generator) {
+        if (generator instanceof Tuple.RadialGenerator) {
+            Tuple.RadialGenerator radial = (Tuple.RadialGenerator)generator;
+            return radial(radial.radius(), radial.centerx(), radial.centery(), radial.centerz());
+        }
+        boolean first = true;
+        int sum = 0, minZ = 0, maxZ = 0;
+        for (Tuple t: generator) {
+            if (t.length() != 3) { throw new IllegalArgumentException("Generator must produce cube coordinates, got " + t); }
+            int tsum = t.entry(0) + t.entry(1) + t.entry(2);
+            if (first) {
+                sum = tsum;
+                minZ = maxZ = t.entry(2);
+                first = false;
+            } else {
+                if (tsum != sum) { throw new IllegalArgumentException("Generated coordinates don't lie on one plane: " + t); }
+                minZ = Math.min(minZ, t.entry(2));
+                maxZ = Math.max(maxZ, t.entry(2));
+            }
+        }
+        if (first) {
+            return new HexIndexer(0, 0, new int[0], new int[0], null);
+        }
+
+        int rows = maxZ - minZ + 1;
+        int[] rowMinX = new int[rows];
+        int[] rowMaxX = new int[rows];
+        Arrays.fill(rowMinX, Integer.MAX_VALUE);
+        Arrays.fill(rowMaxX, Integer.MIN_VALUE);
+        for (Tuple t: generator) {
+            int row = t.entry(2) - minZ;
+            rowMinX[row] = Math.min(rowMinX[row], t.entry(0));
+            rowMaxX[row] = Math.max(rowMaxX[row], t.entry(0));
+        }
+        int[] rowLength = new int[rows];
+        for (int row=0; row<rows; row++) {
+            if (rowMaxX[row] < rowMinX[row]) {
+                rowMinX[row] = 0; // empty row
+            } else {
+                rowLength[row] = rowMaxX[row] - rowMinX[row] + 1;
+            }
+        }
+
+        // Mark which indices are actually used, and only keep the marks if some aren't
+        HexIndexer full = new HexIndexer(sum, minZ, rowMinX, rowLength, null);
+        BitSet present = new BitSet(full.size());
+        for (Tuple t: generator) {
+            present.set(full.indexOf(t.entry(0), t.entry(1), t.entry(2)));
+        }
+        if (present.cardinality() == full.size()) {
+            return full;
+        }
+        return new HexIndexer(sum, minZ, rowMinX, rowLength, present);
+    }
+
+    private final int _sum, _minZ, _size, _count;
+    private final int[] _rowStart, _rowMinX, _rowLength;
+    /** Indices that belong to a hex, or null if they all do */
+    private final BitSet _present;
+    /** Index of each neighbor of each hex, built on first use */
+    private volatile int[] _neighbors;
+
+    private HexIndexer(int sum, int minZ, int[] rowMinX, int[] rowLength, BitSet present) {
+        _sum = sum;
+        _minZ = minZ;
+        _rowMinX = rowMinX;
+        _rowLength = rowLength;
+        _rowStart = new int[rowLength.length + 1];
+        for (int row=0; row<rowLength.length; row++) {
+            _rowStart[row+1] = _rowStart[row] + rowLength[row];
+        }
+        _size = _rowStart[rowLength.length];
+        _present = present;
+        _count = (present == null) ? _size : present.cardinality();
+    }
+
+    /** Returns the number of indices, i.e. the length of an array holding one value per hex */
+    public int size()   { return _size; }
+    /** Returns the number of hexes. Less than size() only if the shape has gaps */
+    public int count()  { return _count; }
+    /** Returns hx+hy+hz, which is the same for every hex in the grid */
+    public int planeSum() { return _sum; }
+
+    /** Returns the index of the given hex, or -1 if it isn't part of the grid */
+    public int indexOf(int hx, int hy, int hz) {
+        int row = hz - _minZ;
+        if (row < 0 || row >= _rowLength.length || hx+hy+hz != _sum) {
+            return -1;
+        }
+        int col = hx - _rowMinX[row];
+        if (col < 0 || col >= _rowLength[row]) {
+            return -1;
+        }
+        int index = _rowStart[row] + col;
+        if (_present != null && !_present.get(index)) {
+            return -1;
+        }
+        return index;
+    }
+    public int indexOf(Tuple cube) {
+        return indexOf(cube.entry(0), cube.entry(1), cube.entry(2));
+    }
+    /** Returns the index of the given hex, throwing if it isn't part of the grid */
+    public int checkedIndexOf(int hx, int hy, int hz) {
+        int i = indexOf(hx, hy, hz);
+        if (i < 0) {
+            throw new IllegalArgumentException("Hex is not part of the grid: (" + hx + ", " + hy + ", " + hz + ")");
+        }
+        return i;
+    }
+    public boolean contains(int hx, int hy, int hz) { return indexOf(hx, hy, hz) >= 0; }
+    public boolean contains(Tuple cube) { return indexOf(cube) >= 0; }
+    /** Returns whether the index belongs to a hex */
+    public boolean contains(int index) {
+        return index >= 0 && index < _size && (_present == null || _present.get(index));
+    }
+
+    /** Cube coordinates of the hex at the given index */
+    public int hx(int index) {
+        int row = rowOf(index);
+        return _rowMinX[row] + index - _rowStart[row];
+    }
+    public int hz(int index) {
+        return _minZ + rowOf(index);
+    }
+    public int hy(int index) {
+        int row = rowOf(index);
+        return _sum - (_rowMinX[row] + index - _rowStart[row]) - (_minZ + row);
+    }
+    public Tuple cubeAt(int index) {
+        int row = rowOf(index);
+        int hx = _rowMinX[row] + index - _rowStart[row];
+        int hz = _minZ + row;
+        return new Tuple(hx, _sum - hx - hz, hz);
+    }
+
+    /** Receives the index and cube coordinates of a hex, see forEach() */
+    @FunctionalInterface
+    public interface Visitor {
+        public void visit(int index, int hx, int hy, int hz);
+    }
+    /** Visits every hex with an index from from (inclusive) to to (exclusive), in index order. Walks the rows rather than searching
+     *  for the row of each index like hx(), hy() and hz() do, so it's the cheap way to go over a range of hexes by coordinates */
+    public void forEach(int from, int to, Visitor visitor) {
+        if (from < 0 || to > _size || from > to) {
+            throw new IndexOutOfBoundsException("Hex index range out of bounds: " + from + " to " + to);
+        }
+        if (from == to) {
+            return;
+        }
+        int i = from;
+        for (int row=rowOf(from); i<to; row++) {
+            int end = Math.min(_rowStart[row+1], to);
+            int hz = _minZ + row;
+            for (int hx=_rowMinX[row] + i - _rowStart[row]; i<end; i++, hx++) {
+                if (_present == null || _present.get(i)) {
+                    visitor.visit(i, hx, _sum - hx - hz, hz);
+                }
+            }
+        }
+    }
+
+    /** Returns the index of the neighbor of the hex at the given index in the given direction (see HexArray.DIRECTIONS), or -1 if
+     *  that neighbor isn't part of the grid */
+    public int neighbor(int index, int direction) {
+        return neighborTable()[index*6 + direction];
+    }
+    /** Returns a table of size()*6 entries, where entry index*6+direction is the same as neighbor(index, direction). Built the first
+     *  time it's asked for, after which walking a grid by index needs no coordinate math at all. Must not be modified */
+    public int[] neighborTable() {
+        int[] table = _neighbors;
+        if (table == null) {
+            table = new int[_size*6];
+            for (int i=0; i<_size; i++) {
+                int hx = hx(i), hz = hz(i), hy = _sum - hx - hz;
+                boolean present = contains(i);
+                for (int dir=0; dir<6; dir++) {
+                    int[] d = HexArray.DIRECTIONS[dir];
+                    table[i*6 + dir] = present ? indexOf(hx + d[0], hy + d[1], hz + d[2]) : -1;
+                }
+            }
+            // Building it twice from two threads is harmless, both tables are the same
+            _neighbors = table;
+        }
+        return table;
+    }
+
+    /** Writes the shape of the grid at the buffer's position, for HexCodec: plane sum, first hz, row count, the first hx and length
+     *  of every row, then the bitmap of used indices (as a count of longs, 0 if every index is used) */
+    void write(ByteBuffer buffer) {
+        buffer.putInt(_sum).putInt(_minZ).putInt(_rowLength.length);
+        for (int row=0; row<_rowLength.length; row++) {
+            buffer.putInt(_rowMinX[row]).putInt(_rowLength[row]);
+        }
+        long[] present = (_present == null) ? new long[0] : _present.toLongArray();
+        buffer.putInt(present.length);
+        for (long bits: present) {
+            buffer.putLong(bits);
+        }
+    }
+    /** Returns the number of bytes write() takes */
+    int encodedSize() {
+        int presentLongs = (_present == null) ? 0 : (_present.length() + 63)/64;
+        return 16 + _rowLength.length*8 + presentLongs*8;
+    }
+    /** Reads a shape written by write() */
+    static HexIndexer read(ByteBuffer buffer) {
+        int sum = buffer.getInt(), minZ = buffer.getInt(), rows = buffer.getInt();
+        if (rows < 0 || rows > buffer.remaining()/8) { throw new IllegalArgumentException("Invalid hex grid shape: " + rows + " rows"); }
+        int[] rowMinX = new int[rows];
+        int[] rowLength = new int[rows];
+        for (int row=0; row<rows; row++) {
+            rowMinX[row] = buffer.getInt();
+            rowLength[row] = buffer.getInt();
+            if (rowLength[row] < 0) { throw new IllegalArgumentException("Invalid hex grid shape: row of length " + rowLength[row]); }
+        }
+        int presentLongs = buffer.getInt();
+        if (presentLongs < 0 || presentLongs > buffer.remaining()/8) { throw new IllegalArgumentException("Invalid hex grid shape"); }
+        BitSet present = null;
+        if (presentLongs > 0) {
+            long[] bits = new long[presentLongs];
+            buffer.asLongBuffer().get(bits);
+            buffer.position(buffer.position() + presentLongs*8);
+            present = BitSet.valueOf(bits);
+        }
+        return new HexIndexer(sum, minZ, rowMinX, rowLength, present);
+    }
+
+    /** Row containing the index, found by binary search over the row starts */
+    private int rowOf(int index) {
+        if (index < 0 || index >= _size) {
+            throw new IndexOutOfBoundsException("Hex index out of bounds: " + index);
+        }
+        int low = 0, high = _rowLength.length-1;
+        while (low < high) {
+            int mid = (low+high+1) >>> 1;
+            if (_rowStart[mid] <= index) {
+                low = mid;
+            } else {
+                high = mid-1;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,240 @@
+package simple.misc.hex;
+
+/** Finds cheapest paths between hexes of a bounded grid, with A* or bidirectional Dijkstra.<P>
+ *
+ *  Moves go between neighboring hexes (HexArray.DIRECTIONS), and entering a hex costs whatever the HexCost says; hexes outside the
+ *  grid or with an impassable cost are never entered. A* is guided by the cube distance to the goal times the minimum cost, which
+ *  gives optimal paths as long as no hex costs less than that minimum. Bidirectional Dijkstra needs no such bound.<P>
+ *
+ *  Searches write into a HexSearchContext instead of allocating, and the neighbors of a hex come from the grid's neighbor table. One
+ *  pathfinder can be shared by many threads as long as each uses its own context and the cost function is thread safe.<P>
+ *
+ *  With pruning on (the default), a hex reached by moving in some direction only looks at its three neighbors ahead of it. The other
+ *  three are always neighbors of the hex it came from (or the hex itself), so they were already reached at least as cheaply. This is
+ *  the natural-neighbor part of jump point search for hex grids; it doesn't change the paths found, only skips work.
+ * */
+public class HexPathfinder {
+    /** Default cost of the cheapest hex, used to scale the A* heuristic */
+    protected static float _DEFAULT_MINIMUM_COST = 1f;
+
+    protected final HexIndexer _indexer;
+    protected final int[] _neighbors;
+    protected HexCost _cost;
+    /** Grid the costs are read from directly, when created with one */
+    protected FloatHexArray _costArray;
+    protected float _minimumCost;
+    protected boolean _pruning;
+
+    public HexIndexer indexer()      { return _indexer; }
+    public HexCost    costFunction() { return _cost; }
+    public float      minimumCost()  { return _minimumCost; }
+    public boolean    doesPrune()    { return _pruning; }
+
+    public void setCostFunction(HexCost cost) {
+        if (cost == null) { throw new IllegalArgumentException("cost must not be null"); }
+        _cost = cost;
+        _costArray = null;
+    }
+    /** Sets the smallest cost any hex can have, which scales the A* heuristic. Larger values make A* faster but no longer optimal */
+    public void setMinimumCost(float minimumCost) {
+        if (!(minimumCost >= 0)) { throw new IllegalArgumentException("minimumCost must not be negative"); }
+        _minimumCost = minimumCost;
+    }
+    public void setPruning(boolean pruning) { _pruning = pruning; }
+
+    /****************
+     * CONSTRUCTORS *
+     ****************/
+    public HexPathfinder(HexIndexer indexer, HexCost cost) {
+        if (indexer == null) { throw new IllegalArgumentException("indexer must not be null"); }
+        _indexer = indexer;
+        _neighbors = indexer.neighborTable();
+        setCostFunction(cost);
+        _minimumCost = _DEFAULT_MINIMUM_COST;
+        _pruning = true;
+    }
+    /** Creates a pathfinder where every hex of the grid costs 1 to enter */
+    public HexPathfinder(HexIndexer indexer) {
+        this(indexer, new HexCost() {
+            @Override
+            public float cost(int hx, int hy, int hz) { return 1f; }
+        });
+    }
+    /** Creates a pathfinder taking the cost of each hex from the given grid */
+    public HexPathfinder(final FloatHexArray costs) {
+        this(costs.indexer(), new HexCost() {
+            @Override
+            public float cost(int hx, int hy, int hz) { return costs.get(hx, hy, hz); }
+        });
+        _costArray = costs;
+    }
+
+    /** Creates a context to search with. Each thread searching at the same time needs its own */
+    public HexSearchContext createContext() {
+        return new HexSearchContext(_indexer);
+    }
+
+    /** Searches for the cheapest path from the start to the goal with A*. Returns whether one was found; the path is in the context */
+    public boolean findPath(int sx, int sy, int sz, int gx, int gy, int gz, HexSearchContext context) {
+        checkContext(context);
+        context.begin();
+        int start = _indexer.indexOf(sx, sy, sz);
+        int goal = _indexer.indexOf(gx, gy, gz);
+        if (start < 0 || goal < 0 || (start != goal && !passable(goal, context))) {
+            return false;
+        }
+
+        HexSearchContext.Side open = context._forward;
+        int generation = context._generation;
+        open.push(start, 0, _minimumCost*HexArrayFunctions.distance(sx, sy, sz, gx, gy, gz), -1, -1, generation);
+
+        while (open.heapSize > 0) {
+            int node = open.pop();
+            context.expandedOne();
+            if (node == goal) {
+                context.setPath(goal, open.g[goal]);
+                return true;
+            }
+            int nx = _indexer.hx(node), nz = _indexer.hz(node), ny = _indexer.planeSum() - nx - nz;
+            float g = open.g[node];
+            int from = open.dir[node];
+            for (int dir=0; dir<6; dir++) {
+                if (_pruning && from >= 0 && !ahead(from, dir)) {
+                    continue;
+                }
+                int next = _neighbors[node*6 + dir];
+                if (next < 0 || open.closed(next, generation)) {
+                    continue;
+                }
+                float c = cost(next, context);
+                if (c < 0) {
+                    continue;
+                }
+                float ng = g + c;
+                if (!open.seen(next, generation) || ng < open.g[next]) {
+                    int[] d = HexArray.DIRECTIONS[dir];
+                    float h = _minimumCost*HexArrayFunctions.distance(nx + d[0], ny + d[1], nz + d[2], gx, gy, gz);
+                    open.push(next, ng, ng + h, node, dir, generation);
+                }
+            }
+        }
+        return false;
+    }
+    public boolean findPath(Tuple start, Tuple goal, HexSearchContext context) {
+        return findPath(start.entry(0), start.entry(1), start.entry(2), goal.entry(0), goal.entry(1), goal.entry(2), context);
+    }
+
+    /** Searches for the cheapest path from the start to the goal with Dijkstra's algorithm run from both ends at once. Returns whether
+     *  one was found; the path is in the context. Useful when costs can be lower than the minimum cost, or there's no good
+     *  heuristic (e.g. lots of walls), since it needs no heuristic and explores about half as much as plain Dijkstra */
+    public boolean findPathBidirectional(int sx, int sy, int sz, int gx, int gy, int gz, HexSearchContext context) {
+        checkContext(context);
+        context.begin();
+        int start = _indexer.indexOf(sx, sy, sz);
+        int goal = _indexer.indexOf(gx, gy, gz);
+        if (start < 0 || goal < 0) {
+            return false;
+        }
+        if (start == goal) {
+            context.setPath(start, 0);
+            return true;
+        }
+        float goalCost = cost(goal, context);
+        if (goalCost < 0) {
+            return false;
+        }
+
+        HexSearchContext.Side forward = context._forward, backward = context._backward;
+        int generation = context._generation;
+        forward.push(start, 0, 0, -1, -1, generation);
+        // The backward search labels each hex with the cost from it to the goal, which doesn't include its own cost
+        backward.push(goal, 0, 0, -1, -1, generation);
+
+        float best = Float.POSITIVE_INFINITY;
+        int meet = -1;
+        while (forward.heapSize > 0 && backward.heapSize > 0) {
+            if (forward.topKey() + backward.topKey() >= best) {
+                break;
+            }
+            boolean isForward = forward.heapSize <= backward.heapSize;
+            HexSearchContext.Side side = isForward ? forward : backward;
+            HexSearchContext.Side other = isForward ? backward : forward;
+
+            int node = side.pop();
+            context.expandedOne();
+            // Moving forward costs the hex moved into; moving backward costs the hex moved out of
+            float g = side.g[node];
+            float step = 0;
+            if (!isForward) {
+                step = cost(node, context);
+            }
+            int from = side.dir[node];
+            for (int dir=0; dir<6; dir++) {
+                if (_pruning && from >= 0 && !ahead(from, dir)) {
+                    continue;
+                }
+                int next = _neighbors[node*6 + dir];
+                if (next < 0 || side.closed(next, generation)) {
+                    continue;
+                }
+                float c = cost(next, context);
+                if (c < 0) {
+                    continue;
+                }
+                float ng = g + (isForward ? c : step);
+                if (!side.seen(next, generation) || ng < side.g[next]) {
+                    side.push(next, ng, ng, node, dir, generation);
+                    if (other.seen(next, generation)) {
+                        float total = ng + other.g[next];
+                        if (total < best) {
+                            best = total;
+                            meet = next;
+                        }
+                    }
+                }
+            }
+        }
+        if (meet < 0) {
+            return false;
+        }
+        context.setMeetingPath(meet, best);
+        return true;
+    }
+    public boolean findPathBidirectional(Tuple start, Tuple goal, HexSearchContext context) {
+        return findPathBidirectional(start.entry(0), start.entry(1), start.entry(2), goal.entry(0), goal.entry(1), goal.entry(2), context);
+    }
+
+    /** Whether moving in direction dir is one of the three moves ahead of a hex reached by moving in direction from */
+    private static boolean ahead(int from, int dir) {
+        int turn = dir - from;
+        if (turn < 0) turn += 6;
+        return turn <= 1 || turn == 5;
+    }
+    private boolean passable(int node, HexSearchContext context) {
+        return cost(node, context) >= 0;
+    }
+    /** Cost of entering the hex, asked from the cost function once per search. Impassable hexes are returned as -1 */
+    private float cost(int node, HexSearchContext context) {
+        if (context._costStamp[node] == context._generation) {
+            return context._cost[node];
+        }
+        float c;
+        if (_costArray != null) {
+            c = _costArray.getAt(node);
+        } else {
+            int hx = _indexer.hx(node), hz = _indexer.hz(node);
+            c = _cost.cost(hx, _indexer.planeSum() - hx - hz, hz);
+        }
+        if (!(c >= 0) || Float.isInfinite(c)) {
+            c = -1;
+        }
+        context._cost[node] = c;
+        context._costStamp[node] = context._generation;
+        return c;
+    }
+    private void checkContext(HexSearchContext context) {
+        if (context._indexer != _indexer) {
+            throw new IllegalArgumentException("Search context was created for a different grid");
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package simple.misc.hex;
+
+import java.util.Arrays;
+
+/** Working memory of a HexPathfinder search, and the result of the last search made with it.<P>
+ *
+ *  All arrays are sized for the pathfinder's grid when the context is created and reused by every search, so searching allocates
+ *  nothing. Instead of clearing the arrays between searches, every entry is stamped with the number of the search that wrote it and
+ *  entries with an old stamp are treated as empty.<P>
+ *
+ *  A context must only be used by one thread at a time; create one per thread with HexPathfinder.createContext().
+ * */
+public class HexSearchContext {
+    /** Labels and open set of one search direction */
+    static final class Side {
+        final int[] stamp, parent, heapPos, heap;
+        final float[] g, heapKey;
+        final byte[] dir;
+        int heapSize;
+
+        Side(int size) {
+            stamp = new int[size];
+            parent = new int[size];
+            heapPos = new int[size];
+            heap = new int[size];
+            g = new float[size];
+            heapKey = new float[size];
+            dir = new byte[size];
+        }
+
+        boolean seen(int node, int generation) { return stamp[node] == generation; }
+        /** A node is closed once it's been taken from the heap */
+        boolean closed(int node, int generation) { return stamp[node] == generation && heapPos[node] < 0; }
+        float topKey() { return heapKey[0]; }
+
+        /** Sets the label of a node and adds it to the heap, or moves it up if it's already there with a larger key */
+        void push(int node, float gValue, float key, int from, int direction, int generation) {
+            g[node] = gValue;
+            parent[node] = from;
+            dir[node] = (byte)direction;
+            int pos;
+            if (stamp[node] == generation && heapPos[node] >= 0) {
+                pos = heapPos[node];
+            } else {
+                stamp[node] = generation;
+                pos = heapSize++;
+            }
+            // Sift up
+            while (pos > 0) {
+                int up = (pos-1) >> 1;
+                if (heapKey[up] <= key) {
+                    break;
+                }
+                heap[pos] = heap[up];
+                heapKey[pos] = heapKey[up];
+                heapPos[heap[pos]] = pos;
+                pos = up;
+            }
+            heap[pos] = node;
+            heapKey[pos] = key;
+            heapPos[node] = pos;
+        }
+        /** Removes and returns the node with the smallest key, marking it closed */
+        int pop() {
+            int top = heap[0];
+            heapPos[top] = -1;
+            heapSize--;
+            if (heapSize > 0) {
+                int node = heap[heapSize];
+                float key = heapKey[heapSize];
+                // Sift down
+                int pos = 0;
+                while (true) {
+                    int child = pos*2 + 1;
+                    if (child >= heapSize) {
+                        break;
+                    }
+                    if (child+1 < heapSize && heapKey[child+1] < heapKey[child]) {
+                        child++;
+                    }
+                    if (heapKey[child] >= key) {
+                        break;
+                    }
+                    heap[pos] = heap[child];
+                    heapKey[pos] = heapKey[child];
+                    heapPos[heap[pos]] = pos;
+                    pos = child;
+                }
+                heap[pos] = node;
+                heapKey[pos] = key;
+                heapPos[node] = pos;
+            }
+            return top;
+        }
+    }
+
+    final HexIndexer _indexer;
+    final Side _forward, _backward;
+    /** Costs asked for in this search, so the callback runs at most once per hex */
+    final float[] _cost;
+    final int[] _costStamp;
+    int _generation;
+
+    private final int[] _path;
+    private int _pathLength;
+    private float _pathCost;
+    private int _expanded;
+
+    HexSearchContext(HexIndexer indexer) {
+        int size = indexer.size();
+        _indexer = indexer;
+        _forward = new Side(size);
+        _backward = new Side(size);
+        _cost = new float[size];
+        _costStamp = new int[size];
+        _path = new int[size];
+        _generation = 0;
+        _pathLength = 0;
+    }
+
+    /** Returns whether the last search found a path */
+    public boolean found()       { return _pathLength > 0; }
+    /** Returns the cost of the path found, or infinity if there is none */
+    public float   cost()        { return found() ? _pathCost : Float.POSITIVE_INFINITY; }
+    /** Returns the number of hexes on the path found, including the start and the goal. 0 if there is none */
+    public int     pathLength()  { return _pathLength; }
+    /** Returns the number of hexes taken from the open set during the last search */
+    public int     expanded()    { return _expanded; }
+    /** Returns the grid index of the i-th hex on the path, starting with the start */
+    public int     pathIndex(int i) { return _path[checkPath(i)]; }
+    public int     pathX(int i)  { return _indexer.hx(pathIndex(i)); }
+    public int     pathY(int i)  { return _indexer.hy(pathIndex(i)); }
+    public int     pathZ(int i)  { return _indexer.hz(pathIndex(i)); }
+    /** Returns the path found as new Tuples. Allocates; use pathIndex() or pathX/Y/Z() to avoid that */
+    public Tuple[] pathTuples() {
+        Tuple[] tuples = new Tuple[_pathLength];
+        for (int i=0; i<_pathLength; i++) {
+            tuples[i] = _indexer.cubeAt(_path[i]);
+        }
+        return tuples;
+    }
+
+    /** Starts a new search, invalidating everything from the previous one */
+    void begin() {
+        _generation++;
+        if (_generation == 0) {
+            // After 2^32 searches the stamps would repeat, so wipe them once
+            Arrays.fill(_forward.stamp, 0);
+            Arrays.fill(_backward.stamp, 0);
+            Arrays.fill(_costStamp, 0);
+            _generation = 1;
+        }
+        _forward.heapSize = 0;
+        _backward.heapSize = 0;
+        _pathLength = 0;
+        _pathCost = Float.POSITIVE_INFINITY;
+        _expanded = 0;
+    }
+    void expandedOne() { _expanded++; }
+
+    /** Records the path ending at the given node by following the forward parents back to the start */
+    void setPath(int end, float cost) {
+        int length = 0;
+        for (int n=end; n>=0; n=_forward.parent[n]) {
+            _path[length++] = n;
+        }
+        for (int i=0, j=length-1; i<j; i++, j--) {
+            int t = _path[i]; _path[i] = _path[j]; _path[j] = t;
+        }
+        _pathLength = length;
+        _pathCost = cost;
+    }
+    /** Records the path through the given node where the forward and backward searches met */
+    void setMeetingPath(int meet, float cost) {
+        setPath(meet, cost);
+        for (int n=_backward.parent[meet]; n>=0; n=_backward.parent[n]) {
+            _path[_pathLength++] = n;
+        }
+    }
+
+    private int checkPath(int i) {
+        if (i < 0 || i >= _pathLength) {
+            throw new IndexOutOfBoundsException("Path index out of bounds: " + i);
+        }
+        return i;
+    }
+}
@@ -0,0 +1,115 @@
+package simple.misc.hex;
+
+import java.util.Arrays;
+
+/** Hex grid holding one int per hex in a flat array. Reading and writing hexes allocates nothing. */
+public class IntHexArray extends DenseHexGrid {
+    /** Computes the value of a hex from its coordinates, for parallelFill() */
+    @FunctionalInterface
+    public interface Generator {
+        public int generate(int hx, int hy, int hz);
+    }
+    /** Computes a new value from an old one, for parallelMap() */
+    @FunctionalInterface
+    public interface Operator {
+        public int apply(int value);
+    }
+    /** Combines two values, for reduce() */
+    @FunctionalInterface
+    public interface Combiner {
+        public int apply(int a, int b);
+    }
+    /** Computes the next value of a hex, for step(). The grid passed in still holds the current values of every hex, so neighbors
+     *  can be read with grid.neighborValue() regardless of the order hexes are updated in */
+    @FunctionalInterface
+    public interface Stencil {
+        public int apply(int index, int value, IntHexArray grid);
+    }
+
+    protected int[] _values;
+    /** Second buffer for step(), allocated on first use */
+    private int[] _back;
+
+    public IntHexArray(HexIndexer indexer) {
+        super(indexer);
+        _values = new int[indexer.size()];
+    }
+    public IntHexArray(HexIndexer indexer, int initial) {
+        this(indexer);
+        fill(initial);
+    }
+
+    public int get(int hx, int hy, int hz) { return _values[_indexer.checkedIndexOf(hx, hy, hz)]; }
+    public int get(Tuple cube) { return get(cube.entry(0), cube.entry(1), cube.entry(2)); }
+    /** Returns the value of the hex, or the given default if it isn't part of the grid */
+    public int getOrDefault(int hx, int hy, int hz, int fallback) {
+        int i = _indexer.indexOf(hx, hy, hz);
+        return (i < 0) ? fallback : _values[i];
+    }
+    public void set(int value, int hx, int hy, int hz) { _values[_indexer.checkedIndexOf(hx, hy, hz)] = value; }
+    public void set(int value, Tuple cube) { set(value, cube.entry(0), cube.entry(1), cube.entry(2)); }
+
+    public int getAt(int index) { return _values[index]; }
+    public void setAt(int index, int value) { _values[index] = value; }
+    /** Returns the value of the neighbor of the hex at the index in the given direction, or the fallback if it isn't in the grid */
+    public int neighborValue(int index, int direction, int fallback) {
+        int n = _indexer.neighbor(index, direction);
+        return (n < 0) ? fallback : _values[n];
+    }
+    public void fill(int value) { Arrays.fill(_values, value); }
+    /** Returns the backing array, indexed by indexer().indexOf(). step() swaps in a new array, so don't hold on to it across steps */
+    public int[] values() { return _values; }
+
+    /** Sets every hex to the value generated for its coordinates, in parallel. The generator must be thread safe */
+    public void parallelFill(final Generator generator) {
+        forEachChunk(_values.length, true, (from, to) -> 
+            _indexer.forEach(from, to, (i, hx, hy, hz) -> _values[i] = generator.generate(hx, hy, hz)));
+    }
+    /** Replaces the value of every hex with the operator applied to it, in parallel. The operator must be thread safe */
+    public void parallelMap(final Operator operator) {
+        forEachChunk(_values.length, true, (from, to) -> {
+            for (int i=from; i<to; i++) {
+                if (_indexer.contains(i)) {
+                    _values[i] = operator.apply(_values[i]);
+                }
+            }
+        });
+    }
+    /** Combines the values of all hexes, in parallel. Each chunk is folded in index order starting from the identity, then the chunk
+     *  results are folded in chunk order, so the result doesn't depend on the number of threads. The identity must leave values
+     *  unchanged when combined with them, and the combiner must be associative (floating point addition is close enough: the result
+     *  is always the same, if not exactly the sequential sum) */
+    public int reduce(final int identity, final Combiner combiner) {
+        final int[] partial = new int[chunkCount(_values.length)];
+        forEachChunk(_values.length, true, (from, to) -> {
+            int result = identity;
+            for (int i=from; i<to; i++) {
+                if (_indexer.contains(i)) {
+                    result = combiner.apply(result, _values[i]);
+                }
+            }
+            partial[from / CHUNK_SIZE] = result;
+        });
+        int result = identity;
+        for (int p: partial) {
+            result = combiner.apply(result, p);
+        }
+        return result;
+    }
+    /** Advances every hex by one step of the stencil, in parallel. New values are written to a second buffer while the stencil reads
+     *  the current ones, then the buffers are swapped, so every hex sees its neighbors as they were before the step. The stencil must
+     *  be thread safe */
+    public void step(final Stencil stencil) {
+        if (_back == null) {
+            _back = new int[_values.length];
+        }
+        final int[] current = _values, next = _back;
+        forEachChunk(current.length, true, (from, to) -> {
+            for (int i=from; i<to; i++) {
+                next[i] = _indexer.contains(i) ? stencil.apply(i, current[i], this) : current[i];
+            }
+        });
+        _values = next;
+        _back = current;
+    }
+}
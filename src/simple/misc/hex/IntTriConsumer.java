@@ -0,0 +1,7 @@
+package simple.misc.hex;
+
+/** Receives three ints, typically the cube coordinates of a hex, corner or edge. Used by the allocation-free neighbor visitors. */
+@FunctionalInterface
+public interface IntTriConsumer {
+    public void accept(int x, int y, int z);
+}
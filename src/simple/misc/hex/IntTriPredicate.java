@@ -0,0 +1,7 @@
+package simple.misc.hex;
+
+/** Tests three ints, typically the cube coordinates of a hex, e.g. whether it blocks sight. */
+@FunctionalInterface
+public interface IntTriPredicate {
+    public boolean test(int x, int y, int z);
+}
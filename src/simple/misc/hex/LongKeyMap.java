@@ -0,0 +1,182 @@
+package simple.misc.hex;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/** Hash map from long keys (e.g. coordinates packed with Tuple.pack()) to non-null values, without boxing the keys.<P>
+ *
+ *  Keys and values are kept in two parallel arrays with open addressing and linear probing; an empty slot is one with a null value.
+ *  Removing shifts the following entries of the probe run back instead of leaving tombstones, so lookups never slow down after many
+ *  removals. Getting, putting and removing allocate nothing unless the table has to grow.<P>
+ *
+ *  Entries can be visited without an iterator by looping over slot indices: for i in 0..capacity()-1, valueAt(i) is null for empty
+ *  slots and keyAt(i) is the key otherwise.
+ * */
+public class LongKeyMap<V> implements Iterable<V> {
+    /** Default number of entries the map can hold before growing */
+    protected static int _DEFAULT_EXPECTED_SIZE = 16;
+
+    private long[] _keys;
+    private Object[] _values;
+    private int _mask, _size, _resizeAt;
+
+    public LongKeyMap() {
+        this(_DEFAULT_EXPECTED_SIZE);
+    }
+    /** Creates a map able to hold the given number of entries without growing */
+    public LongKeyMap(int expectedSize) {
+        if (expectedSize < 0) { throw new IllegalArgumentException("expectedSize must not be negative"); }
+        allocate(capacityFor(expectedSize));
+    }
+
+    public int size() { return _size; }
+    public boolean isEmpty() { return _size == 0; }
+    /** Returns the number of slots, for looping with keyAt() and valueAt() */
+    public int capacity() { return _values.length; }
+    /** Returns the key in the given slot. Only meaningful if valueAt() is not null */
+    public long keyAt(int slot) { return _keys[slot]; }
+    /** Returns the value in the given slot, or null if the slot is empty */
+    @SuppressWarnings("unchecked")
+    public V valueAt(int slot) { return (V)_values[slot]; }
+
+    /** Returns the value for the key, or null if there is none */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int i = slot(key);
+        Object value;
+        while ((value = _values[i]) != null) {
+            if (_keys[i] == key) {
+                return (V)value;
+            }
+            i = (i+1) & _mask;
+        }
+        return null;
+    }
+    public boolean containsKey(long key) { return get(key) != null; }
+
+    /** Sets the value for the key and returns the previous value, or null if there was none */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) { throw new IllegalArgumentException("LongKeyMap does not hold null values"); }
+        int i = slot(key);
+        Object old;
+        while ((old = _values[i]) != null) {
+            if (_keys[i] == key) {
+                _values[i] = value;
+                return (V)old;
+            }
+            i = (i+1) & _mask;
+        }
+        _keys[i] = key;
+        _values[i] = value;
+        if (++_size > _resizeAt) {
+            rehash(_values.length*2);
+        }
+        return null;
+    }
+    /** Sets the value for the key only if it has none. Returns the value now in the map */
+    public V putIfAbsent(long key, V value) {
+        V old = get(key);
+        if (old != null) {
+            return old;
+        }
+        put(key, value);
+        return value;
+    }
+
+    /** Removes the key and returns its value, or null if there was none */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int i = slot(key);
+        Object value;
+        while ((value = _values[i]) != null) {
+            if (_keys[i] == key) {
+                shiftBack(i);
+                _size--;
+                return (V)value;
+            }
+            i = (i+1) & _mask;
+        }
+        return null;
+    }
+    public void clear() {
+        Arrays.fill(_values, null);
+        _size = 0;
+    }
+
+    /** Iterates over the values, in no particular order. The map must not be changed while iterating */
+    @Override
+    public Iterator<V> iterator() {
+        return new Iterator<V>() {
+            int next = advance(0);
+
+            private int advance(int i) {
+                while (i < _values.length && _values[i] == null) i++;
+                return i;
+            }
+            @Override
+            public boolean hasNext() {
+                return next < _values.length;
+            }
+            @Override
+            public V next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                V value = valueAt(next);
+                next = advance(next+1);
+                return value;
+            }};
+    }
+
+    /** Empties the slot and moves later entries of the same probe run back into the gap, so every entry stays reachable from its
+     *  home slot without tombstones */
+    private void shiftBack(int gap) {
+        int i = gap;
+        while (true) {
+            i = (i+1) & _mask;
+            if (_values[i] == null) {
+                break;
+            }
+            int home = slot(_keys[i]);
+            // The entry can move into the gap unless its home slot lies cyclically after the gap and at or before i
+            boolean stays = (gap <= i) ? (gap < home && home <= i) : (gap < home || home <= i);
+            if (!stays) {
+                _keys[gap] = _keys[i];
+                _values[gap] = _values[i];
+                gap = i;
+            }
+        }
+        _values[gap] = null;
+    }
+
+    private int slot(long key) {
+        // Fibonacci hashing spreads keys that only differ in their low or middle bits, as packed coordinates do
+        return (int)((key * 0x9E3779B97F4A7C15L) >>> 32) & _mask;
+    }
+    private static int capacityFor(int expectedSize) {
+        // Keep the table at most 3/4 full
+        int needed = Math.max(4, (int)Math.min(1 << 30, expectedSize*4L/3 + 1));
+        return Integer.highestOneBit(needed - 1) << 1;
+    }
+    private void allocate(int capacity) {
+        _keys = new long[capacity];
+        _values = new Object[capacity];
+        _mask = capacity - 1;
+        _resizeAt = capacity/4*3;
+    }
+    private void rehash(int capacity) {
+        long[] keys = _keys;
+        Object[] values = _values;
+        allocate(capacity);
+        for (int j=0; j<values.length; j++) {
+            if (values[j] != null) {
+                int i = slot(keys[j]);
+                while (_values[i] != null) {
+                    i = (i+1) & _mask;
+                }
+                _keys[i] = keys[j];
+                _values[i] = values[j];
+            }
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package simple.misc.hex;
 
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class Tuple {
     public static abstract class Generator implements Iterable<Tuple> {
@@ -11,7 +14,95 @@ public class Tuple {
         
         @Override
         public Iterator<Tuple> iterator() { return create(); }
+        
+        /** Returns a stream of the generated tuples, in order */
+        public Stream<Tuple> stream() { return StreamSupport.stream(spliterator(), false); }
+        /** Returns a parallel stream of the generated tuples. Splits well for IndexedGenerators, poorly for others */
+        public Stream<Tuple> parallelStream() { return StreamSupport.stream(spliterator(), true); }
+    }
+    
+    /** Generator that knows how many tuples it generates and can compute the i-th one directly, so nothing has to be stored. Its
+     *  iterator computes tuples as they're asked for, and its spliterator splits in constant time with exact sizes, so parallel
+     *  streams over it divide the work evenly */
+    public static abstract class IndexedGenerator extends Generator {
+        /** Returns the number of tuples generated */
+        public abstract int size();
+        /** Returns the index-th tuple generated, for index from 0 to size()-1 */
+        public abstract Tuple tupleAt(int index);
+        
+        @Override
+        public Iterator<Tuple> create() {
+            return new Iterator<Tuple>() {
+                int next = 0;
+                final int size = size();
+                
+                @Override
+                public boolean hasNext() {
+                    return next < size;
+                }
+                @Override
+                public Tuple next() {
+                    if (next >= size) throw new NoSuchElementException();
+                    return tupleAt(next++);
+                }};
+        }
+        @Override
+        public Spliterator<Tuple> spliterator() {
+            return new IndexSpliterator(this, 0, size());
+        }
+        
+        protected final void checkIndex(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Generator index out of bounds: " + index);
+            }
+        }
+    }
+    
+    /** Spliterator over an index range of an IndexedGenerator */
+    private static final class IndexSpliterator implements Spliterator<Tuple> {
+        private final IndexedGenerator _generator;
+        private int _next;
+        private final int _end;
+        
+        IndexSpliterator(IndexedGenerator generator, int start, int end) {
+            _generator = generator;
+            _next = start;
+            _end = end;
+        }
+        @Override
+        public boolean tryAdvance(Consumer<? super Tuple> action) {
+            if (_next >= _end) {
+                return false;
+            }
+            action.accept(_generator.tupleAt(_next++));
+            return true;
+        }
+        @Override
+        public void forEachRemaining(Consumer<? super Tuple> action) {
+            while (_next < _end) {
+                action.accept(_generator.tupleAt(_next++));
+            }
+        }
+        @Override
+        public Spliterator<Tuple> trySplit() {
+            int mid = (_next + _end) >>> 1;
+            if (mid <= _next) {
+                return null;
+            }
+            Spliterator<Tuple> prefix = new IndexSpliterator(_generator, _next, mid);
+            _next = mid;
+            return prefix;
+        }
+        @Override
+        public long estimateSize() {
+            return _end - _next;
+        }
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL | DISTINCT;
+        }
     }
+    
     /** Creates a generator that generates coordinates like a 2D array.<P>
      * 
      *      i: first dimension
@@ -24,24 +115,39 @@ public class Tuple {
      *      @param even         'evenness' of the array (sets offset layer)
      *      @param coordConv    Converter for 2D coordinates to 3D hex coordinates
      * */
-    public static Generator createArrayGenerator(final int width, final int height, final int even, HexData.CoordinateConverter coordConv) {
-        return new Generator() {
-            final List<Tuple> tupleList = new ArrayList<Tuple>(){{
-                    for (int i=0; i<width; i++) {
-                        for (int j=0; j<height; j++) {
-                            add(coordConv.baseToCubeIndex(even&1, new Tuple(i, j)));
-                        }
-                    }}};
-            @Override
-            public Iterator<Tuple> create() {
-                return tupleList.iterator();
+    public static ArrayGenerator createArrayGenerator(final int width, final int height, final int even, HexData.CoordinateConverter coordConv) {
+        return new ArrayGenerator(width, height, even, coordConv);
+    }
+    /** Generator of createArrayGenerator(). The tuple at index i is made from i/height and i%height */
+    public static class ArrayGenerator extends IndexedGenerator {
+        private final int _width, _height, _even;
+        private final HexData.CoordinateConverter _coordConv;
+        
+        public ArrayGenerator(int width, int height, int even, HexData.CoordinateConverter coordConv) {
+            if (width < 0 || height < 0 || (long)width*height > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Invalid array size " + width + "x" + height);
             }
-
-            @Override
-            public int tupleDimension() {
-                return 2;
-            }};
+            _width = width;
+            _height = height;
+            _even = even & 1;
+            _coordConv = coordConv;
+        }
+        public int width()  { return _width; }
+        public int height() { return _height; }
+        public int even()   { return _even; }
+        public HexData.CoordinateConverter converter() { return _coordConv; }
+        
+        @Override
+        public int size() { return _width*_height; }
+        @Override
+        public Tuple tupleAt(int index) {
+            checkIndex(index);
+            return _coordConv.baseToCubeIndex(_even, index / _height, index % _height);
+        }
+        @Override
+        public int tupleDimension() { return 2; }
     }
+    
     /** Creates a generator that starts at 0,0,0 in a hex grid and generates coordinates
      * in a radius around the origin, i.e. max(|x|,|y|,|z|) &lt;= radius for all points generated.<P>
      * 
@@ -59,37 +165,58 @@ public class Tuple {
      *      @param centery      coordinate offset for y value
      *      @param centerz      coordinate offset for z value
      * */
-    public static Generator createRadialHexGenerator(final int radius, final int centerx, final int centery, final int centerz) {
-        return new Generator() {
-            final List<Tuple> tupleList = new ArrayList<Tuple>() {{
-                    add(new Tuple(centerx, centery, centerz));
-                    for (int rad=1; rad<=radius; rad++) {
-                        int x = centerx - rad;
-                        int y = centery;
-                        int z = centerz + rad;
-                        for (int dir=0; dir<6; dir++) {
-                            for (int rep=0; rep<rad; rep++) {
-                                x += HexArray.DIRECTIONS[dir][0];
-                                y += HexArray.DIRECTIONS[dir][1];
-                                z += HexArray.DIRECTIONS[dir][2];
-                                add(new Tuple(x, y, z));
-                            }
-                        }
-                    }}};
-            
-            @Override
-            public Iterator<Tuple> create() {
-                return tupleList.iterator();
-            }
-
-            @Override
-            public int tupleDimension() {
-                return 3;
-            }};
+    public static RadialGenerator createRadialHexGenerator(final int radius, final int centerx, final int centery, final int centerz) {
+        return new RadialGenerator(radius, centerx, centery, centerz);
     }
-    public static Generator createRadialHexGenerator(final int radius) {
+    public static RadialGenerator createRadialHexGenerator(final int radius) {
         return createRadialHexGenerator(radius, 0, 0, 0);
     }
+    /** Generator of createRadialHexGenerator(). Ring rad (1 or more) holds indices 3*rad*(rad-1)+1 to 3*rad*(rad+1), starting one
+     *  step after the corner in direction 4 and walking around the ring through each direction in turn */
+    public static class RadialGenerator extends IndexedGenerator {
+        /** Sum of the directions walked before starting each side of a ring, per unit of radius */
+        private static final int[][] SIDE_STARTS = {{0, 0, 0}, {1, -1, 0}, {2, -1, -1}, {2, 0, -2}, {1, 1, -2}, {0, 1, -1}};
+        
+        private final int _radius, _centerx, _centery, _centerz;
+        
+        public RadialGenerator(int radius, int centerx, int centery, int centerz) {
+            if (radius < 0 || 3L*radius*(radius+1) + 1 > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Invalid radius " + radius);
+            }
+            _radius = radius;
+            _centerx = centerx;
+            _centery = centery;
+            _centerz = centerz;
+        }
+        public int radius()  { return _radius; }
+        public int centerx() { return _centerx; }
+        public int centery() { return _centery; }
+        public int centerz() { return _centerz; }
+        
+        @Override
+        public int size() { return 3*_radius*(_radius+1) + 1; }
+        @Override
+        public Tuple tupleAt(int index) {
+            checkIndex(index);
+            if (index == 0) {
+                return new Tuple(_centerx, _centery, _centerz);
+            }
+            // Solve 3*rad*(rad-1) < index <= 3*rad*(rad+1), then correct any rounding error
+            int rad = (int)((3 + Math.sqrt(12.0*index - 3)) / 6);
+            while (3L*rad*(rad+1) < index) rad++;
+            while (rad > 1 && 3L*rad*(rad-1) >= index) rad--;
+            int pos = index - (3*rad*(rad-1) + 1);
+            int dir = pos / rad;
+            int steps = pos % rad + 1;
+            int[] side = SIDE_STARTS[dir];
+            int[] d = HexArray.DIRECTIONS[dir];
+            return new Tuple(_centerx - rad + rad*side[0] + steps*d[0],
+                             _centery       + rad*side[1] + steps*d[1],
+                             _centerz + rad + rad*side[2] + steps*d[2]);
+        }
+        @Override
+        public int tupleDimension() { return 3; }
+    }
     
     /** Creates a generator that starts at 0,0,0 in a hex grid and generates coordinates
      * in layers of triangles around the origin, i.e. (|x|+|y|+|z|)/2 &lt;= 2*layers for all points 
@@ -110,37 +237,143 @@ public class Tuple {
      *      @param centery      coordinate offset for y value
      *      @param centerz      coordinate offset for z value
      * */
-    public static Generator createTriangleHexGenerator(final int layers, final int invert, final int centerx, final int centery, final int centerz) {
-        final int mult = (invert&1)*2 - 1;
-        return new Generator() {
-            final List<Tuple> tupleList = new ArrayList<Tuple>() {{
-                    add(new Tuple(centerx, centery, centerz));
-                    for (int layer=1; layer<=layers; layer++) {
-                        int x = centerx - 2*layer*mult;
-                        int y = centery + layer*mult;
-                        int z = centerz + layer*mult;
-                        for (int dir=0; dir<6; dir+=2) {
-                            for (int rep=0; rep<layer*3; rep++) {
-                                x += HexArray.DIRECTIONS[dir][0]*mult;
-                                y += HexArray.DIRECTIONS[dir][1]*mult;
-                                z += HexArray.DIRECTIONS[dir][2]*mult;
-                                add(new Tuple(x, y, z));
-                            }
-                        }
-                    }}};
-            
-            @Override
-            public Iterator<Tuple> create() {
-                return tupleList.iterator();
+    public static TriangleGenerator createTriangleHexGenerator(final int layers, final int invert, final int centerx, final int centery, final int centerz) {
+        return new TriangleGenerator(layers, invert, centerx, centery, centerz);
+    }
+    /** Generator of createTriangleHexGenerator(). Layer L (1 or more) holds 9*L indices starting at 9*L*(L-1)/2+1, walking three
+     *  sides of 3*L steps each in directions 0, 2 and 4 (reversed when inverted) */
+    public static class TriangleGenerator extends IndexedGenerator {
+        /** Sum of the directions walked before starting each side of a layer, per unit of 3*layer */
+        private static final int[][] SIDE_STARTS = {{0, 0, 0}, {1, -1, 0}, {1, 0, -1}};
+        
+        private final int _layers, _invert, _centerx, _centery, _centerz;
+        private final int _mult;
+        
+        public TriangleGenerator(int layers, int invert, int centerx, int centery, int centerz) {
+            if (layers < 0 || 9L*layers*(layers+1)/2 + 1 > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Invalid layer count " + layers);
             }
-
-            @Override
-            public int tupleDimension() {
-                return 3;
-            }};
+            _layers = layers;
+            _invert = invert;
+            _mult = (invert&1)*2 - 1;
+            _centerx = centerx;
+            _centery = centery;
+            _centerz = centerz;
+        }
+        public int layers()  { return _layers; }
+        public int invert()  { return _invert; }
+        public int centerx() { return _centerx; }
+        public int centery() { return _centery; }
+        public int centerz() { return _centerz; }
+        
+        @Override
+        public int size() { return 9*_layers*(_layers+1)/2 + 1; }
+        @Override
+        public Tuple tupleAt(int index) {
+            checkIndex(index);
+            if (index == 0) {
+                return new Tuple(_centerx, _centery, _centerz);
+            }
+            // Solve 9*L*(L-1)/2 < index <= 9*L*(L+1)/2, then correct any rounding error
+            int layer = (int)Math.sqrt(2.0*(index-1)/9) + 1;
+            while (9L*layer*(layer+1)/2 < index) layer++;
+            while (layer > 1 && 9L*layer*(layer-1)/2 >= index) layer--;
+            int pos = index - (9*layer*(layer-1)/2 + 1);
+            int side = pos / (3*layer);
+            int steps = pos % (3*layer) + 1;
+            int[] start = SIDE_STARTS[side];
+            int[] d = HexArray.DIRECTIONS[side*2];
+            return new Tuple(_centerx + _mult*(-2*layer + 3*layer*start[0] + steps*d[0]),
+                             _centery + _mult*(   layer + 3*layer*start[1] + steps*d[1]),
+                             _centerz + _mult*(   layer + 3*layer*start[2] + steps*d[2]));
+        }
+        @Override
+        public int tupleDimension() { return 3; }
     }
     
-    private int[] _entry;
+    /*************************
+     * PACKED LONG COORDINATES *
+     *************************/
+    /** Bits per component of a packed coordinate. Components must lie between PACK_MIN and PACK_MAX */
+    public static final int PACK_BITS = 21;
+    public static final int PACK_MIN  = -(1 << (PACK_BITS-1));
+    public static final int PACK_MAX  = (1 << (PACK_BITS-1)) - 1;
+    private static final long PACK_MASK = (1L << PACK_BITS) - 1;
+    /** Top bit of the packed value, set for 2-tuples so (x, y) and (x, y, 0) get different keys */
+    private static final long PACK_2D = 1L << 63;
+
+    /** Packs three coordinates into one long, 21 bits each (x highest). Throws if a coordinate is out of range */
+    public static long pack(int x, int y, int z) {
+        checkPackable(x); checkPackable(y); checkPackable(z);
+        return ((x & PACK_MASK) << (2*PACK_BITS)) | ((y & PACK_MASK) << PACK_BITS) | (z & PACK_MASK);
+    }
+    /** Packs two coordinates into one long, different from every packed 3-tuple */
+    public static long pack(int x, int y) {
+        checkPackable(x); checkPackable(y);
+        return PACK_2D | ((x & PACK_MASK) << (2*PACK_BITS)) | ((y & PACK_MASK) << PACK_BITS);
+    }
+    /** Components of a packed coordinate. Shifting the component to the top and back fills in its sign */
+    public static int unpackX(long packed) { return (int)((packed << 1) >> (64 - PACK_BITS)); }
+    public static int unpackY(long packed) { return (int)((packed << (1 + PACK_BITS)) >> (64 - PACK_BITS)); }
+    public static int unpackZ(long packed) { return (int)((packed << (1 + 2*PACK_BITS)) >> (64 - PACK_BITS)); }
+    /** Returns the number of components of a packed coordinate, 2 or 3 */
+    public static int unpackLength(long packed) { return (packed < 0) ? 2 : 3; }
+    public static boolean isPackable(int coordinate) { return coordinate >= PACK_MIN && coordinate <= PACK_MAX; }
+    public static boolean isPackable(int x, int y) { return isPackable(x) && isPackable(y); }
+    public static boolean isPackable(int x, int y, int z) { return isPackable(x) && isPackable(y) && isPackable(z); }
+    public static Tuple unpack(long packed) {
+        return (packed < 0) ? of(unpackX(packed), unpackY(packed)) : of(unpackX(packed), unpackY(packed), unpackZ(packed));
+    }
+    private static void checkPackable(int coordinate) {
+        if (coordinate < PACK_MIN || coordinate > PACK_MAX) {
+            throw new IllegalArgumentException("Coordinate " + coordinate + " is out of range for packing");
+        }
+    }
+
+    /*************
+     * INTERNING *
+     *************/
+    /** Tuples with every component between -INTERN_RADIUS and INTERN_RADIUS are shared by of() */
+    public static final int INTERN_RADIUS = 16;
+    private static final int INTERN_SPAN = 2*INTERN_RADIUS + 1;
+    // Filled in on demand. Two threads may both create the same tuple; either one is fine to keep since they're equal
+    private static final Tuple[] _interned2 = new Tuple[INTERN_SPAN*INTERN_SPAN];
+    private static final Tuple[] _interned3 = new Tuple[INTERN_SPAN*INTERN_SPAN*INTERN_SPAN];
+
+    /** Returns a tuple of the given coordinates, shared with every other caller for small coordinates. The returned tuple must not be
+     *  modified (e.g. through entries()) */
+    public static Tuple of(int x, int y, int z) {
+        int ix = x + INTERN_RADIUS, iy = y + INTERN_RADIUS, iz = z + INTERN_RADIUS;
+        if ((ix | iy | iz) < 0 || ix >= INTERN_SPAN || iy >= INTERN_SPAN || iz >= INTERN_SPAN) {
+            return new Tuple(x, y, z);
+        }
+        int i = (ix*INTERN_SPAN + iy)*INTERN_SPAN + iz;
+        Tuple t = _interned3[i];
+        if (t == null) {
+            t = new Tuple(x, y, z);
+            _interned3[i] = t;
+        }
+        return t;
+    }
+    public static Tuple of(int x, int y) {
+        int ix = x + INTERN_RADIUS, iy = y + INTERN_RADIUS;
+        if ((ix | iy) < 0 || ix >= INTERN_SPAN || iy >= INTERN_SPAN) {
+            return new Tuple(x, y);
+        }
+        int i = ix*INTERN_SPAN + iy;
+        Tuple t = _interned2[i];
+        if (t == null) {
+            t = new Tuple(x, y);
+            _interned2[i] = t;
+        }
+        return t;
+    }
+
+    /** Effectively immutable once the tuple is built: the arithmetic methods build new arrays for their results. entries() returns
+     *  this array itself, so callers must not write to it (the cached hash and interned tuples rely on that) */
+    private final int[] _entry;
+    /** Cached hash, 0 until computed (like String, a hash that really is 0 is just recomputed every time) */
+    private int _hash;
     
     public Tuple(int... entry) {
         _entry = entry;
@@ -153,56 +386,71 @@ public class Tuple {
     public int   entry(int i) { return _entry[i]; }
     public int[] entries()      { return _entry; }
     public int   length()   { return _entry.length; }
+    /** Returns whether packed() can be called: the tuple has 2 or 3 components, each in range for packing */
+    public boolean isPackable() {
+        if (_entry.length == 3) return isPackable(_entry[0], _entry[1], _entry[2]);
+        return _entry.length == 2 && isPackable(_entry[0], _entry[1]);
+    }
+    /** Returns the coordinates packed into a long (see pack()). Only 2- and 3-tuples can be packed */
+    public long  packed() {
+        if (_entry.length == 3) return pack(_entry[0], _entry[1], _entry[2]);
+        if (_entry.length == 2) return pack(_entry[0], _entry[1]);
+        throw new IllegalArgumentException("Only 2- and 3-tuples can be packed: " + this);
+    }
     
     public Tuple add(Tuple other) {
         return add(other._entry);
     }
     public Tuple add(int[] other) {
-        Tuple newTuple = new Tuple(this);
-        for (int i=0; i<newTuple._entry.length; i++) {
-            newTuple._entry[i] += other[i];
+        int[] sum = new int[_entry.length];
+        for (int i=0; i<sum.length; i++) {
+            sum[i] = _entry[i] + other[i];
         }
-        return newTuple;
+        return new Tuple(sum);
     }
     public Tuple mult(float scalar) {
-        Tuple newTuple = new Tuple(this);
-        for (int i=0; i<newTuple._entry.length; i++) {
-            newTuple._entry[i] = (int)(newTuple._entry[i]*scalar);
+        int[] product = new int[_entry.length];
+        for (int i=0; i<product.length; i++) {
+            product[i] = (int)(_entry[i]*scalar);
         }
-        return newTuple;
+        return new Tuple(product);
     }
     
     @Override
     public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
         if (!(other instanceof Tuple)) {
            return false;
         }
         Tuple otherTuple = (Tuple)other;
-        if (this._entry.length != otherTuple._entry.length) {
+        if (_hash != 0 && otherTuple._hash != 0 && _hash != otherTuple._hash) {
             return false;
         }
-        for (int i=0; i<this._entry.length; i++) {
-            if (this._entry[i] != otherTuple._entry[i]) {
-                return false;
-            }
-        }
-        return true;
+        return Arrays.equals(_entry, otherTuple._entry);
     }
     
+    /** Computed on first use and cached, so a tuple must not change once it's used as a key */
     @Override
     public int hashCode(){
-        return Arrays.hashCode(_entry);
+        int hash = _hash;
+        if (hash == 0) {
+            hash = Arrays.hashCode(_entry);
+            _hash = hash;
+        }
+        return hash;
     }
     
     @Override
     public String toString() {
         if (_entry.length == 0) return "";
         
-        String str = "(";
-        for (int e: _entry) {
-            str += e+", ";
+        StringBuilder str = new StringBuilder(_entry.length*4 + 2).append('(');
+        for (int i=0; i<_entry.length; i++) {
+            if (i > 0) str.append(", ");
+            str.append(_entry[i]);
         }
-        return str.substring(0, str.length()-2) + ")";
-        
+        return str.append(')').toString();
     }
 }
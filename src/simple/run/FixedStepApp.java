@@ -0,0 +1,87 @@
+package simple.run;
+
+/** Variant of SimpleGUIApp that runs the simulation at a fixed rate, independently of how often the screen is drawn.
+ * <P>Instead of writing everything in loop(), you implement update(double), which is called a fixed number of times per second, and
+ * render(double), which is called once per frame. Time that has passed since the last frame is collected in an accumulator and consumed
+ * in steps of exactly 1/updatesPerSecond seconds, so the simulation behaves the same on fast and slow computers. The render call receives
+ * how far the accumulator is into the next step (between 0 and 1), which can be used to interpolate positions between the last two states.
+ * <P>The screen is updated automatically after render(), so you should not call updateView() yourself. setup() is still called once before
+ * the first frame. Input is updated once per frame, so if several update steps run in one frame they all see the same input state. **/
+public abstract class FixedStepApp extends SimpleGUIApp {
+	/** Default number of update steps that may run in a single frame before the accumulator is discarded. **/
+	protected static int _DEFAULT_MAX_CATCH_UP_STEPS = 5;
+
+	private int _updatesPerSecond, _maxCatchUpSteps;
+	private long _stepNanos, _frameNanos;
+	private double _stepSeconds;
+	private long _accumulator, _lastTime;
+	private long _droppedSteps;
+
+	/** Returns the number of times update() is called per second **/
+	public int updatesPerSecond() { return _updatesPerSecond; }
+	/** Returns the maximum number of update steps run in a single frame **/
+	public int maxCatchUpSteps() { return _maxCatchUpSteps; }
+	/** Returns the total number of update steps that were skipped because the program fell too far behind **/
+	public long droppedSteps() { return _droppedSteps; }
+
+	/** Sets the maximum number of update steps that may run in one frame. If the program falls further behind than this (e.g. a long
+	 * garbage collection or the window being dragged), the remaining time is dropped instead of trying to catch up, which would otherwise
+	 * make every following frame slower still. **/
+	public void setMaxCatchUpSteps(int maxCatchUpSteps) {
+		if (maxCatchUpSteps < 1) { throw new IllegalArgumentException("maxCatchUpSteps must be at least 1"); }
+		_maxCatchUpSteps = maxCatchUpSteps;
+	}
+
+	/** Creates a new FixedStepApp where the simulation rate is the same as the target frames per second **/
+	public FixedStepApp(int width, int height, int fps) {
+		this(width, height, fps, fps);
+	}
+	/** Creates a new FixedStepApp with a given width, height, target frames per second and fixed number of simulation steps per second **/
+	public FixedStepApp(int width, int height, int fps, int updatesPerSecond) {
+		super(width, height, fps);
+		if (updatesPerSecond <= 0) { throw new IllegalArgumentException("updatesPerSecond must be positive"); }
+		_updatesPerSecond = updatesPerSecond;
+		_stepNanos = 1000000000L/updatesPerSecond;
+		_stepSeconds = _stepNanos/1e9;
+		_frameNanos = 1000000000L/fps;
+		_maxCatchUpSteps = _DEFAULT_MAX_CATCH_UP_STEPS;
+		_accumulator = 0;
+		_lastTime = 0;
+		_droppedSteps = 0;
+	}
+
+	/** Method called a fixed number of times per second. Advance your simulation here.
+	 * @param dt    Length of one step in seconds; always 1/updatesPerSecond **/
+	public abstract void update(double dt);
+	/** Method called once per frame. Draw your program here.
+	 * @param alpha Fraction of a step that has passed since the last update, between 0 (inclusive) and 1 (exclusive) **/
+	public abstract void render(double alpha);
+
+	/** Runs the fixed step loop for one frame. Not meant to be overridden. **/
+	@Override
+	public final void loop() {
+		long now = System.nanoTime();
+		if (_lastTime == 0) {
+			_lastTime = now;
+		}
+		_accumulator += now - _lastTime;
+		_lastTime = now;
+
+		int steps = 0;
+		while (_accumulator >= _stepNanos && steps < _maxCatchUpSteps) {
+			update(_stepSeconds);
+			_accumulator -= _stepNanos;
+			steps++;
+		}
+		if (_accumulator >= _stepNanos) {
+			_droppedSteps += _accumulator/_stepNanos;
+			_accumulator %= _stepNanos;
+		}
+
+		render(_accumulator/(double)_stepNanos);
+
+		DrawToScreen();
+		Timer.correctedDelayNanos(_frameNanos);
+		cls();
+	}
+}
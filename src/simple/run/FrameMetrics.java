@@ -0,0 +1,110 @@
+package simple.run;
+
+import simple.misc.Histogram;
+
+/** Latency and frame time measurements for a SimpleGUIApp, available through SimpleGUIApp.getFrameMetrics().
+ * <P>Every input event is stamped with System.nanoTime() when the window receives it. From that, two latencies are measured for every
+ * event: until Input.update() hands it to the program (event to update), and until the frame drawn after it has been handed to the window
+ * (event to present). That second one is as close to input-to-photon latency as can be measured from inside Java; the monitor adds its own
+ * delay on top. The time between presented frames is recorded as well.
+ * <P>All values are in nanoseconds and kept in fixed-size histograms, so measuring costs nothing more than a few array increments per event
+ * and is on by default. Everything is recorded on the program thread; read the results from there too (e.g. in loop()). **/
+public class FrameMetrics {
+	private final Histogram _eventToUpdate, _eventToPresent, _frameTime;
+	private boolean _enabled;
+	private long _frames, _coalescedEvents, _droppedAtReset;
+	private long _lastPresentTime;
+	/** Whether the events of the current frame have already been counted as presented. **/
+	private boolean _presented;
+
+	/** Returns the time from an event being received to Input.update() giving it to the program. **/
+	public Histogram eventToUpdate() { return _eventToUpdate; }
+	/** Returns the time from an event being received to the end of DrawToScreen() for the frame that first saw it. **/
+	public Histogram eventToPresent() { return _eventToPresent; }
+	/** Returns the time between the ends of consecutive DrawToScreen() calls. **/
+	public Histogram frameTime() { return _frameTime; }
+	/** Returns the number of frames presented since the last reset. **/
+	public long frames() { return _frames; }
+	/** Returns the number of events lost because too many came in between two frames, since the last reset. **/
+	public long droppedEvents() { return Input.droppedEvents() - _droppedAtReset; }
+	/** Returns the number of mouse moves that were replaced by a later move in the same frame before the program saw the mouse position,
+	 * since the last reset. These are still in the frame's event list, but mouseX() and mouseY() only show the last one. **/
+	public long coalescedEvents() { return _coalescedEvents; }
+	/** Returns whether measurements are being recorded. **/
+	public boolean isEnabled() { return _enabled; }
+
+	/** Turns recording on or off. Already recorded values are kept. **/
+	public void setEnabled(boolean enabled) {
+		_enabled = enabled;
+		_lastPresentTime = 0;
+	}
+
+	FrameMetrics() {
+		_eventToUpdate = new Histogram();
+		_eventToPresent = new Histogram();
+		_frameTime = new Histogram();
+		_enabled = true;
+		reset();
+	}
+
+	/** Forgets all measurements. **/
+	public void reset() {
+		_eventToUpdate.reset();
+		_eventToPresent.reset();
+		_frameTime.reset();
+		_frames = 0;
+		_coalescedEvents = 0;
+		_droppedAtReset = Input.droppedEvents();
+		_lastPresentTime = 0;
+		_presented = true;
+	}
+
+	/** Called by SimpleGUIApp right after Input.update(). **/
+	void inputUpdated() {
+		if (!_enabled) {
+			return;
+		}
+		long now = System.nanoTime();
+		int moves = 0;
+		for (int i=0; i<Input.eventCount(); i++) {
+			_eventToUpdate.record(now - Input.eventTime(i));
+			if (Input.eventType(i) == Input.MOUSE_MOVED) {
+				moves++;
+			}
+		}
+		if (moves > 1) {
+			_coalescedEvents += moves-1;
+		}
+		_presented = false;
+	}
+	/** Called by SimpleGUIApp once a frame has been handed to the window. **/
+	void framePresented() {
+		if (!_enabled) {
+			return;
+		}
+		long now = System.nanoTime();
+		if (!_presented) {
+			// If a frame is drawn more than once, only the first one shows the events for the first time
+			for (int i=0; i<Input.eventCount(); i++) {
+				_eventToPresent.record(now - Input.eventTime(i));
+			}
+			_presented = true;
+		}
+		if (_lastPresentTime != 0) {
+			_frameTime.record(now - _lastPresentTime);
+		}
+		_lastPresentTime = now;
+		_frames++;
+	}
+
+	/** Returns a summary of all measurements in milliseconds. **/
+	public String summary() {
+		return "frame time (ms): " + _frameTime.summary(1e6) +
+				"\nevent to update (ms): " + _eventToUpdate.summary(1e6) +
+				"\nevent to present (ms): " + _eventToPresent.summary(1e6) +
+				"\nframes: " + _frames + ", dropped events: " + droppedEvents() + ", coalesced events: " + _coalescedEvents;
+	}
+	public String toString() {
+		return summary();
+	}
+}
@@ -1,54 +1,75 @@
 package simple.run;
 
 import java.awt.event.*;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.Arrays;
 
 import simple.misc.Vector;
 
-/** This is a static class which allows for a simple interface with the mouse and keyboard. **/
+/** This is a static class which allows for a simple interface with the mouse and keyboard. 
+ * <P>Events from the window are queued as they happen and applied all at once when update() is called at the start of each frame, so the 
+ * state seen by your program doesn't change in the middle of a frame. Every event from the frame can also be looked at in order with 
+ * eventCount() and the event methods, which is needed when more happens in one frame than the simple state methods can show (e.g. several 
+ * characters typed, or a key tapped and released between two frames). **/
 public class Input {
+	/** Event type for a key being pressed down. The event has a key code and a key character. **/
+	public static final int KEY_PRESSED = 1;
+	/** Event type for a key being released. The event has a key code and a key character. **/
+	public static final int KEY_RELEASED = 2;
+	/** Event type for a character being typed. The event has a key character; the key code is always 0. **/
+	public static final int KEY_TYPED = 3;
+	/** Event type for the mouse moving, with or without a button held. The event has the new mouse position. **/
+	public static final int MOUSE_MOVED = 4;
+	/** Event type for a mouse button being pressed. The event has the mouse position. **/
+	public static final int MOUSE_PRESSED = 5;
+	/** Event type for a mouse button being released. The event has the mouse position. **/
+	public static final int MOUSE_RELEASED = 6;
+	/** Event type for the mouse wheel turning. The event has the number of notches turned. **/
+	public static final int MOUSE_WHEEL = 7;
+	
+	/** Number of events that can wait between two frames before new ones are dropped. **/
+	private static final int _QUEUE_CAPACITY = 4096;
+	
 	static class Listener implements KeyListener, MouseListener, MouseMotionListener, MouseWheelListener {
-		public void keyPressed(KeyEvent e) {
-			keyChars[e.getKeyChar()] = true;
-			keyCodes[e.getKeyCode()] = true;
-		}
-
-		public void keyReleased(KeyEvent e) {
-			keyChars[e.getKeyChar()] = false;
-			keyCodes[e.getKeyCode()] = false;
-			codeReleasedBuffer.add(e.getKeyCode());
-			charReleasedBuffer.add(e.getKeyChar());
-		}
+		// Runs on the AWT event thread, so nothing here touches the state read by the program; events are only queued
+		public void keyPressed(KeyEvent e) { events.offer(KEY_PRESSED, e.getKeyCode(), e.getKeyChar(), System.nanoTime()); }
+		public void keyReleased(KeyEvent e) { events.offer(KEY_RELEASED, e.getKeyCode(), e.getKeyChar(), System.nanoTime()); }
+		public void keyTyped(KeyEvent e) { events.offer(KEY_TYPED, e.getKeyCode(), e.getKeyChar(), System.nanoTime()); }
 
-		public void keyTyped(KeyEvent e) {
-			codeBuffer.add(e.getKeyCode());
-			charBuffer.add(e.getKeyChar());
-		}
-
-		public void mousePressed(MouseEvent e) { mouseDown = true; }
-		public void mouseReleased(MouseEvent e) { mouseDown = false; }
-		public void mouseDragged(MouseEvent e) { newx = e.getX(); newy = e.getY(); }
-		public void mouseMoved(MouseEvent e) { newx = e.getX(); newy = e.getY(); }
+		public void mousePressed(MouseEvent e) { events.offer(MOUSE_PRESSED, e.getX(), e.getY(), System.nanoTime()); }
+		public void mouseReleased(MouseEvent e) { events.offer(MOUSE_RELEASED, e.getX(), e.getY(), System.nanoTime()); }
+		public void mouseDragged(MouseEvent e) { events.offer(MOUSE_MOVED, e.getX(), e.getY(), System.nanoTime()); }
+		public void mouseMoved(MouseEvent e) { events.offer(MOUSE_MOVED, e.getX(), e.getY(), System.nanoTime()); }
 
-		public void mouseWheelMoved(MouseWheelEvent e) { bufferedNotches = e.getWheelRotation(); }
+		public void mouseWheelMoved(MouseWheelEvent e) { events.offer(MOUSE_WHEEL, e.getWheelRotation(), 0, System.nanoTime()); }
 		
 		public void mouseClicked(MouseEvent e) {}
 		public void mouseEntered(MouseEvent e) {}
 		public void mouseExited(MouseEvent e) {}
 	}
 	
-	private static int x=0, y=0, newx=0, newy=0, oldx=0, oldy=0;
+	private static InputRingBuffer events = new InputRingBuffer(_QUEUE_CAPACITY);
+	
+	// Everything below is only touched by the program thread
+	private static int x=0, y=0, oldx=0, oldy=0;
 	private static boolean mouseDown = false;
-	private static int bufferedNotches=0, mouseNotches=0;
+	private static int mouseNotches=0;
 	
 	private static boolean[] keyCodes = new boolean[65536];
 	private static boolean[] keyChars = new boolean[65536];
 	
-	private static Queue<Integer> codeBuffer = new LinkedList<Integer>();
-	private static Queue<Character> charBuffer = new LinkedList<Character>();
-	private static Queue<Integer> codeReleasedBuffer = new LinkedList<Integer>();
-	private static Queue<Character> charReleasedBuffer = new LinkedList<Character>();
+	/** Events from the current frame, in the order they happened. **/
+	private static int[] frameType = new int[64], frameA = new int[64], frameB = new int[64];
+	private static long[] frameTime = new long[64];
+	private static int frameCount = 0;
+	
+	/** Releases that came in the same frame as their press. They're applied next frame, so the press is seen for at least one frame. **/
+	private static boolean pendingMouseRelease = false;
+	private static int[] pendingKeyCodes = new int[16], pendingKeyChars = new int[16];
+	private static int pendingKeyCount = 0;
+	
+	/** The older methods below only report one typed and one released key per frame, so those keys are queued separately. **/
+	private static InputRingBuffer typedBuffer = new InputRingBuffer(256);
+	private static InputRingBuffer releasedBuffer = new InputRingBuffer(256);
 	private static char currentChar = 0;
 	private static int currentCode = 0;
 	private static char currentReleasedChar = 0;
@@ -82,6 +103,33 @@ public class Input {
 	public static boolean keyDown(int key) { return (key>=0 && key<65536) ? (keyCodes[key]) : false; }
 	/** Returns whether the given key is pressed, using given character**/
 	public static boolean keyDown(char key) { return (key>=0 && key<65536) ? (keyChars[key]) : false; }
+	/** Returns the number of input events that happened since the previous frame. **/
+	public static int eventCount() { return frameCount; }
+	/** Returns the type of the i-th event this frame, one of the KEY_ or MOUSE_ constants. **/
+	public static int eventType(int i) { checkEvent(i); return frameType[i]; }
+	/** Returns the key code of the i-th event this frame, or 0 if it isn't a key event. **/
+	public static int eventKeyCode(int i) { checkEvent(i); return isKeyEvent(frameType[i]) ? frameA[i] : 0; }
+	/** Returns the key character of the i-th event this frame, or 0 if it isn't a key event. **/
+	public static char eventKeyChar(int i) { checkEvent(i); return isKeyEvent(frameType[i]) ? (char)frameB[i] : 0; }
+	/** Returns the mouse x coordinate of the i-th event this frame, or 0 if it isn't a mouse move, press or release. **/
+	public static int eventX(int i) { checkEvent(i); return isMousePositionEvent(frameType[i]) ? frameA[i] : 0; }
+	/** Returns the mouse y coordinate of the i-th event this frame, or 0 if it isn't a mouse move, press or release. **/
+	public static int eventY(int i) { checkEvent(i); return isMousePositionEvent(frameType[i]) ? frameB[i] : 0; }
+	/** Returns the number of notches turned in the i-th event this frame, or 0 if it isn't a mouse wheel event. **/
+	public static int eventWheelNotches(int i) { checkEvent(i); return frameType[i] == MOUSE_WHEEL ? frameA[i] : 0; }
+	/** Returns when the i-th event this frame was received, in System.nanoTime() time. **/
+	public static long eventTime(int i) { checkEvent(i); return frameTime[i]; }
+	/** Returns the total number of events lost because too many came in between two frames. **/
+	public static long droppedEvents() { return events.dropped(); }
+	
+	private static boolean isKeyEvent(int type) { return type == KEY_PRESSED || type == KEY_RELEASED || type == KEY_TYPED; }
+	private static boolean isMousePositionEvent(int type) { return type == MOUSE_MOVED || type == MOUSE_PRESSED || type == MOUSE_RELEASED; }
+	private static void checkEvent(int i) {
+		if (i < 0 || i >= frameCount) {
+			throw new IndexOutOfBoundsException("Event index " + i + " out of bounds for " + frameCount + " events this frame");
+		}
+	}
+	
 	/** Returns the keycode of the first key in the typing buffer **/
 	public static int getCode() { return currentCode; }
 	/** Returns the character of the first key in the typing buffer **/
@@ -95,35 +143,138 @@ public class Input {
 	public static void update() {
 		oldx = x;
 		oldy = y;
-		x = newx;
-		y = newy;
+		mouseNotches = 0;
+		frameCount = 0;
 		
-		mouseNotches = bufferedNotches;
-		bufferedNotches = 0;
+		applyPendingReleases();
 		
-		if (codeBuffer.peek() != null) {
-			currentCode = codeBuffer.poll();
-		} else {
-			currentCode = 0;
+		boolean mousePressedThisFrame = false;
+		// Only events that were already waiting are taken, so a steady stream of events can't keep this from returning
+		int waiting = events.size();
+		for (int i=0; i<waiting; i++) {
+			int type = events.peekType();
+			int a = events.peekA();
+			int b = events.peekB();
+			addFrameEvent(type, a, b, events.peekTime());
+			events.remove();
+			
+			switch(type) {
+			case KEY_PRESSED:
+				cancelPendingKeyRelease(a, b);
+				setKey(a, b, true);
+				break;
+			case KEY_RELEASED:
+				if (keyReleaseWouldBeMissed(a, b)) {
+					addPendingKeyRelease(a, b);
+				} else {
+					setKey(a, b, false);
+				}
+				releasedBuffer.offer(type, a, b, 0);
+				break;
+			case KEY_TYPED:
+				typedBuffer.offer(type, a, b, 0);
+				break;
+			case MOUSE_MOVED:
+				x = a;
+				y = b;
+				break;
+			case MOUSE_PRESSED:
+				mouseDown = true;
+				mousePressedThisFrame = true;
+				pendingMouseRelease = false;
+				break;
+			case MOUSE_RELEASED:
+				if (mousePressedThisFrame) {
+					pendingMouseRelease = true;
+				} else {
+					mouseDown = false;
+				}
+				break;
+			case MOUSE_WHEEL:
+				mouseNotches += a;
+				break;
+			}
 		}
 		
-		if (charBuffer.peek() != null) {
-			currentChar = charBuffer.poll();
-		} else {
+		if (typedBuffer.isEmpty()) {
+			currentCode = 0;
 			currentChar = 0;
-		}
-		
-		if (codeReleasedBuffer.peek() != null) {
-			currentReleasedCode = codeReleasedBuffer.poll();
 		} else {
-			currentReleasedCode = 0;
+			currentCode = typedBuffer.peekA();
+			currentChar = (char)typedBuffer.peekB();
+			typedBuffer.remove();
 		}
 		
-		if (charReleasedBuffer.peek() != null) {
-			currentReleasedChar = charReleasedBuffer.poll();
-		} else {
+		if (releasedBuffer.isEmpty()) {
+			currentReleasedCode = 0;
 			currentReleasedChar = 0;
+		} else {
+			currentReleasedCode = releasedBuffer.peekA();
+			currentReleasedChar = (char)releasedBuffer.peekB();
+			releasedBuffer.remove();
+		}
+	}
+	
+	private static void setKey(int code, int character, boolean down) {
+		if (code >= 0 && code < 65536) {
+			keyCodes[code] = down;
+		}
+		if (character >= 0 && character < 65536) {
+			keyChars[character] = down;
+		}
+	}
+	/** Returns whether the key was pressed earlier in the same frame, in which case releasing it now would hide the press entirely. **/
+	private static boolean keyReleaseWouldBeMissed(int code, int character) {
+		for (int i=0; i<frameCount-1; i++) {
+			if (frameType[i] == KEY_PRESSED && frameA[i] == code && frameB[i] == character) {
+				return true;
+			}
+		}
+		return false;
+	}
+	private static void addPendingKeyRelease(int code, int character) {
+		if (pendingKeyCount == pendingKeyCodes.length) {
+			pendingKeyCodes = Arrays.copyOf(pendingKeyCodes, pendingKeyCount*2);
+			pendingKeyChars = Arrays.copyOf(pendingKeyChars, pendingKeyCount*2);
+		}
+		pendingKeyCodes[pendingKeyCount] = code;
+		pendingKeyChars[pendingKeyCount] = character;
+		pendingKeyCount++;
+	}
+	private static void cancelPendingKeyRelease(int code, int character) {
+		for (int i=0; i<pendingKeyCount; i++) {
+			if (pendingKeyCodes[i] == code && pendingKeyChars[i] == character) {
+				pendingKeyCount--;
+				pendingKeyCodes[i] = pendingKeyCodes[pendingKeyCount];
+				pendingKeyChars[i] = pendingKeyChars[pendingKeyCount];
+				return;
+			}
+		}
+	}
+	private static void applyPendingReleases() {
+		if (pendingMouseRelease) {
+			mouseDown = false;
+			pendingMouseRelease = false;
+		}
+		for (int i=0; i<pendingKeyCount; i++) {
+			setKey(pendingKeyCodes[i], pendingKeyChars[i], false);
+		}
+		pendingKeyCount = 0;
+	}
+	private static void addFrameEvent(int type, int a, int b, long time) {
+		if (frameCount == frameType.length) {
+			// Only grows when a frame has more events than any before it, so this stops allocating almost immediately
+			int newLength = frameCount*2;
+			frameType = Arrays.copyOf(frameType, newLength);
+			frameA = Arrays.copyOf(frameA, newLength);
+			frameB = Arrays.copyOf(frameB, newLength);
+			frameTime = Arrays.copyOf(frameTime, newLength);
 		}
+		frameType[frameCount] = type;
+		frameA[frameCount] = a;
+		frameB[frameCount] = b;
+		frameTime[frameCount] = time;
+		frameCount++;
 	}
 	
 	private static Listener listener = new Listener();
@@ -0,0 +1,67 @@
+package simple.run;
+
+/** Fixed size queue of input events, stored in primitive arrays so adding and removing events never allocates.
+ * <P>Safe for exactly one thread adding events (the AWT event thread) and one thread removing them (the program thread) at the same time,
+ * without locking. Each side only writes its own index, and the index is only published after the event's fields are written. When the
+ * queue is full, new events are dropped and counted rather than blocking the event thread. **/
+class InputRingBuffer {
+	private final int[] _type, _a, _b;
+	private final long[] _time;
+	private final int _mask;
+
+	/** Next slot to read; only written by the consumer. **/
+	private volatile int _head;
+	/** Next slot to write; only written by the producer. **/
+	private volatile int _tail;
+	private volatile long _dropped;
+
+	/** Creates a queue holding at least the given number of events. The capacity is rounded up to a power of two. **/
+	InputRingBuffer(int capacity) {
+		int size = Integer.highestOneBit(Math.max(2, capacity-1)) << 1;
+		_type = new int[size];
+		_a = new int[size];
+		_b = new int[size];
+		_time = new long[size];
+		_mask = size-1;
+		_head = 0;
+		_tail = 0;
+		_dropped = 0;
+	}
+
+	/** Returns the total number of events dropped because the queue was full. **/
+	long dropped() { return _dropped; }
+	/** Returns the number of events waiting. Only exact when called from the consumer thread. **/
+	int size() { return _tail - _head; }
+	boolean isEmpty() { return _tail == _head; }
+
+	/** Adds an event. Returns false and counts the event as dropped if the queue is full. Producer thread only. **/
+	boolean offer(int type, int a, int b, long time) {
+		int tail = _tail;
+		if (tail - _head > _mask) {
+			_dropped++;
+			return false;
+		}
+		int i = tail & _mask;
+		_type[i] = type;
+		_a[i] = a;
+		_b[i] = b;
+		_time[i] = time;
+		// Publishing the new tail makes the writes above visible to the consumer
+		_tail = tail+1;
+		return true;
+	}
+
+	/** Fields of the oldest waiting event. Consumer thread only, and only while the queue isn't empty. **/
+	int peekType() { return _type[_head & _mask]; }
+	int peekA() { return _a[_head & _mask]; }
+	int peekB() { return _b[_head & _mask]; }
+	long peekTime() { return _time[_head & _mask]; }
+	/** Discards the oldest waiting event. Consumer thread only. **/
+	void remove() {
+		if (_head != _tail) {
+			_head = _head+1;
+		}
+	}
+	/** Discards all waiting events. Consumer thread only. **/
+	void clear() { _head = _tail; }
+}
@@ -2,14 +2,42 @@ package simple.run;
 
 import javax.swing.*;
 
+import simple.gui.DirtyRegion;
 import simple.gui.Draw;
 
+import java.awt.BorderLayout;
+import java.awt.Canvas;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Frame;
 import java.awt.Graphics;
+import java.awt.Toolkit;
+import java.awt.image.BufferStrategy;
 
 public abstract class SimpleGUIApp extends JPanel implements Runnable {
+	/** Ways of getting the finished frame onto the window. **/
+	public static enum Presentation {
+		/** Draws the frame directly onto the window's panel. This is the default and works everywhere. **/
+		DIRECT,
+		/** Draws the frame through a double-buffered BufferStrategy on a heavyweight Canvas, letting Java2D use accelerated page flipping
+		 * or blitting where available. Avoids tearing and is usually much cheaper for large windows. **/
+		DOUBLE_BUFFERED,
+		/** Same as DOUBLE_BUFFERED, but with three buffers so drawing the next frame doesn't wait on the previous flip. **/
+		TRIPLE_BUFFERED;
+		
+		/** Returns the number of buffers used by the BufferStrategy, or 0 if this presentation doesn't use one. **/
+		public int numBuffers() {
+			switch(this) {
+			case DOUBLE_BUFFERED:
+				return 2;
+			case TRIPLE_BUFFERED:
+				return 3;
+			default:
+				return 0;
+			}
+		}
+	}
+	
 	private static class GUIRunWindow extends JFrame{
 		public GUIRunWindow(SimpleGUIApp programToRun, String title, boolean isUndecorated) {
 			super(title);
@@ -37,10 +65,18 @@ public abstract class SimpleGUIApp extends JPanel implements Runnable {
 	public static final int MAXHEIGHT = (int)java.awt.Toolkit.getDefaultToolkit().getScreenSize().getHeight();
 	
 	public static void start(SimpleGUIApp mainProgram, String name, boolean isUndecorated) {
-		mainProgram.setFrame(new GUIRunWindow(mainProgram, name, isUndecorated)); 
+		start(mainProgram, name, isUndecorated, Presentation.DIRECT);
 	}
 	public static void start(SimpleGUIApp mainProgram, String name) {
-		mainProgram.setFrame(new GUIRunWindow(mainProgram, name, false)); 
+		start(mainProgram, name, false, Presentation.DIRECT);
+	}
+	public static void start(SimpleGUIApp mainProgram, String name, Presentation presentation) {
+		start(mainProgram, name, false, presentation);
+	}
+	/** Opens the window and starts the program, presenting each frame with the given method. **/
+	public static void start(SimpleGUIApp mainProgram, String name, boolean isUndecorated, Presentation presentation) {
+		mainProgram.setPresentation(presentation);
+		mainProgram.setFrame(new GUIRunWindow(mainProgram, name, isUndecorated)); 
 	}
 	
 	private Color backgroundColor;
@@ -48,6 +84,12 @@ public abstract class SimpleGUIApp extends JPanel implements Runnable {
 	private int width, height, fps, delayTime;
 	private JFrame frame;
 	private Thread thread;
+	private Presentation presentation;
+	private Canvas canvas;
+	private BufferStrategy bufferStrategy;
+	private boolean damageTracking;
+	private volatile boolean exposed;
+	private FrameMetrics metrics;
 		
 	/** Returns the width of the window frame **/
 	public int getWidth() { return width; }
@@ -65,10 +107,49 @@ public abstract class SimpleGUIApp extends JPanel implements Runnable {
 	public Color getBackgroundColor() { return backgroundColor; }
 	/** Returns the JFrame object for the window **/
 	public JFrame getJFrame() { return frame; }
+	/** Returns how frames are drawn to the window **/
+	public Presentation getPresentation() { return presentation; }
+	/** Returns the input latency and frame time measurements for the program. Recording is on by default and can be turned off there. **/
+	public FrameMetrics getFrameMetrics() { return metrics; }
+	/** Returns whether only changed areas of the screen are redrawn **/
+	public boolean isDamageTracking() { return damageTracking; }
 	private void setFrame(JFrame frame_) { frame = frame_; }
 	
+	/** Sets up the components needed for the given presentation. Must happen before the window is created. **/
+	private void setPresentation(Presentation presentation_) {
+		presentation = presentation_;
+		if (presentation.numBuffers() > 0 && canvas == null) {
+			canvas = new Canvas();
+			canvas.setIgnoreRepaint(true);
+			canvas.setPreferredSize(new Dimension(width, height));
+			canvas.setFocusable(true);
+			// The canvas is heavyweight and sits on top of the panel, so it receives all the input events instead
+			canvas.addMouseListener(Input.getListener());
+			canvas.addMouseMotionListener(Input.getListener());
+			canvas.addMouseWheelListener(Input.getListener());
+			canvas.addKeyListener(Input.getListener());
+			setIgnoreRepaint(true);
+			setLayout(new BorderLayout());
+			add(canvas, BorderLayout.CENTER);
+		}
+	}
+	
 	/** Sets the background color to the given color **/
-	public void setBackgroundColor(Color c) { backgroundColor = c; }
+	public void setBackgroundColor(Color c) { 
+		backgroundColor = c; 
+		if (damageTracking) {
+			Draw.setDamageTracking(true, c);
+		}
+	}
+	/** Turns damage tracking on or off. With damage tracking, cls() no longer clears the screen, and each frame only the areas of widgets 
+	 * that changed are cleared, redrawn and copied to the window. For mostly static interfaces this saves nearly all of the drawing work.
+	 * <P>Widgets mark themselves when their location, size, colors, text or mouse state change. If you draw with Draw directly, or write 
+	 * a widget whose look depends on something else, call Draw.markDirty() or Widget.markDirty() yourself, otherwise the change won't 
+	 * show up. Should be called from setup() or later. **/
+	public void setDamageTracking(boolean damageTracking_) {
+		damageTracking = damageTracking_;
+		Draw.setDamageTracking(damageTracking, backgroundColor);
+	}
 	
 	/** Signals the program to terminate **/
 	public void quit() { running = false; }
@@ -85,6 +166,10 @@ public abstract class SimpleGUIApp extends JPanel implements Runnable {
 		this.fps = fps;
 		this.delayTime = 1000/fps;
 		this.frame = (JFrame) SwingUtilities.getWindowAncestor(this);
+		this.presentation = Presentation.DIRECT;
+		this.damageTracking = false;
+		this.exposed = false;
+		this.metrics = new FrameMetrics();
 		setPreferredSize(new Dimension(width, height));
 		setFocusable(true);
 		requestFocus();
@@ -101,6 +186,7 @@ public abstract class SimpleGUIApp extends JPanel implements Runnable {
 		setup();
 		while(running) {
 		    Input.update();
+		    metrics.inputUpdated();
 			loop();
 		}
 		System.exit(0);
@@ -113,12 +199,70 @@ public abstract class SimpleGUIApp extends JPanel implements Runnable {
 	
 	/** Draws whatever is on the DrawModule image buffer to the program window **/
 	protected void DrawToScreen() {
-		Graphics g2 = getGraphics();
-		g2.drawImage(Draw.getBufferedImage(), 0, 0, null);
-		g2.dispose();
+		// Anything still batched would otherwise only show up a frame late, if at all
+		Draw.flushBatch();
+		if (canvas == null) {
+			Graphics g2 = getGraphics();
+			if (g2 == null) {
+				return;
+			}
+			if (damageTracking && !exposed) {
+				drawDamage(g2, Draw.damage());
+			} else {
+				exposed = false;
+				g2.drawImage(Draw.getBufferedImage(), 0, 0, null);
+			}
+			g2.dispose();
+		} else {
+			// Back buffers don't keep the previous frame, so the whole image is always copied
+			drawToBufferStrategy();
+		}
+		if (damageTracking) {
+			Draw.endDamagedFrame();
+		}
+		metrics.framePresented();
+	}
+	/** Copies only the changed areas of the DrawModule image buffer to the window. **/
+	private void drawDamage(Graphics g2, DirtyRegion damage) {
+		for (int i=0; i<damage.count(); i++) {
+			int x1 = damage.x(i), y1 = damage.y(i);
+			int x2 = x1 + damage.w(i), y2 = y1 + damage.h(i);
+			g2.drawImage(Draw.getBufferedImage(), x1, y1, x2, y2, x1, y1, x2, y2, null);
+		}
+	}
+	/** Swing calls this when the window needs repainting, e.g. after being uncovered. The next frame then copies the whole image. **/
+	@Override
+	protected void paintComponent(Graphics g) {
+		super.paintComponent(g);
+		exposed = true;
+	}
+	/** Presents the frame through the canvas' BufferStrategy. The strategy is created on first use, once the canvas can be displayed.
+	 * Buffers can lose their contents at any time (e.g. when the display mode changes), so drawing is repeated until it sticks. **/
+	private void drawToBufferStrategy() {
+		if (bufferStrategy == null) {
+			if (!canvas.isDisplayable()) {
+				return;
+			}
+			canvas.createBufferStrategy(presentation.numBuffers());
+			bufferStrategy = canvas.getBufferStrategy();
+			canvas.requestFocus();
+		}
+		do {
+			do {
+				Graphics g2 = bufferStrategy.getDrawGraphics();
+				g2.drawImage(Draw.getBufferedImage(), 0, 0, null);
+				g2.dispose();
+			} while (bufferStrategy.contentsRestored());
+			bufferStrategy.show();
+		} while (bufferStrategy.contentsLost());
+		Toolkit.getDefaultToolkit().sync();
 	}
 	/** Covers the DrawModule image buffer with the background color, effectively clearing it **/
 	protected void cls() {
+		if (damageTracking) {
+			// Areas that changed are cleared when drawing starts instead; see setDamageTracking()
+			return;
+		}
 		Draw.setColors(backgroundColor, null);
 		Draw.rect(0, 0, width, height);
 	}
@@ -1,10 +1,20 @@
 package simple.run;
 
+import java.util.concurrent.locks.LockSupport;
+
 /** Static class that allows you to delay the program **/
 public class Timer {
+	/** Time before a deadline at which sleeping stops and the remaining wait is spent parking in short slices. Thread.sleep() can
+	 * overshoot by a millisecond or more on most systems, so the last stretch is waited out with nanosecond-granularity calls. **/
+	private static final long SPIN_THRESHOLD_NANOS = 2000000L;
+	/** Length of each park in the tail of a precise wait. **/
+	private static final long PARK_SLICE_NANOS = 50000L;
+	
 	private static long timeAtLastCall = 0;
 	
 	public static long latestTimePollMillis() { return timeAtLastCall/1000000L; }
+	/** Returns the value of System.nanoTime() at the last call to one of the corrected delay functions **/
+	public static long latestTimePollNanos() { return timeAtLastCall; }
 		
 	/** Delays the program for the exact amount of milliseconds given **/
 	public static void delay(int delayMillis) {
@@ -18,11 +28,33 @@ public class Timer {
 	 * e.g.: If you call this function, do something for 20 milliseconds and then call correctedDelay(30), it will delay for 10 milliseconds
 	 * Allows computers of different speeds to run a program in roughly the same pace; Guarantees programs will take at least delayMillis for the frme to pass **/
 	public static void correctedDelay(int delayMillis) {
+		correctedDelayNanos(delayMillis*1000000L);
+	}
+	/** Same as correctedDelay(), but with nanosecond precision. The wait sleeps for the bulk of the time and finishes with short parks, so
+	 * frames are paced to within a few microseconds of the target rather than to the next millisecond tick. **/
+	public static void correctedDelayNanos(long delayNanos) {
+		sleepUntil(timeAtLastCall + delayNanos);
+		timeAtLastCall = System.nanoTime();
+	}
+	
+	/** Blocks the calling thread until System.nanoTime() reaches the given deadline. Returns immediately if the deadline has passed. 
+	 * @param deadlineNanos     Value of System.nanoTime() to wait for **/
+	public static void sleepUntil(long deadlineNanos) {
+		long remaining = deadlineNanos - System.nanoTime();
 		try {
-			Thread.sleep(Math.max(delayMillis - (System.nanoTime()-timeAtLastCall)/1000000, 0));
-			timeAtLastCall = System.nanoTime();
-		} catch(Exception e) {
+			if (remaining > SPIN_THRESHOLD_NANOS) {
+				long sleepNanos = remaining - SPIN_THRESHOLD_NANOS;
+				Thread.sleep(sleepNanos/1000000L, (int)(sleepNanos%1000000L));
+			}
+		} catch(InterruptedException e) {
 			e.printStackTrace();
 		}
+		while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+			if (remaining > PARK_SLICE_NANOS) {
+				LockSupport.parkNanos(PARK_SLICE_NANOS);
+			} else {
+				Thread.yield();
+			}
+		}
 	}
 }
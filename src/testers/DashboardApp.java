@@ -0,0 +1,51 @@
+package testers;
+
+import java.awt.Color;
+
+import simple.gui.Button;
+import simple.gui.Slider;
+import simple.gui.panel.BasicPanel;
+import simple.gui.textarea.Label;
+import simple.run.SimpleGUIApp;
+
+public class DashboardApp extends SimpleGUIApp {
+    public static void main(String[] args) { start(new DashboardApp(), "Dashboard"); }
+    public DashboardApp() { super(600, 400, 60); }
+
+    BasicPanel panel;
+    Button[] buttons;
+    Slider slider;
+    Label status;
+
+    public void setup() {
+        // Only widgets that change get redrawn, so this uses almost no CPU while the mouse isn't moving
+        setDamageTracking(true);
+
+        panel = new BasicPanel(0, 0, 600, 400);
+        panel.setDrawContainingPanel(true);
+        panel.setFillColor(new Color(230, 230, 230));
+
+        buttons = new Button[12];
+        for (int i=0; i<buttons.length; i++) {
+            buttons[i] = new Button("Button " + i);
+            panel.addWidget(buttons[i], 20 + (i%4)*140, 20 + (i/4)*50, 120, 40);
+        }
+        slider = new Slider(0, 100, false, true);
+        panel.addWidget(slider, 20, 200, 540, 30);
+        status = new Label("Nothing clicked yet");
+        panel.addWidget(status, 20, 260, 540, 30);
+    }
+    public void loop() {
+        panel.update();
+        for (int i=0; i<buttons.length; i++) {
+            if (buttons[i].clicked()) {
+                status.setText("Clicked button " + i);
+            }
+        }
+        if (slider.valueChanged()) {
+            status.setText("Slider at " + slider.value());
+        }
+        panel.draw();
+        updateView();
+    }
+}
@@ -0,0 +1,47 @@
+package testers.ball_tests;
+
+import java.awt.Color;
+
+import simple.gui.Draw;
+import simple.run.FixedStepApp;
+
+public class BallFixedStepApp extends FixedStepApp {
+    public static void main (String[] args) { start(new BallFixedStepApp(), "Test"); }
+    // Draws at 60 frames per second, but only moves the ball 20 times per second
+    public BallFixedStepApp() { super(500, 500, 60, 20); }
+
+    // Position from the previous step is kept so the drawn position can be interpolated between steps
+    double x, y, oldx, oldy, dx, dy;
+    Color blue, darkblue;
+
+    public void setup() {
+        x = oldx = 200;
+        y = oldy = 100;
+
+        // Speeds are in pixels per second, since update() is given the step length in seconds
+        dx = Math.random()*600 - 300;
+        dy = Math.random()*600 - 300;
+
+        blue = new Color(0, 0, 255);
+        darkblue = new Color(0, 0, 180);
+    }
+    public void update(double dt) {
+        oldx = x;
+        oldy = y;
+        x += dx*dt;
+        y += dy*dt;
+
+        if (x > getWidth()-20 || x < 20) {
+            dx *= -1;
+        }
+        if (y > getHeight()-20 || y < 20) {
+            dy *= -1;
+        }
+    }
+    public void render(double alpha) {
+        // Without interpolation the ball would visibly stutter, since it only moves every third frame
+        Draw.setFill(blue);
+        Draw.setStroke(darkblue);
+        Draw.ovalCentered((int)(oldx + (x-oldx)*alpha), (int)(oldy + (y-oldy)*alpha), 20, 20);
+    }
+}
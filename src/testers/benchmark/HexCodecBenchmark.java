@@ -0,0 +1,93 @@
+package testers.benchmark;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+import simple.misc.hex.*;
+
+/** Saves a board of about a million hexes with HexCodec, maps the file back and decodes it, checking the result matches. Done for an
+ * IntHexArray (dense, primitive), a HexArray over a radial generator (dense, boxed) and a scattered HexArray (sparse). Doesn't open a
+ * window. */
+public class HexCodecBenchmark {
+    static final int RADIUS = 577; // 1,000,519 hexes
+
+    public static void main(String[] args) throws Exception {
+        File file = File.createTempFile("hexcodec", ".hex");
+        file.deleteOnExit();
+        for (int round=0; round<3; round++) {
+            runIntGrid(file);
+            runHexArray(file);
+            runSparse(file);
+        }
+        file.delete();
+    }
+
+    static void runIntGrid(File file) {
+        IntHexArray grid = new IntHexArray(HexIndexer.radial(RADIUS));
+        grid.parallelFill((x, y, z) -> x*31 + y*17 + z);
+
+        long t0 = System.nanoTime();
+        HexCodec.save(HexCodec.encode(grid), file);
+        long t1 = System.nanoTime();
+        MappedByteBuffer mapped = HexCodec.map(file);
+        IntHexArray loaded = HexCodec.decodeIntHexArray(mapped);
+        long t2 = System.nanoTime();
+
+        for (int i=0; i<grid.size(); i++) {
+            if (grid.getAt(i) != loaded.getAt(i)) throw new RuntimeException("IntHexArray differs at index " + i);
+        }
+        print("IntHexArray", grid.indexer().count(), file, t1-t0, t2-t1);
+    }
+
+    static void runHexArray(File file) {
+        HexArray<Integer> hexes = new HexArray<Integer>(Tuple.createRadialHexGenerator(RADIUS), new HexData.Generator<Integer>() {
+            @Override
+            public Integer generate(int hx, int hy, int hz) { return hx*31 + hy*17 + hz; }
+            @Override
+            public Integer generate(Tuple cube) { return generate(cube.entry(0), cube.entry(1), cube.entry(2)); }
+        });
+
+        long t0 = System.nanoTime();
+        HexCodec.save(HexCodec.encode(hexes, ElementCodec.INTEGER), file);
+        long t1 = System.nanoTime();
+        HexArray<Integer> loaded = HexCodec.decodeHexArray(HexCodec.map(file), ElementCodec.INTEGER);
+        long t2 = System.nanoTime();
+
+        check(hexes, loaded);
+        print("HexArray (dense)", hexes.size(), file, t1-t0, t2-t1);
+    }
+
+    static void runSparse(File file) {
+        // Every third hex of the board, so rows are broken into many short runs
+        HexArray<Integer> hexes = new HexArray<Integer>();
+        for (Tuple t: Tuple.createRadialHexGenerator(RADIUS)) {
+            if ((t.entry(0) - t.entry(1)) % 3 == 0) {
+                hexes.put(t, t.entry(0)*31 + t.entry(1)*17);
+            }
+        }
+
+        long t0 = System.nanoTime();
+        ByteBuffer encoded = HexCodec.encode(hexes, ElementCodec.INTEGER);
+        HexCodec.save(encoded, file);
+        long t1 = System.nanoTime();
+        HexArray<Integer> loaded = HexCodec.decodeHexArray(HexCodec.map(file), ElementCodec.INTEGER);
+        long t2 = System.nanoTime();
+
+        check(hexes, loaded);
+        print("HexArray (sparse)", hexes.size(), file, t1-t0, t2-t1);
+    }
+
+    static void check(HexArray<Integer> expected, HexArray<Integer> actual) {
+        if (expected.size() != actual.size()) throw new RuntimeException("Sizes differ: " + expected.size() + " " + actual.size());
+        for (HexData<Integer> hex: expected) {
+            HexData<Integer> other = actual.index(hex.cubeIndex());
+            if (other == null || !hex.data().equals(other.data())) throw new RuntimeException("Hex differs: " + hex.cubeIndex());
+        }
+    }
+
+    static void print(String name, int hexes, File file, long saveNanos, long loadNanos) {
+        System.out.println(String.format("%-18s %8d hexes, %6.2f MB, save %7.2f ms, load %7.2f ms",
+                name, hexes, file.length()/1e6, saveNanos/1e6, loadNanos/1e6));
+    }
+}
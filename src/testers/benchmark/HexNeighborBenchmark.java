@@ -0,0 +1,118 @@
+package testers.benchmark;
+
+import simple.misc.hex.*;
+
+/** Compares visiting the neighbors of every hex of a radius 150 board through HexData.adjecentHexes(), HexArray.forEachNeighbor() and
+ * the dense neighbor table of HexIndexer. Also checks that the visitors of the hex, corner and edge arrays return exactly the same
+ * coordinates as the old methods. Doesn't open a window. Run with -verbose:gc to see the difference in garbage. */
+public class HexNeighborBenchmark {
+    static final int RADIUS = 150;
+    static final int ROUNDS = 10;
+
+    public static void main(String[] args) {
+        HexIndexer indexer = HexIndexer.radial(RADIUS);
+        IntHexArray values = new IntHexArray(indexer);
+        for (int i=0; i<values.size(); i++) {
+            values.setAt(i, i%7);
+        }
+        verify(indexer);
+
+        for (int round=0; round<ROUNDS; round++) {
+            long t0 = System.nanoTime();
+            long oldSum = viaTuples(indexer, values);
+            long t1 = System.nanoTime();
+            long visitorSum = viaVisitor(indexer, values);
+            long t2 = System.nanoTime();
+            long tableSum = viaTable(indexer, values);
+            long t3 = System.nanoTime();
+            if (oldSum != visitorSum || oldSum != tableSum) {
+                throw new RuntimeException("Sums differ: " + oldSum + " " + visitorSum + " " + tableSum);
+            }
+            System.out.println(String.format("%d hexes: adjecentHexes %7.2f ms, forEachNeighbor %7.2f ms, neighbor table %7.2f ms",
+                    indexer.size(), (t1-t0)/1e6, (t2-t1)/1e6, (t3-t2)/1e6));
+        }
+    }
+
+    static long viaTuples(HexIndexer indexer, IntHexArray values) {
+        long total = 0;
+        for (int i=0; i<indexer.size(); i++) {
+            for (Tuple t: HexData.adjecentHexes(indexer.cubeAt(i))) {
+                total += values.getOrDefault(t.entry(0), t.entry(1), t.entry(2), 0);
+            }
+        }
+        return total;
+    }
+    static long viaVisitor(final HexIndexer indexer, final IntHexArray values) {
+        final long[] total = {0};
+        IntTriConsumer adder = new IntTriConsumer() {
+            @Override
+            public void accept(int x, int y, int z) {
+                total[0] += values.getOrDefault(x, y, z, 0);
+            }};
+        for (int i=0; i<indexer.size(); i++) {
+            HexArray.forEachNeighbor(indexer.hx(i), indexer.hy(i), indexer.hz(i), adder);
+        }
+        return total[0];
+    }
+    static long viaTable(HexIndexer indexer, IntHexArray values) {
+        int[] table = indexer.neighborTable();
+        int[] data = values.values();
+        long total = 0;
+        for (int i=0; i<table.length; i++) {
+            int n = table[i];
+            if (n >= 0) {
+                total += data[n];
+            }
+        }
+        return total;
+    }
+
+    /** Every visitor must produce the same coordinates, in the same order, as the method it replaces */
+    static void verify(HexIndexer indexer) {
+        for (int i=0; i<indexer.size(); i++) {
+            int hx = indexer.hx(i), hy = indexer.hy(i), hz = indexer.hz(i);
+            Tuple hex = indexer.cubeAt(i);
+            check(HexData.adjecentHexes(hex), "hexes of " + hex, new Visit() { void run(IntTriConsumer c) { HexArray.forEachNeighbor(hx, hy, hz, c); }});
+            check(HexData.adjecentEdges(hex), "edges of " + hex, new Visit() { void run(IntTriConsumer c) { HexArray.forEachEdge(hx, hy, hz, c); }});
+            check(HexData.adjecentCorners(hex), "corners of " + hex, new Visit() { void run(IntTriConsumer c) { HexArray.forEachCorner(hx, hy, hz, c); }});
+
+            for (final Tuple corner: HexData.adjecentCorners(hex)) {
+                final int cx = corner.entry(0), cy = corner.entry(1), cz = corner.entry(2);
+                check(CornerData.adjecentCorners(corner), "corners of corner " + corner, new Visit() { void run(IntTriConsumer c) { HexCornerArray.forEachNeighbor(cx, cy, cz, c); }});
+                check(CornerData.adjecentEdges(corner), "edges of corner " + corner, new Visit() { void run(IntTriConsumer c) { HexCornerArray.forEachEdge(cx, cy, cz, c); }});
+                check(CornerData.adjecentHexes(corner), "hexes of corner " + corner, new Visit() { void run(IntTriConsumer c) { HexCornerArray.forEachHex(cx, cy, cz, c); }});
+            }
+            for (final Tuple edge: HexData.adjecentEdges(hex)) {
+                final int ex = edge.entry(0), ey = edge.entry(1), ez = edge.entry(2);
+                check(EdgeData.adjecentEdges(edge), "edges of edge " + edge, new Visit() { void run(IntTriConsumer c) { HexEdgeArray.forEachNeighbor(ex, ey, ez, c); }});
+                check(EdgeData.adjecentCorners(edge), "corners of edge " + edge, new Visit() { void run(IntTriConsumer c) { HexEdgeArray.forEachCorner(ex, ey, ez, c); }});
+                check(EdgeData.adjecentHexes(edge), "hexes of edge " + edge, new Visit() { void run(IntTriConsumer c) { HexEdgeArray.forEachHex(ex, ey, ez, c); }});
+            }
+            for (int dir=0; dir<6; dir++) {
+                int[] d = HexArray.DIRECTIONS[dir];
+                if (indexer.neighbor(i, dir) != indexer.indexOf(hx + d[0], hy + d[1], hz + d[2])) {
+                    throw new RuntimeException("Neighbor table differs at " + hex + " direction " + dir);
+                }
+            }
+        }
+        System.out.println("Visitors match the adjecent methods for " + indexer.size() + " hexes");
+    }
+
+    static abstract class Visit {
+        abstract void run(IntTriConsumer consumer);
+    }
+    static void check(final Tuple[] expected, String what, Visit visit) {
+        final int[] count = {0};
+        visit.run(new IntTriConsumer() {
+            @Override
+            public void accept(int x, int y, int z) {
+                if (count[0] >= expected.length || !expected[count[0]].equals(new Tuple(x, y, z))) {
+                    throw new RuntimeException("Mismatch for " + what + " at " + count[0] + ": got (" + x + ", " + y + ", " + z + ")");
+                }
+                count[0]++;
+            }});
+        if (count[0] != expected.length) {
+            throw new RuntimeException("Mismatch for " + what + ": " + count[0] + " instead of " + expected.length);
+        }
+    }
+}
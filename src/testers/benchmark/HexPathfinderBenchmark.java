@@ -0,0 +1,59 @@
+package testers.benchmark;
+
+import java.util.Random;
+
+import simple.misc.hex.*;
+
+/** Runs random path queries on a radius 100 board where a fifth of the hexes are walls and the rest cost 1 to 4, with A* (with and
+ * without pruning) and bidirectional Dijkstra. Prints queries per second and the average number of hexes expanded. Doesn't open a
+ * window. */
+public class HexPathfinderBenchmark {
+    static final int RADIUS = 100;
+    static final int QUERIES = 2000;
+
+    public static void main(String[] args) {
+        HexIndexer indexer = HexIndexer.radial(RADIUS);
+        FloatHexArray costs = new FloatHexArray(indexer);
+        Random random = new Random(7);
+        for (int i=0; i<costs.size(); i++) {
+            costs.setAt(i, (random.nextInt(5) == 0) ? Float.POSITIVE_INFINITY : 1 + random.nextInt(4));
+        }
+        int[] starts = new int[QUERIES], goals = new int[QUERIES];
+        for (int q=0; q<QUERIES; q++) {
+            starts[q] = random.nextInt(indexer.size());
+            goals[q] = random.nextInt(indexer.size());
+        }
+
+        HexPathfinder pathfinder = new HexPathfinder(costs);
+        HexSearchContext context = pathfinder.createContext();
+        for (int round=0; round<5; round++) {
+            pathfinder.setPruning(false);
+            run("A*", pathfinder, context, starts, goals, false);
+            pathfinder.setPruning(true);
+            run("A* pruned", pathfinder, context, starts, goals, false);
+            run("bidirectional", pathfinder, context, starts, goals, true);
+            System.out.println();
+        }
+    }
+
+    static void run(String name, HexPathfinder pathfinder, HexSearchContext context, int[] starts, int[] goals, boolean bidirectional) {
+        HexIndexer indexer = pathfinder.indexer();
+        long expanded = 0, found = 0;
+        double totalCost = 0;
+        long t0 = System.nanoTime();
+        for (int q=0; q<starts.length; q++) {
+            int s = starts[q], g = goals[q];
+            boolean ok = bidirectional
+                    ? pathfinder.findPathBidirectional(indexer.hx(s), indexer.hy(s), indexer.hz(s), indexer.hx(g), indexer.hy(g), indexer.hz(g), context)
+                    : pathfinder.findPath(indexer.hx(s), indexer.hy(s), indexer.hz(s), indexer.hx(g), indexer.hy(g), indexer.hz(g), context);
+            expanded += context.expanded();
+            if (ok) {
+                found++;
+                totalCost += context.cost();
+            }
+        }
+        long t1 = System.nanoTime();
+        System.out.println(String.format("%-14s %8.0f queries/s, %7.0f expanded per query, %d found, total cost %.0f",
+                name, starts.length/((t1-t0)/1e9), expanded/(double)starts.length, found, totalCost));
+    }
+}
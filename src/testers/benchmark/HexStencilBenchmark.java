@@ -0,0 +1,81 @@
+package testers.benchmark;
+
+import java.util.concurrent.ForkJoinPool;
+
+import simple.misc.hex.*;
+
+/** Runs heat diffusion on a radius 300 board with FloatHexArray.step(), once in a pool of one thread and once in a pool with one
+ * thread per core, and checks that both end with exactly the same values and total. Also times the old way of doing a step: a loop
+ * over a HexArray looking up every neighbor in the map. Doesn't open a window. */
+public class HexStencilBenchmark {
+    static final int RADIUS = 300;
+    static final int STEPS = 20;
+
+    public static void main(String[] args) throws Exception {
+        final HexIndexer indexer = HexIndexer.radial(RADIUS);
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int round=0; round<3; round++) {
+            float[] single = runInPool(1, indexer);
+            float[] many = runInPool(Math.max(2, cores), indexer);
+            for (int i=0; i<single.length; i++) {
+                if (Float.floatToIntBits(single[i]) != Float.floatToIntBits(many[i])) {
+                    throw new RuntimeException("Results differ at index " + i);
+                }
+            }
+            runMapBased();
+        }
+    }
+
+    static float[] runInPool(int threads, final HexIndexer indexer) throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            // Parallel streams started from inside a pool run in that pool
+            return pool.submit(() -> {
+                FloatHexArray heat = new FloatHexArray(indexer);
+                heat.parallelFill((x, y, z) -> (x == 0 && y == 0) ? 1000000f : (x*31 + y*17) % 5);
+                long t0 = System.nanoTime();
+                for (int s=0; s<STEPS; s++) {
+                    heat.step(HexStencilBenchmark::diffuse);
+                }
+                long t1 = System.nanoTime();
+                float total = heat.reduce(0f, (a, b) -> a + b);
+                System.out.println(String.format("%2d threads: %d hexes, %7.2f ms per step, total heat %.3f",
+                        threads, indexer.count(), (t1-t0)/1e6/STEPS, total));
+                return heat.values().clone();
+            }).get();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Moves a sixth of the difference with each neighbor towards it. Hexes off the edge count as having the same heat */
+    static float diffuse(int index, float value, FloatHexArray grid) {
+        float flow = 0;
+        for (int dir=0; dir<6; dir++) {
+            flow += grid.neighborValue(index, dir, value) - value;
+        }
+        return value + flow/12;
+    }
+
+    static void runMapBased() {
+        HexArray<Float> heat = new HexArray<Float>(Tuple.createRadialHexGenerator(RADIUS), new HexData.Generator<Float>() {
+            @Override
+            public Float generate(int hx, int hy, int hz) { return (hx == 0 && hy == 0) ? 1000000f : (hx*31 + hy*17) % 5; }
+            @Override
+            public Float generate(Tuple cube) { return generate(cube.entry(0), cube.entry(1), cube.entry(2)); }
+        });
+        HexArray<Float> next = new HexArray<Float>(Tuple.createRadialHexGenerator(RADIUS), (HexData.Generator<Float>)null);
+        long t0 = System.nanoTime();
+        for (HexData<Float> hex: heat) {
+            float value = hex.data();
+            float flow = 0;
+            for (Tuple t: hex.adjecentHexes()) {
+                HexData<Float> neighbor = heat.index(t);
+                flow += ((neighbor == null) ? value : neighbor.data()) - value;
+            }
+            next.setIndex(value + flow/12, hex.cubeIndex());
+        }
+        long t1 = System.nanoTime();
+        System.out.println(String.format("map based: %7.2f ms per step", (t1-t0)/1e6));
+    }
+}
@@ -0,0 +1,59 @@
+package testers.benchmark;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.lang.management.ManagementFactory;
+
+import simple.gui.Draw;
+import simple.gui.Image;
+
+/** Measures how many bytes are allocated per primitive when drawing into an offscreen Image. Compares drawing through Draw's image
+ * overloads (which reuse the image's Graphics2D object) against creating a new Graphics2D object for every primitive, which is what
+ * Image.graphics2D() used to do. Doesn't open a window, so it can run headless. */
+public class ImageDrawBenchmark {
+    static final int WARMUP_ROUNDS = 5;
+    static final int PRIMITIVES    = 200000;
+
+    public static void main(String[] args) {
+        Image tile = new Image(256, 256);
+        Draw.setFill(Color.GREEN);
+        Draw.setStroke(tile, Color.BLACK, 1);
+
+        for (int i=0; i<WARMUP_ROUNDS; i++) {
+            drawCached(tile);
+            drawFresh(tile);
+        }
+
+        long cached = allocatedBytes(() -> drawCached(tile));
+        long fresh  = allocatedBytes(() -> drawFresh(tile));
+
+        System.out.println(String.format("Reused Graphics2D:   %8.1f bytes per primitive", cached/(double)PRIMITIVES));
+        System.out.println(String.format("Created Graphics2D:  %8.1f bytes per primitive", fresh/(double)PRIMITIVES));
+        tile.dispose();
+    }
+
+    static void drawCached(Image tile) {
+        for (int i=0; i<PRIMITIVES; i++) {
+            Draw.rect(tile, i&255, (i>>8)&255, 8, 8);
+        }
+    }
+
+    static void drawFresh(Image tile) {
+        for (int i=0; i<PRIMITIVES; i++) {
+            Graphics2D g = tile.bufferedImage().createGraphics();
+            g.setColor(Color.GREEN);
+            g.fillRect(i&255, (i>>8)&255, 8, 8);
+            g.setColor(Color.BLACK);
+            g.drawRect(i&255, (i>>8)&255, 8, 8);
+        }
+    }
+
+    /** Returns the number of bytes the current thread allocated while running the given task. **/
+    static long allocatedBytes(Runnable task) {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long before = bean.getThreadAllocatedBytes(threadId);
+        task.run();
+        return bean.getThreadAllocatedBytes(threadId) - before;
+    }
+}
@@ -0,0 +1,45 @@
+package testers.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import simple.gui.EmptyWidget;
+import simple.gui.Widget;
+import simple.gui.panel.BasicPanel;
+
+/** Measures adding, updating and removing widgets in a panel, in random order and with several priorities. With the old list based
+ * storage removing was linear per widget, so doubling the widget count quadrupled the removal time. Doesn't open a window. */
+public class PanelStoreBenchmark {
+    public static void main(String[] args) {
+        for (int n: new int[] {5000, 10000, 20000, 40000, 10000, 20000, 40000}) {
+            run(n);
+        }
+    }
+
+    static void run(int n) {
+        Random random = new Random(n);
+        List<Widget> widgets = new ArrayList<Widget>();
+        for (int i=0; i<n; i++) {
+            widgets.add(new EmptyWidget((i%200)*10, (i/200)*10, 10, 10));
+        }
+        BasicPanel panel = new BasicPanel(0, 0, 2000, 2000);
+
+        long t0 = System.nanoTime();
+        for (Widget w: widgets) {
+            panel.addWidget(w, random.nextInt(8));
+        }
+        long t1 = System.nanoTime();
+        panel.update();
+        long t2 = System.nanoTime();
+        Collections.shuffle(widgets, random);
+        for (Widget w: widgets) {
+            panel.removeWidget(w);
+        }
+        long t3 = System.nanoTime();
+
+        System.out.println(String.format("%6d widgets: add %7.2f ms, update %7.2f ms, remove %7.2f ms", 
+                n, (t1-t0)/1e6, (t2-t1)/1e6, (t3-t2)/1e6));
+    }
+}
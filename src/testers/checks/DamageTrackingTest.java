@@ -0,0 +1,71 @@
+package testers.checks;
+
+import java.awt.Color;
+
+import simple.gui.Draw;
+import simple.gui.Widget;
+import simple.run.SimpleGUIApp;
+
+/** Checks that with damage tracking on, a widget marked dirty after another widget has drawn in the same frame still shows its change,
+ * a frame later. Update and draw are interleaved per widget, like HexTest does. Prints the result and closes after a few frames. */
+public class DamageTrackingTest extends SimpleGUIApp {
+    public static void main(String[] args) { start(new DamageTrackingTest(), "Damage Tracking Test"); }
+    public DamageTrackingTest() { super(200, 100, 30); }
+
+    static class Box extends Widget {
+        Color color;
+        Box(int x, int y, Color color) { super(x, y, 40, 40); this.color = color; }
+        void setColor(Color color) { this.color = color; markDirty(); }
+        @Override
+        protected void updateWidget() {}
+        @Override
+        protected void drawWidget() {
+            Draw.setColors(color, null);
+            Draw.rect(_x, _y, _w, _h);
+        }
+    }
+
+    Box first, second;
+    int frame;
+    String failure;
+
+    @Override
+    public void setup() {
+        setDamageTracking(true);
+        first = new Box(20, 30, Color.BLUE);
+        second = new Box(120, 30, Color.BLUE);
+        frame = 0;
+    }
+
+    @Override
+    public void loop() {
+        frame++;
+        first.update();
+        first.draw();
+        // The first box has started the frame, so this change comes too late for the frame's clip
+        if (frame == 2) {
+            second.setColor(Color.RED);
+        }
+        second.update();
+        second.draw();
+
+        if (frame == 1) {
+            check(second, Color.BLUE, "after the first frame");
+        } else if (frame == 3) {
+            check(second, Color.RED, "a frame after it was marked dirty late");
+            check(first, Color.BLUE, "when only the other box changed");
+            System.out.println(failure == null ? "DamageTrackingTest passed" : "DamageTrackingTest failed: " + failure);
+            quit();
+        }
+        updateView();
+    }
+
+    void check(Box box, Color expected, String when) {
+        Draw.flushBatch();
+        int rgb = Draw.getBufferedImage().getRGB(box.x() + box.w()/2, box.y() + box.h()/2);
+        if (rgb != expected.getRGB() && failure == null) {
+            failure = "box at " + box.x() + " is " + Integer.toHexString(rgb) + " " + when + ", expected " 
+                    + Integer.toHexString(expected.getRGB());
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package testers.checks;
+
+import simple.misc.hex.*;
+
+/** Checks lookups in hex arrays that the other testers don't reach. Doesn't open a window; throws if a check fails. */
+public class HexArrayTest {
+    public static void main(String[] args) {
+        checkUnpackableLookups();
+        checkDensePackedLookups();
+        checkDenseFieldOfView();
+        System.out.println("HexArrayTest passed");
+    }
+
+    /** Coordinates beyond Tuple.PACK_MIN/PACK_MAX, or tuples that aren't 2- or 3-tuples, can't be in a hex array, so looking them up 
+     *  finds nothing. Adding them throws */
+    static void checkUnpackableLookups() {
+        HexArray<Integer> hexes = new HexArray<Integer>(Tuple.createRadialHexGenerator(2));
+        HexCornerArray<Integer> corners = new HexCornerArray<Integer>(hexes);
+        HexEdgeArray<Integer> edges = new HexEdgeArray<Integer>(hexes);
+        int far = Tuple.PACK_MAX + 1;
+
+        check(hexes.index(far, -far, 0) == null, "HexArray.index(int, int, int) out of range");
+        check(hexes.index(Tuple.of(far, -far, 0)) == null, "HexArray.index(Tuple) out of range");
+        check(hexes.index(new Tuple(1, 2, 3, 4)) == null, "HexArray.index(Tuple) of a 4-tuple");
+        hexes.remove(Tuple.of(far, -far, 0));
+        check(hexes.index(0, 0, 0) != null, "HexArray.index(0, 0, 0) after removing an unpackable tuple");
+        check(corners.atIndex(far, 0) == null && corners.atIndex(far, -far, 0) == null && corners.atIndex(Tuple.of(far, 0)) == null,
+                "HexCornerArray.atIndex() out of range");
+        check(edges.atIndex(far, 0) == null && edges.atIndex(far, -far, 0) == null && edges.atIndex(Tuple.of(far, 0)) == null,
+                "HexEdgeArray.atIndex() out of range");
+
+        boolean threw = false;
+        try {
+            hexes.put(Tuple.of(far, -far, 0), 1);
+        } catch (IllegalArgumentException e) {
+            threw = true;
+        }
+        check(threw, "HexArray.put() out of range should throw");
+    }
+
+    /** A DenseHexArray keeps its hexes in an array rather than the map, so it answers packed lookups by unpacking them */
+    static void checkDensePackedLookups() {
+        DenseHexArray<Integer> dense = new DenseHexArray<Integer>(HexIndexer.radial(3));
+        dense.set(7, 1, -1, 0);
+        HexData<Integer> hex = dense.index(Tuple.pack(1, -1, 0));
+        check(hex != null && hex.data() == 7 && hex.cubeIndex().equals(Tuple.of(1, -1, 0)), "DenseHexArray.index(long)");
+        check(dense.index(Tuple.pack(4, -4, 0)) == null, "DenseHexArray.index(long) outside the grid");
+        check(dense.index(Tuple.pack(1, -1)) == null, "DenseHexArray.index(long) of a packed 2-tuple");
+    }
+
+    /** Field of view over a DenseHexArray sees the same hexes as over a HexArray of the same shape */
+    static void checkDenseFieldOfView() {
+        DenseHexArray<Integer> dense = new DenseHexArray<Integer>(HexIndexer.radial(3));
+        HexArray<Integer> sparse = new HexArray<Integer>(Tuple.createRadialHexGenerator(3));
+        check(HexIndexer.of(dense).size() == 37, "HexIndexer.of(DenseHexArray) size");
+        int denseCount = HexFieldOfView.compute(dense, Tuple.of(0, 0, 0), 3, v -> false).size();
+        int sparseCount = HexFieldOfView.compute(sparse, Tuple.of(0, 0, 0), 3, v -> false).size();
+        check(denseCount == 37 && sparseCount == 37, "HexFieldOfView.compute() saw " + denseCount + " dense and " + sparseCount 
+                + " sparse hexes, not 37");
+
+        // A wall blocks the same hexes either way
+        dense.set(1, 1, -1, 0);
+        sparse.index(1, -1, 0).setData(1);
+        denseCount = HexFieldOfView.compute(dense, Tuple.of(0, 0, 0), 3, v -> v != null).size();
+        sparseCount = HexFieldOfView.compute(sparse, Tuple.of(0, 0, 0), 3, v -> v != null).size();
+        check(denseCount == sparseCount && denseCount < 37, "HexFieldOfView.compute() with a wall saw " + denseCount + " dense and " 
+                + sparseCount + " sparse hexes");
+    }
+
+    static void check(boolean ok, String what) {
+        if (!ok) throw new RuntimeException("Failed: " + what);
+    }
+}